@@ -0,0 +1,72 @@
+package com.sondv.phone.config;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Chỉ mục phụ thuộc của cache L1 trên node hiện tại: entry (cache, key) nào đang chứa dữ liệu của tag nào
+ * (ví dụ {@code product:12}, {@code category:3}). Nhờ đó một thao tác ghi chỉ xóa đúng các trang/danh sách
+ * bị ảnh hưởng thay vì {@code allEntries = true}. Entry rời L1 (hết hạn, bị đẩy ra, bị xóa) thì được gỡ khỏi chỉ mục.
+ */
+public class CacheDependencyIndex {
+
+    public record EntryRef(String cache, String key) {
+    }
+
+    private final ConcurrentMap<String, Set<EntryRef>> byTag = new ConcurrentHashMap<>();
+    private final ConcurrentMap<EntryRef, Set<String>> byEntry = new ConcurrentHashMap<>();
+
+    public void record(String cache, String key, Set<String> tags) {
+        EntryRef ref = new EntryRef(cache, key);
+        unlink(ref);
+        if (tags.isEmpty()) {
+            return;
+        }
+        byEntry.put(ref, tags);
+        for (String tag : tags) {
+            byTag.computeIfAbsent(tag, t -> ConcurrentHashMap.newKeySet()).add(ref);
+        }
+    }
+
+    public void remove(String cache, String key) {
+        unlink(new EntryRef(cache, key));
+    }
+
+    public void removeCache(String cache) {
+        byEntry.keySet().stream()
+                .filter(ref -> ref.cache().equals(cache))
+                .toList()
+                .forEach(this::unlink);
+    }
+
+    public Set<EntryRef> lookup(Collection<String> tags) {
+        Set<EntryRef> refs = new HashSet<>();
+        for (String tag : tags) {
+            Set<EntryRef> tagged = byTag.get(tag);
+            if (tagged != null) {
+                refs.addAll(tagged);
+            }
+        }
+        return refs;
+    }
+
+    public int size() {
+        return byEntry.size();
+    }
+
+    private void unlink(EntryRef ref) {
+        Set<String> tags = byEntry.remove(ref);
+        if (tags == null) {
+            return;
+        }
+        for (String tag : tags) {
+            byTag.computeIfPresent(tag, (t, refs) -> {
+                refs.remove(ref);
+                return refs.isEmpty() ? null : refs;
+            });
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.sondv.phone.config;
+
+import java.util.Set;
+
+// Phát khi entry của các cache này bị xóa (trên node hiện tại hoặc do node khác yêu cầu qua pub/sub)
+public record CacheInvalidatedEvent(Set<String> cacheNames) {
+}
@@ -0,0 +1,56 @@
+package com.sondv.phone.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đếm số lần đọc theo (cache, key) để bộ làm ấm cache ưu tiên các key được truy cập nhiều.
+ * Mỗi cache chỉ giữ tối đa {@value #MAX_KEYS_PER_CACHE} key; {@link #decay()} giảm một nửa bộ đếm
+ * để độ phổ biến phản ánh lưu lượng gần đây.
+ */
+public class CacheKeyPopularity {
+
+    private static final int MAX_KEYS_PER_CACHE = 1000;
+
+    public record KeyScore(String key, long hits) {
+    }
+
+    private final ConcurrentMap<String, Cache<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+    public void record(String cacheName, String key) {
+        counters.computeIfAbsent(cacheName, n -> Caffeine.newBuilder().maximumSize(MAX_KEYS_PER_CACHE).build())
+                .get(key, k -> new LongAdder())
+                .increment();
+    }
+
+    public List<KeyScore> top(String cacheName, int limit) {
+        Cache<String, LongAdder> cache = counters.get(cacheName);
+        if (cache == null) {
+            return List.of();
+        }
+        return cache.asMap().entrySet().stream()
+                .map(e -> new KeyScore(e.getKey(), e.getValue().sum()))
+                .filter(s -> s.hits() > 0)
+                .sorted(Comparator.comparingLong(KeyScore::hits).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    public void decay() {
+        for (Cache<String, LongAdder> cache : counters.values()) {
+            for (Map.Entry<String, LongAdder> e : cache.asMap().entrySet()) {
+                LongAdder adder = e.getValue();
+                long half = adder.sum() / 2;
+                adder.reset();
+                adder.add(half);
+            }
+        }
+    }
+}
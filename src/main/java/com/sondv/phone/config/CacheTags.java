@@ -0,0 +1,59 @@
+package com.sondv.phone.config;
+
+import com.sondv.phone.dto.ProductDTO;
+import org.springframework.data.domain.Page;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Suy ra tag phụ thuộc từ giá trị được cache: mỗi ProductDTO nằm trong giá trị (trực tiếp, trong List, Page
+ * hoặc Optional) đóng góp tag sản phẩm, danh mục và nhà cung cấp của nó.
+ */
+public final class CacheTags {
+
+    public static final String PRODUCT = "product:";
+    public static final String CATEGORY = "category:";
+    public static final String SUPPLIER = "supplier:";
+
+    private CacheTags() {
+    }
+
+    public static String product(Long id) {
+        return PRODUCT + id;
+    }
+
+    public static String category(Long id) {
+        return CATEGORY + id;
+    }
+
+    public static String supplier(Long id) {
+        return SUPPLIER + id;
+    }
+
+    static Set<String> of(Object value) {
+        Set<String> tags = new HashSet<>();
+        collect(value, tags);
+        return tags;
+    }
+
+    private static void collect(Object value, Set<String> tags) {
+        if (value instanceof ProductDTO product) {
+            tags.add(product(product.getId()));
+            if (product.getCategory() != null) {
+                tags.add(category(product.getCategory().getId()));
+            }
+            if (product.getSupplier() != null) {
+                tags.add(supplier(product.getSupplier().getId()));
+            }
+        } else if (value instanceof Page<?> page) {
+            page.getContent().forEach(element -> collect(element, tags));
+        } else if (value instanceof Collection<?> collection) {
+            collection.forEach(element -> collect(element, tags));
+        } else if (value instanceof Optional<?> optional) {
+            optional.ifPresent(element -> collect(element, tags));
+        }
+    }
+}
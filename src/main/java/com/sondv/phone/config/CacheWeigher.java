@@ -0,0 +1,71 @@
+package com.sondv.phone.config;
+
+import com.sondv.phone.dto.ProductDTO;
+import org.springframework.data.domain.Page;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Ước lượng kích thước (byte) của giá trị trong cache để giới hạn L1 theo bộ nhớ thay vì số entry.
+ * <p>
+ * Chỉ là ước lượng nhanh theo hình dạng dữ liệu (không duyệt reflection): một trang 50 ProductDTO
+ * nặng hơn nhiều so với một Category, nên hai thứ đó không nên bị tính là "một entry" như nhau.
+ */
+final class CacheWeigher {
+
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int DEFAULT_OBJECT = 256;
+    private static final int PRODUCT_BASE = 640;
+    private static final int PRODUCT_IMAGE = 160;
+    private static final int INVENTORY_LOG = 120;
+
+    private CacheWeigher() {
+    }
+
+    static int weigh(Object key, Object value) {
+        long bytes = estimate(key) + estimate(value);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes));
+    }
+
+    static long estimate(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String s) {
+            return 40 + 2L * s.length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Enum<?>) {
+            return OBJECT_OVERHEAD;
+        }
+        if (value instanceof Optional<?> optional) {
+            return OBJECT_OVERHEAD + optional.map(CacheWeigher::estimate).orElse(0L);
+        }
+        if (value instanceof Page<?> page) {
+            return 128 + estimate(page.getContent());
+        }
+        if (value instanceof Collection<?> collection) {
+            long sum = 32 + 8L * collection.size();
+            for (Object element : collection) {
+                sum += estimate(element);
+            }
+            return sum;
+        }
+        if (value instanceof Map<?, ?> map) {
+            long sum = 48 + 32L * map.size();
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                sum += estimate(e.getKey()) + estimate(e.getValue());
+            }
+            return sum;
+        }
+        if (value instanceof ProductDTO product) {
+            return PRODUCT_BASE
+                    + estimate(product.getName())
+                    + estimate(product.getDescription())
+                    + (product.getImages() != null ? (long) PRODUCT_IMAGE * product.getImages().size() : 0)
+                    + (product.getInventoryLogs() != null ? (long) INVENTORY_LOG * product.getInventoryLogs().size() : 0);
+        }
+        return DEFAULT_OBJECT;
+    }
+}
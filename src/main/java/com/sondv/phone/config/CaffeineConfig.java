@@ -1,33 +1,19 @@
 package com.sondv.phone.config;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import org.springframework.cache.CacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 
-import java.util.concurrent.TimeUnit;
-
+// Chính sách L1 cho từng cache; CacheManager thực tế là TwoTierCacheManager (xem TwoTierCacheConfig)
 @Profile("!test")
 @Configuration
 @EnableCaching
 public class CaffeineConfig {
 
-    @Bean
-    public Caffeine<Object, Object> caffeineCache() {
-        return Caffeine.newBuilder()
-                .expireAfterWrite(5, TimeUnit.MINUTES)
-                .maximumSize(5000);
-    }
-
-    @Bean
-    @Primary
-    public CacheManager caffeineCacheManager(Caffeine<Object, Object> caffeineCache) {
-        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
-        cacheManager.setCaffeine(caffeineCache);
-        return cacheManager;
+    @Bean(destroyMethod = "shutdown")
+    public CaffeinePolicyRegistry caffeinePolicyRegistry(TwoTierCacheProperties properties, MeterRegistry meterRegistry) {
+        return new CaffeinePolicyRegistry(properties, meterRegistry);
     }
 }
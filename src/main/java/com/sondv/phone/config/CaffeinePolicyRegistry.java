@@ -0,0 +1,111 @@
+package com.sondv.phone.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dựng cache L1 (Caffeine) cho từng tên cache theo chính sách khai báo trong {@code app.cache.*}:
+ * giới hạn theo số entry hoặc theo dung lượng ước lượng, thời gian sống có jitter,
+ * làm mới trước hạn (refresh-ahead) bất đồng bộ, và thống kê Caffeine gắn vào Micrometer.
+ */
+@Slf4j
+public class CaffeinePolicyRegistry {
+
+    private final TwoTierCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+    // Luồng riêng cho refresh-ahead, số luồng nhỏ để không tranh kết nối DB với request thật
+    private final ExecutorService refreshExecutor;
+
+    public CaffeinePolicyRegistry(TwoTierCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger counter = new AtomicInteger();
+        this.refreshExecutor = Executors.newFixedThreadPool(properties.getRefreshThreads(), r -> {
+            Thread t = new Thread(r, "cache-refresh-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public TwoTierCacheProperties.Spec specFor(String cacheName) {
+        return properties.specFor(cacheName);
+    }
+
+    /**
+     * @param reloader được gọi khi entry quá {@code refresh-after-write}; trả về giá trị mới hoặc null để bỏ entry.
+     *                 Chỉ dùng khi cache có cấu hình refresh.
+     * @param evictionListener được gọi khi entry bị Caffeine tự loại bỏ (hết hạn hoặc vượt giới hạn)
+     */
+    public Cache<Object, Object> build(String cacheName, CacheLoader<Object, Object> reloader,
+                                       RemovalListener<Object, Object> evictionListener) {
+        TwoTierCacheProperties.Spec spec = specFor(cacheName);
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .recordStats()
+                .evictionListener(evictionListener);
+
+        if (spec.getLocalMaxWeight() != null) {
+            builder.maximumWeight(spec.getLocalMaxWeight().toBytes()).weigher(CacheWeigher::weigh);
+        } else {
+            builder.maximumSize(spec.getLocalMaxSize());
+        }
+
+        double jitter = spec.getExpiryJitter() != null ? Math.min(0.5, Math.max(0, spec.getExpiryJitter())) : 0;
+        builder.expireAfter(new JitteredExpiry(spec.getLocalTtl(), jitter));
+
+        Cache<Object, Object> cache;
+        if (spec.getRefreshAfterWrite() != null) {
+            cache = builder.refreshAfterWrite(spec.getRefreshAfterWrite())
+                    .executor(refreshExecutor)
+                    .build(reloader);
+        } else {
+            cache = builder.build();
+        }
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName);
+        log.debug("Chính sách L1 [{}]: ttl={} jitter={} refresh={} {}", cacheName, spec.getLocalTtl(),
+                spec.getExpiryJitter(), spec.getRefreshAfterWrite(),
+                spec.getLocalMaxWeight() != null ? "maxWeight=" + spec.getLocalMaxWeight() : "maxSize=" + spec.getLocalMaxSize());
+        return cache;
+    }
+
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    // TTL của mỗi entry lệch ngẫu nhiên ±jitter để các key ghi cùng lúc không hết hạn cùng lúc
+    private record JitteredExpiry(Duration ttl, double jitter) implements Expiry<Object, Object> {
+
+        @Override
+        public long expireAfterCreate(@NonNull Object key, @NonNull Object value, long currentTime) {
+            long nanos = ttl.toNanos();
+            if (jitter <= 0) {
+                return nanos;
+            }
+            double factor = 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+            return (long) (nanos * factor);
+        }
+
+        @Override
+        public long expireAfterUpdate(@NonNull Object key, @NonNull Object value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(@NonNull Object key, @NonNull Object value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -216,7 +216,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
-    private void broadcastNotificationToAdminsOrStaff(String notification) throws Exception {
+    public void broadcastNotificationToAdminsOrStaff(String notification) throws Exception {
         for (WebSocketSession s : sessions.values()) {
             User target = userRepository.findByEmail((String) s.getAttributes().get("templates/email")).orElseThrow();
             if (s.isOpen() && (target.getRoles().contains(RoleName.ADMIN) || target.getRoles().contains(RoleName.STAFF))) {
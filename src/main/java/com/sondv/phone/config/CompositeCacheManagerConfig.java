@@ -1,41 +0,0 @@
-package com.sondv.phone.config;
-
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.support.CompositeCacheManager;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.cache.RedisCacheManager;
-import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.cache.RedisCacheConfiguration;
-
-import java.time.Duration;
-import java.util.Arrays;
-
-@Configuration
-public class CompositeCacheManagerConfig {
-
-    @Autowired
-    private CacheManager caffeineCacheManager;
-
-    @Autowired
-    private RedisConnectionFactory redisConnectionFactory;
-
-    @Bean
-    public CacheManager cacheManager() {
-        RedisCacheManager redisCacheManager = RedisCacheManager.builder(redisConnectionFactory)
-                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig()
-                        .entryTtl(Duration.ofMinutes(10))
-                )
-                .build();
-
-        CompositeCacheManager compositeCacheManager = new CompositeCacheManager();
-        compositeCacheManager.setCacheManagers(Arrays.asList(
-                caffeineCacheManager,
-                redisCacheManager
-        ));
-        compositeCacheManager.setFallbackToNoOpCache(false);
-
-        return compositeCacheManager;
-    }
-}
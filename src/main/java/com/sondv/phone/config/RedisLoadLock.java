@@ -0,0 +1,58 @@
+package com.sondv.phone.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Khóa ngắn hạn trên Redis để chỉ một node nạp một key L2 tại một thời điểm (single-flight giữa các node).
+ * Khóa tự hết hạn sau {@code ttl} nên node chết giữa chừng không làm kẹt key.
+ */
+@Slf4j
+public class RedisLoadLock {
+
+    private static final String PREFIX = "cache:load-lock:";
+
+    // Chỉ xóa khóa nếu vẫn là khóa của mình (tránh xóa khóa mà node khác đã lấy sau khi khóa cũ hết hạn)
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    public RedisLoadLock(StringRedisTemplate redisTemplate, Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return token nếu lấy được khóa, null nếu node khác đang giữ.
+     * Redis lỗi thì coi như lấy được khóa để request không bị chặn.
+     */
+    @Nullable
+    public String tryAcquire(String cacheName, String key) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(PREFIX + cacheName + "::" + key, token, ttl);
+            return Boolean.TRUE.equals(acquired) ? token : null;
+        } catch (RuntimeException e) {
+            log.debug("Không lấy được khóa nạp {}::{}: {}", cacheName, key, e.getMessage());
+            return token;
+        }
+    }
+
+    public void release(String cacheName, String key, String token) {
+        try {
+            redisTemplate.execute(RELEASE, List.of(PREFIX + cacheName + "::" + key), token);
+        } catch (RuntimeException e) {
+            log.debug("Không nhả được khóa nạp {}::{}: {}", cacheName, key, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.sondv.phone.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chỉ mục tag -> key L2 dùng chung giữa các node: mỗi tag là một SET {@code cache:tags:<tag>} chứa {@code <cache>::<key>}.
+ * <p>
+ * Node nào ghi một entry L2 thì ghi luôn tag của entry đó, nên lệnh xóa theo tag tìm được mọi entry L2
+ * bất kể node nào đã nạp, không chỉ những entry đang nằm trong L1 của node ghi. SET được gia hạn {@code ttl}
+ * (không ngắn hơn remote-ttl dài nhất) mỗi lần thêm; thành viên trỏ tới key L2 đã hết hạn chỉ làm thừa một lệnh xóa.
+ */
+@Slf4j
+public class RedisTagIndex {
+
+    private static final String PREFIX = "cache:tags:";
+    private static final String SEPARATOR = "::";
+
+    // KEYS: các SET tag, ARGV[1]: thành viên, ARGV[2]: thời hạn (giây)
+    private static final RedisScript<Long> ADD = new DefaultRedisScript<>(
+            "for _, k in ipairs(KEYS) do redis.call('sadd', k, ARGV[1]); redis.call('expire', k, ARGV[2]) end " +
+                    "return #KEYS",
+            Long.class);
+
+    // Lấy và xóa các SET tag trong một lệnh để không mất thành viên được thêm giữa lúc đọc và lúc xóa
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> DRAIN = new DefaultRedisScript<>(
+            "local out = {} for _, k in ipairs(KEYS) do " +
+                    "for _, m in ipairs(redis.call('smembers', k)) do out[#out + 1] = m end " +
+                    "redis.call('del', k) end return out",
+            List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    public RedisTagIndex(StringRedisTemplate redisTemplate, Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+    }
+
+    public void add(String cacheName, String key, Set<String> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.execute(ADD, tags.stream().map(tag -> PREFIX + tag).toList(),
+                    cacheName + SEPARATOR + key, String.valueOf(Math.max(1, ttl.toSeconds())));
+        } catch (RuntimeException e) {
+            log.debug("Không ghi được tag cho {}::{}: {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    /**
+     * Trả về và gỡ mọi entry L2 mang một trong các tag. Redis lỗi thì trả về rỗng (L2 cũng không đọc được).
+     */
+    public Set<CacheDependencyIndex.EntryRef> drain(Collection<String> tags) {
+        Set<CacheDependencyIndex.EntryRef> refs = new HashSet<>();
+        try {
+            List<?> members = redisTemplate.execute(DRAIN, tags.stream().map(tag -> PREFIX + tag).toList());
+            if (members == null) {
+                return refs;
+            }
+            for (Object member : members) {
+                String value = String.valueOf(member);
+                int sep = value.indexOf(SEPARATOR);
+                if (sep > 0) {
+                    refs.add(new CacheDependencyIndex.EntryRef(value.substring(0, sep),
+                            value.substring(sep + SEPARATOR.length())));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Không đọc được chỉ mục tag {} trên Redis: {}", tags, e.getMessage());
+        }
+        return refs;
+    }
+}
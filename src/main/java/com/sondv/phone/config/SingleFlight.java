@@ -0,0 +1,75 @@
+package com.sondv.phone.config;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Gộp các lần nạp đồng thời cho cùng một key: luồng đến đầu tiên (leader) chạy hàm nạp, các luồng đến sau
+ * chờ chung một kết quả thay vì chạy lại cùng truy vấn. Key được gỡ ngay khi lần nạp kết thúc,
+ * nên không có kết quả nào bị giữ lại ở đây.
+ */
+public class SingleFlight {
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public interface Listener {
+        void onLeader();
+
+        void onCoalesced();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> loader, Listener listener) throws Exception {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            listener.onCoalesced();
+            return (T) await(existing);
+        }
+        listener.onLeader();
+        try {
+            T value = loader.call();
+            mine.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    // Như execute, nhưng nếu key đang được luồng khác nạp thì trả ngay giá trị của whileLoading thay vì chờ
+    public <T> T executeOrElse(String key, Callable<T> loader, Supplier<T> whileLoading, Listener listener)
+            throws Exception {
+        if (inFlight.containsKey(key)) {
+            listener.onCoalesced();
+            return whileLoading.get();
+        }
+        return execute(key, loader, listener);
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException | CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) {
+                throw ex;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+}
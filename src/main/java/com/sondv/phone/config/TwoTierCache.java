@@ -0,0 +1,452 @@
+package com.sondv.phone.config;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Cache hai tầng: L1 Caffeine cục bộ, đọc xuyên xuống L2 Redis khi trượt.
+ * <p>
+ * Mọi thao tác ghi/xóa được áp dụng lên cả hai tầng rồi phát qua Redis pub/sub để các node khác bỏ bản L1 của mình;
+ * L2 là nguồn dùng chung nên các node đó sẽ đọc lại giá trị mới ở lần truy cập kế tiếp.
+ * Lỗi Redis không làm hỏng request: tầng L2 được coi như trượt và cache tiếp tục chạy với L1.
+ * <p>
+ * Với cache có {@code refresh-after-write}, entry L1 quá hạn làm mới được Caffeine đọc lại từ L2 ở luồng nền
+ * (L2 trượt thì giữ giá trị cũ tới khi hết hạn), để node này nhận giá trị mà node khác đã nạp. Hàm nạp của
+ * {@code @Cacheable(sync = true)} chỉ được gọi trong chính request đã truyền nó vào: nó bọc lời gọi AOP của
+ * request đó, gọi lại sau khi request kết thúc sẽ bỏ qua các interceptor còn lại.
+ * <p>
+ * Mỗi entry L1 được ghi vào {@link CacheDependencyIndex} kèm tag suy ra từ giá trị ({@link CacheTags}), và mỗi entry L2
+ * vào {@link RedisTagIndex} dùng chung, để {@link TwoTierCacheManager#evictTags} xóa đúng những key phụ thuộc vào
+ * dữ liệu vừa thay đổi ở cả hai tầng.
+ * <p>
+ * {@link #get(Object, Callable)} nạp theo kiểu single-flight: trong một node, các request trượt cùng key chờ
+ * chung một lần nạp ({@link SingleFlight}); giữa các node, khóa Redis ({@link RedisLoadLock}) để một node nạp,
+ * các node khác đợi giá trị xuất hiện ở L2. Entry hết hạn tự nhiên được giữ thêm {@code stale-ttl}: request đầu tiên
+ * nạp lại, các request đến trong lúc đó nhận ngay giá trị cũ thay vì chờ. Entry bị xóa do dữ liệu thay đổi thì
+ * không bao giờ được phục vụ dạng cũ.
+ */
+@Slf4j
+public class TwoTierCache extends AbstractValueAdaptingCache {
+
+    private static final int MAX_STALE = 10_000;
+
+    private static final long REMOTE_WAIT_POLL_MS = 50;
+
+    /** Thành phần dùng chung giữa các cache của cùng một manager. */
+    public record Shared(CacheDependencyIndex dependencyIndex,
+                         CacheKeyPopularity popularity,
+                         SingleFlight singleFlight,
+                         @Nullable RedisLoadLock loadLock,
+                         @Nullable RedisTagIndex tagIndex,
+                         Duration remoteLoadWait,
+                         MeterRegistry meterRegistry) {
+    }
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    @Nullable
+    private final Cache remote;
+    // Gửi lệnh xóa L1 sang các node khác; key null nghĩa là xóa toàn bộ cache
+    private final Consumer<String> invalidationPublisher;
+    private final CacheDependencyIndex dependencyIndex;
+    private final CacheKeyPopularity popularity;
+    private final Shared shared;
+    // Entry vừa hết hạn tự nhiên, còn được phục vụ trong lúc nạp lại; null nếu cache tắt stale
+    @Nullable
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> stale;
+
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+    private final Counter remoteErrors;
+    private final Counter refreshes;
+    private final Counter loadLeaders;
+    private final Counter loadCoalesced;
+    private final Counter loadCoalescedRemote;
+    private final Counter staleServed;
+    private final SingleFlight.Listener flightListener;
+    private final Timer localLatency;
+    private final Timer remoteLatency;
+
+    public TwoTierCache(String name,
+                        BiFunction<CacheLoader<Object, Object>, RemovalListener<Object, Object>,
+                                com.github.benmanes.caffeine.cache.Cache<Object, Object>> localFactory,
+                        @Nullable Cache remote,
+                        Consumer<String> invalidationPublisher,
+                        @Nullable Duration staleTtl,
+                        Shared shared) {
+        super(true);
+        this.name = name;
+        this.shared = shared;
+        this.stale = staleTtl != null && !staleTtl.isZero() && !staleTtl.isNegative()
+                ? Caffeine.newBuilder().expireAfterWrite(staleTtl).maximumSize(MAX_STALE)
+                        .<String, Object>evictionListener((key, value, cause) -> onStaleEvicted(key))
+                        .build()
+                : null;
+        this.local = localFactory.apply(new CacheLoader<>() {
+            @Override
+            public Object load(@NonNull Object key) {
+                // Không dùng: L1 luôn được nạp qua lookup/get(key, loader)
+                return null;
+            }
+
+            @Override
+            public Object reload(@NonNull Object key, @NonNull Object oldValue) {
+                return TwoTierCache.this.reload((String) key, oldValue);
+            }
+        }, (key, value, cause) -> onExpired((String) key, value, cause));
+        this.remote = remote;
+        this.invalidationPublisher = invalidationPublisher;
+        this.dependencyIndex = shared.dependencyIndex();
+        this.popularity = shared.popularity();
+        MeterRegistry meterRegistry = shared.meterRegistry();
+
+        this.localHits = requests(meterRegistry, "l1", "hit");
+        this.localMisses = requests(meterRegistry, "l1", "miss");
+        this.remoteHits = requests(meterRegistry, "l2", "hit");
+        this.remoteMisses = requests(meterRegistry, "l2", "miss");
+        this.remoteErrors = Counter.builder("cache.tier.errors")
+                .tag("cache", name).tag("tier", "l2")
+                .register(meterRegistry);
+        this.refreshes = Counter.builder("cache.tier.refreshes")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.loadLeaders = loads(meterRegistry, "leader");
+        this.loadCoalesced = loads(meterRegistry, "coalesced");
+        this.loadCoalescedRemote = loads(meterRegistry, "coalesced_remote");
+        this.staleServed = loads(meterRegistry, "stale");
+        this.flightListener = new SingleFlight.Listener() {
+            @Override
+            public void onLeader() {
+                loadLeaders.increment();
+            }
+
+            @Override
+            public void onCoalesced() {
+                loadCoalesced.increment();
+            }
+        };
+        this.localLatency = latency(meterRegistry, "l1");
+        this.remoteLatency = latency(meterRegistry, "l2");
+    }
+
+    @Override
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    @NonNull
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    @Nullable
+    protected Object lookup(@NonNull Object key) {
+        String localKey = localKey(key);
+        popularity.record(name, localKey);
+        Object stored = localLatency.record(() -> local.getIfPresent(localKey));
+        if (stored != null) {
+            localHits.increment();
+            return stored;
+        }
+        localMisses.increment();
+
+        ValueWrapper wrapper = remoteGet(key);
+        if (wrapper == null) {
+            return null;
+        }
+        Object storeValue = toStoreValue(wrapper.get());
+        putLocal(localKey, storeValue);
+        return storeValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        String localKey = localKey(key);
+        Object staleValue = stale != null ? stale.getIfPresent(localKey) : null;
+
+        try {
+            Object stored;
+            if (staleValue != null) {
+                // Request này nạp lại nếu chưa ai nạp; request đến trong lúc đang nạp nhận bản cũ, không phải chờ
+                stored = shared.singleFlight().executeOrElse(flightKey(localKey),
+                        () -> load(key, localKey, valueLoader), () -> {
+                            staleServed.increment();
+                            return staleValue;
+                        }, flightListener);
+            } else {
+                stored = shared.singleFlight().execute(flightKey(localKey),
+                        () -> load(key, localKey, valueLoader), flightListener);
+            }
+            return (T) fromStoreValue(stored);
+        } catch (ValueRetrievalException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    // Chỉ leader của single-flight chạy tới đây; giá trị được ghi vào L1 trước khi các luồng chờ được trả kết quả.
+    // L2 vừa được đọc (và trượt) trong lookup của get(key, loader) nên không đọc lại ở đây
+    private Object load(Object key, String localKey, Callable<?> valueLoader) throws Exception {
+        // Kiểm tra lại: có thể leader trước vừa nạp xong ngay trước khi key được đăng ký
+        Object present = local.getIfPresent(localKey);
+        if (present != null) {
+            return present;
+        }
+
+        RedisLoadLock lock = remote != null ? shared.loadLock() : null;
+        String token = lock != null ? lock.tryAcquire(name, localKey) : null;
+        if (lock != null && token == null) {
+            // Node khác đang nạp key này: đợi giá trị xuất hiện ở L2, quá hạn thì tự nạp
+            ValueWrapper loadedElsewhere = awaitRemote(key);
+            if (loadedElsewhere != null) {
+                loadCoalescedRemote.increment();
+                return storeLoaded(localKey, toStoreValue(loadedElsewhere.get()));
+            }
+        }
+        try {
+            Object value = valueLoader.call();
+            remotePut(key, localKey, value);
+            return storeLoaded(localKey, toStoreValue(value));
+        } finally {
+            if (token != null) {
+                lock.release(name, localKey, token);
+            }
+        }
+    }
+
+    private Object storeLoaded(String localKey, Object storeValue) {
+        putLocal(localKey, storeValue);
+        if (stale != null) {
+            stale.invalidate(localKey);
+        }
+        return storeValue;
+    }
+
+    // Lỗi khi đọc L2 (Redis lỗi, giá trị không giải tuần tự được) thì coi là trượt ngay, không chờ hết remote-load-wait
+    @Nullable
+    private ValueWrapper awaitRemote(Object key) throws InterruptedException {
+        long deadline = System.nanoTime() + shared.remoteLoadWait().toNanos();
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(REMOTE_WAIT_POLL_MS);
+            ValueWrapper wrapper;
+            try {
+                wrapper = remoteLatency.record(() -> remote.get(key));
+            } catch (RuntimeException e) {
+                remoteErrors.increment();
+                log.warn("Cache L2 [{}] lỗi khi chờ node khác nạp, tự nạp: {}", name, e.getMessage());
+                return null;
+            }
+            if (wrapper != null) {
+                return wrapper;
+            }
+        }
+        return null;
+    }
+
+    private String flightKey(String localKey) {
+        return name + "::" + localKey;
+    }
+
+    // Listener eviction của Caffeine: chỉ entry hết hạn mới được giữ lại làm bản cũ. Bản cũ giữ nguyên tag trong
+    // chỉ mục phụ thuộc để lệnh xóa theo tag bỏ được cả nó (evictLocal xóa cả L1 lẫn kho bản cũ)
+    private void onExpired(String localKey, @Nullable Object value, RemovalCause cause) {
+        if (stale != null && value != null && cause == RemovalCause.EXPIRED) {
+            stale.put(localKey, value);
+            return;
+        }
+        dependencyIndex.remove(name, localKey);
+    }
+
+    // Bản cũ hết stale-ttl: gỡ tag, trừ khi key đã được nạp lại vào L1 (khi đó tag thuộc về entry mới)
+    private void onStaleEvicted(@Nullable String localKey) {
+        if (localKey != null && !local.asMap().containsKey(localKey)) {
+            dependencyIndex.remove(name, localKey);
+        }
+    }
+
+    @Override
+    public void put(@NonNull Object key, @Nullable Object value) {
+        remotePut(key, localKey(key), value);
+        putLocal(localKey(key), toStoreValue(value));
+        invalidationPublisher.accept(localKey(key));
+    }
+
+    @Override
+    public void evict(@NonNull Object key) {
+        remoteRun(() -> remote.evict(key));
+        evictLocal(localKey(key));
+        invalidationPublisher.accept(localKey(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(@NonNull Object key) {
+        boolean present = local.asMap().containsKey(localKey(key));
+        evictLocal(localKey(key));
+        if (remote != null) {
+            Boolean remotePresent = remoteCall(() -> remote.evictIfPresent(key));
+            present |= Boolean.TRUE.equals(remotePresent);
+        }
+        invalidationPublisher.accept(localKey(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        remoteRun(remote != null ? remote::clear : null);
+        clearLocal();
+        invalidationPublisher.accept(null);
+    }
+
+    // Gọi khi nhận lệnh xóa từ node khác: chỉ bỏ L1, không phát lại
+    void invalidateLocal(@Nullable String localKey) {
+        if (localKey == null) {
+            clearLocal();
+        } else {
+            evictLocal(localKey);
+        }
+    }
+
+    // Xóa một entry do chỉ mục phụ thuộc chỉ ra; không phát lại từng key vì lệnh theo tag đã được phát
+    void evictDependent(String localKey, boolean includeRemote) {
+        if (includeRemote) {
+            remoteRun(() -> remote.evict(localKey));
+        }
+        evictLocal(localKey);
+    }
+
+    private void putLocal(String localKey, Object storeValue) {
+        local.put(localKey, track(localKey, storeValue));
+    }
+
+    private Object track(String localKey, Object storeValue) {
+        dependencyIndex.record(name, localKey, CacheTags.of(fromStoreValue(storeValue)));
+        return storeValue;
+    }
+
+    private void evictLocal(String localKey) {
+        local.invalidate(localKey);
+        if (stale != null) {
+            stale.invalidate(localKey);
+        }
+        dependencyIndex.remove(name, localKey);
+    }
+
+    private void clearLocal() {
+        local.invalidateAll();
+        if (stale != null) {
+            stale.invalidateAll();
+        }
+        dependencyIndex.removeCache(name);
+    }
+
+    // Chạy trên luồng refresh của Caffeine: lấy bản mới nhất trên L2, L2 trượt hoặc lỗi thì giữ giá trị cũ
+    private Object reload(String localKey, Object oldValue) {
+        ValueWrapper wrapper = remoteGet(localKey);
+        if (wrapper == null) {
+            return oldValue;
+        }
+        refreshes.increment();
+        return track(localKey, toStoreValue(wrapper.get()));
+    }
+
+    long localSize() {
+        return local.estimatedSize();
+    }
+
+    // Key L1 được chuẩn hóa thành chuỗi để lệnh xóa gửi qua pub/sub khớp đúng entry trên node nhận
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    @Nullable
+    private ValueWrapper remoteGet(Object key) {
+        if (remote == null) {
+            return null;
+        }
+        ValueWrapper wrapper = remoteCall(() -> remote.get(key));
+        if (wrapper != null) {
+            remoteHits.increment();
+        } else {
+            remoteMisses.increment();
+        }
+        return wrapper;
+    }
+
+    // Ghi L2 kèm tag vào chỉ mục dùng chung để lệnh xóa theo tag từ bất kỳ node nào cũng tìm thấy entry này
+    private void remotePut(Object key, String localKey, @Nullable Object value) {
+        if (remote == null) {
+            return;
+        }
+        remoteRun(() -> remote.put(key, value));
+        RedisTagIndex tagIndex = shared.tagIndex();
+        if (tagIndex != null) {
+            tagIndex.add(name, localKey, CacheTags.of(value));
+        }
+    }
+
+    private void remoteRun(@Nullable Runnable action) {
+        if (remote == null || action == null) {
+            return;
+        }
+        remoteCall(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @Nullable
+    private <T> T remoteCall(Supplier<T> action) {
+        try {
+            return remoteLatency.record(action);
+        } catch (RuntimeException e) {
+            remoteErrors.increment();
+            log.warn("Cache L2 [{}] lỗi, tạm dùng L1: {}", name, e.getMessage());
+            return null;
+        }
+    }
+
+    private Counter requests(MeterRegistry registry, String tier, String result) {
+        return Counter.builder("cache.tier.requests")
+                .tag("cache", name).tag("tier", tier).tag("result", result)
+                .register(registry);
+    }
+
+    private Counter loads(MeterRegistry registry, String result) {
+        return Counter.builder("cache.singleflight.loads")
+                .tag("cache", name).tag("result", result)
+                .register(registry);
+    }
+
+    private Timer latency(MeterRegistry registry, String tier) {
+        return Timer.builder("cache.tier.latency")
+                .tag("cache", name).tag("tier", tier)
+                .register(registry);
+    }
+}
@@ -0,0 +1,213 @@
+package com.sondv.phone.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tạo {@link TwoTierCache} theo tên (động, giống CaffeineCacheManager) và đồng bộ L1 giữa các node.
+ * <p>
+ * Mỗi lệnh ghi/xóa được phát lên {@code app.cache.invalidation-channel} kèm id của node gửi;
+ * node nhận bỏ entry L1 tương ứng, node gửi bỏ qua tin nhắn của chính mình.
+ * Lệnh xóa theo tag ({@link #evictTags}) xóa L2 theo chỉ mục tag dùng chung trên Redis ({@link RedisTagIndex}),
+ * rồi được phát đi để mỗi node bỏ L1 theo chỉ mục phụ thuộc của riêng nó.
+ */
+@Slf4j
+public class TwoTierCacheManager implements CacheManager, MessageListener, ApplicationEventPublisherAware {
+
+    private final TwoTierCacheProperties properties;
+    private final CaffeinePolicyRegistry policyRegistry;
+    private final RedisCacheManager redisCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+    private final CacheDependencyIndex dependencyIndex = new CacheDependencyIndex();
+    private final RedisTagIndex tagIndex;
+    private final CacheKeyPopularity popularity = new CacheKeyPopularity();
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final TwoTierCache.Shared shared;
+    @Nullable
+    private ApplicationEventPublisher eventPublisher;
+
+    public TwoTierCacheManager(TwoTierCacheProperties properties,
+                               CaffeinePolicyRegistry policyRegistry,
+                               RedisCacheManager redisCacheManager,
+                               StringRedisTemplate redisTemplate,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.policyRegistry = policyRegistry;
+        this.redisCacheManager = redisCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cache.dependency.entries", dependencyIndex, CacheDependencyIndex::size).register(meterRegistry);
+        Gauge.builder("cache.singleflight.inflight", singleFlight, SingleFlight::inFlightCount).register(meterRegistry);
+        this.tagIndex = new RedisTagIndex(redisTemplate, longestRemoteTtl(properties));
+        this.shared = new TwoTierCache.Shared(dependencyIndex, popularity, singleFlight,
+                new RedisLoadLock(redisTemplate, properties.getLoadLockTtl()), tagIndex, properties.getRemoteLoadWait(),
+                meterRegistry);
+    }
+
+    @Override
+    public void setApplicationEventPublisher(@NonNull ApplicationEventPublisher applicationEventPublisher) {
+        this.eventPublisher = applicationEventPublisher;
+    }
+
+    public CacheKeyPopularity getPopularity() {
+        return popularity;
+    }
+
+    @Override
+    public Cache getCache(@NonNull String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    @NonNull
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * Xóa mọi entry (ở mọi cache) chứa dữ liệu mang một trong các tag, trên cả L2 và L1 của mọi node.
+     */
+    public void evictTags(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        // Entry L2 do bất kỳ node nào ghi (chỉ mục Redis) cộng entry đang nằm trong L1 của node này
+        Set<CacheDependencyIndex.EntryRef> refs = new HashSet<>(tagIndex.drain(tags));
+        refs.addAll(dependencyIndex.lookup(tags));
+        Set<String> evicted = evict(refs, true);
+        log.debug("Xóa cache theo tag {}: các cache bị ảnh hưởng trên node hiện tại {}", tags, evicted);
+        notifyInvalidated(evicted);
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("origin", nodeId);
+        message.put("tags", tags);
+        send(message);
+    }
+
+    // Trả về tên các cache có entry bị xóa
+    private Set<String> evict(Set<CacheDependencyIndex.EntryRef> refs, boolean includeRemote) {
+        Set<String> affected = new HashSet<>();
+        for (CacheDependencyIndex.EntryRef ref : refs) {
+            // Xóa L2 cần cả những cache node này chưa từng dùng
+            TwoTierCache cache = includeRemote
+                    ? caches.computeIfAbsent(ref.cache(), this::createCache)
+                    : caches.get(ref.cache());
+            if (cache != null) {
+                cache.evictDependent(ref.key(), includeRemote);
+                affected.add(ref.cache());
+            }
+        }
+        return affected;
+    }
+
+    // Tag SET phải sống ít nhất bằng entry L2 lâu nhất mà nó trỏ tới
+    private static Duration longestRemoteTtl(TwoTierCacheProperties properties) {
+        Duration longest = properties.getDefaults().getRemoteTtl();
+        for (String name : properties.getCaches().keySet()) {
+            Duration ttl = properties.specFor(name).getRemoteTtl();
+            if (ttl != null && (longest == null || ttl.compareTo(longest) > 0)) {
+                longest = ttl;
+            }
+        }
+        return longest != null ? longest : Duration.ofHours(1);
+    }
+
+    private void notifyInvalidated(Set<String> cacheNames) {
+        if (eventPublisher != null && !cacheNames.isEmpty()) {
+            eventPublisher.publishEvent(new CacheInvalidatedEvent(Set.copyOf(cacheNames)));
+        }
+    }
+
+    private TwoTierCache createCache(String name) {
+        TwoTierCacheProperties.Spec spec = policyRegistry.specFor(name);
+        Cache remote = Boolean.TRUE.equals(spec.getRemoteEnabled()) ? redisCacheManager.getCache(name) : null;
+
+        TwoTierCache cache = new TwoTierCache(name,
+                (loader, evictionListener) -> policyRegistry.build(name, loader, evictionListener),
+                remote, key -> publish(name, key), spec.getStaleTtl(), shared);
+        Gauge.builder("cache.tier.size", cache, TwoTierCache::localSize)
+                .tag("cache", name).tag("tier", "l1")
+                .register(meterRegistry);
+        log.info("Khởi tạo cache hai tầng [{}]: L1 ttl={} refresh={}, L2 {}", name, spec.getLocalTtl(),
+                spec.getRefreshAfterWrite(), remote != null ? "ttl=" + spec.getRemoteTtl() : "tắt");
+        return cache;
+    }
+
+    private void publish(String cacheName, @Nullable String key) {
+        if (key == null) {
+            notifyInvalidated(Set.of(cacheName));
+        }
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("origin", nodeId);
+        message.put("cache", cacheName);
+        message.put("key", key);
+        send(message);
+    }
+
+    private void send(Map<String, Object> message) {
+        try {
+            redisTemplate.convertAndSend(properties.getInvalidationChannel(), objectMapper.writeValueAsString(message));
+        } catch (JsonProcessingException | RuntimeException e) {
+            // Node khác sẽ giữ bản L1 cũ tối đa local-ttl
+            log.warn("Không thể phát lệnh xóa cache {}: {}", message, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, @Nullable byte[] pattern) {
+        try {
+            Map<?, ?> payload = objectMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), Map.class);
+            if (nodeId.equals(payload.get("origin"))) {
+                return;
+            }
+            if (payload.get("tags") instanceof Collection<?> tags) {
+                // L2 đã được node gửi xóa, ở đây chỉ cần bỏ L1
+                notifyInvalidated(evict(dependencyIndex.lookup(tags.stream().map(String::valueOf).toList()), false));
+                return;
+            }
+            TwoTierCache cache = caches.get(String.valueOf(payload.get("cache")));
+            if (cache != null) {
+                Object key = payload.get("key");
+                cache.invalidateLocal(key != null ? key.toString() : null);
+                if (key == null) {
+                    // Lệnh theo từng key còn đến từ put của node khác, không coi là sự kiện xóa
+                    notifyInvalidated(Set.of(cache.getName()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Bỏ qua lệnh xóa cache không hợp lệ: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.sondv.phone.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cấu hình cache hai tầng (L1 Caffeine trong tiến trình, L2 Redis dùng chung giữa các node).
+ * <p>
+ * {@code app.cache.defaults.*} áp dụng cho mọi cache, {@code app.cache.caches.<tên>.*} ghi đè từng thuộc tính của một cache.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "app.cache")
+public class TwoTierCacheProperties {
+
+    // Kênh Redis pub/sub dùng để phát lệnh xóa L1 tới các node khác
+    private String invalidationChannel = "cache:invalidation";
+
+    // Số luồng dùng cho refresh-ahead của toàn bộ cache L1
+    private int refreshThreads = 2;
+
+    // Single-flight giữa các node: thời hạn khóa nạp trên Redis và thời gian tối đa chờ node khác nạp xong
+    private Duration loadLockTtl = Duration.ofSeconds(10);
+    private Duration remoteLoadWait = Duration.ofSeconds(3);
+
+    private Spec defaults = Spec.builtInDefaults();
+
+    private Map<String, Spec> caches = new LinkedHashMap<>();
+
+    public Spec specFor(String cacheName) {
+        Spec override = caches.get(cacheName);
+        if (override == null) {
+            return defaults;
+        }
+        Spec merged = new Spec();
+        merged.setLocalTtl(override.getLocalTtl() != null ? override.getLocalTtl() : defaults.getLocalTtl());
+        merged.setLocalMaxSize(override.getLocalMaxSize() != null ? override.getLocalMaxSize() : defaults.getLocalMaxSize());
+        merged.setRemoteTtl(override.getRemoteTtl() != null ? override.getRemoteTtl() : defaults.getRemoteTtl());
+        merged.setRemoteEnabled(override.getRemoteEnabled() != null ? override.getRemoteEnabled() : defaults.getRemoteEnabled());
+        merged.setLocalMaxWeight(override.getLocalMaxWeight() != null ? override.getLocalMaxWeight() : defaults.getLocalMaxWeight());
+        merged.setRefreshAfterWrite(override.getRefreshAfterWrite() != null ? override.getRefreshAfterWrite() : defaults.getRefreshAfterWrite());
+        merged.setExpiryJitter(override.getExpiryJitter() != null ? override.getExpiryJitter() : defaults.getExpiryJitter());
+        merged.setStaleTtl(override.getStaleTtl() != null ? override.getStaleTtl() : defaults.getStaleTtl());
+        return merged;
+    }
+
+    @Getter
+    @Setter
+    public static class Spec {
+        private Duration localTtl;
+        private Long localMaxSize;
+        // Nếu đặt, L1 bị giới hạn theo dung lượng ước lượng của giá trị thay vì theo số entry
+        private DataSize localMaxWeight;
+        // Entry cũ hơn mốc này được làm mới nền ở lần đọc kế tiếp, request vẫn nhận giá trị hiện có
+        private Duration refreshAfterWrite;
+        // Tỉ lệ lệch ngẫu nhiên của TTL (0.1 = ±10%)
+        private Double expiryJitter;
+        // Thời gian giữ bản cũ sau khi entry hết hạn để phục vụ trong lúc nạp lại (0 = tắt)
+        private Duration staleTtl;
+        private Duration remoteTtl;
+        // Tắt L2 cho cache có giá trị không đọc lại được từ JSON (Page, entity có quan hệ lazy)
+        private Boolean remoteEnabled;
+
+        static Spec builtInDefaults() {
+            Spec spec = new Spec();
+            spec.setLocalTtl(Duration.ofMinutes(5));
+            spec.setLocalMaxSize(5000L);
+            spec.setRemoteTtl(Duration.ofMinutes(10));
+            spec.setRemoteEnabled(true);
+            spec.setExpiryJitter(0.1);
+            spec.setStaleTtl(Duration.ofMinutes(1));
+            return spec;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.sondv.phone.entity.Order;
 import com.sondv.phone.entity.Product;
 import com.sondv.phone.entity.User;
 import com.sondv.phone.service.AdminService;
+import com.sondv.phone.service.ProductSuggestTrie;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -25,12 +26,18 @@ import java.util.Map;
 public class AdminController {
 
     private final AdminService adminService;
+    private final ProductSuggestTrie productSuggestTrie;
 
     @GetMapping("/stats")
     public ResponseEntity<StatsResponse> getDashboardStats(@RequestParam(defaultValue = "7") int days) {
         return ResponseEntity.ok(adminService.getDashboardStats(days));
     }
 
+    @GetMapping("/suggest-stats")
+    public ResponseEntity<ProductSuggestTrie.Stats> getSuggestStats() {
+        return ResponseEntity.ok(productSuggestTrie.stats());
+    }
+
     @GetMapping("/profit")
     public ResponseEntity<BigDecimal> getProfit(@RequestParam int days) {
         LocalDateTime fromDate = LocalDate.now().minusDays(days).atStartOfDay();
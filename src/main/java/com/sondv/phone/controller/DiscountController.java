@@ -5,16 +5,16 @@ import com.sondv.phone.dto.DiscountApplyResponse;
 import com.sondv.phone.entity.Discount;
 import com.sondv.phone.dto.DiscountDTO;
 import com.sondv.phone.service.DiscountService;
+import com.sondv.phone.service.DiscountSpinService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.OffsetDateTime;
-import java.time.ZoneId;
 import java.util.*;
 
 @RestController
@@ -22,6 +22,7 @@ import java.util.*;
 @RequiredArgsConstructor
 public class DiscountController {
     private final DiscountService discountService;
+    private final DiscountSpinService discountSpinService;
 
     @PostMapping
     public ResponseEntity<Discount> createDiscount(@RequestBody DiscountDTO discountDTO) {
@@ -32,6 +33,7 @@ public class DiscountController {
         discount.setValidTo(discountDTO.getValidTo());
         discount.setMinOrderValue(discountDTO.getMinOrderValue());
         discount.setProbabilityWeight(discountDTO.getProbabilityWeight());
+        discount.setMaxUses(discountDTO.getMaxUses());
 
         Discount createdDiscount = discountService.createDiscount(discount);
         return ResponseEntity.ok(createdDiscount);
@@ -61,26 +63,14 @@ public class DiscountController {
 
     @GetMapping("/spin")
     public ResponseEntity<Discount> spinDiscount() {
-        OffsetDateTime now = OffsetDateTime.now(ZoneId.of("Asia/Ho_Chi_Minh"));
-        List<Discount> candidates = discountService.getAll().stream()
-                .filter(d -> !d.getValidFrom().isAfter(now) && !d.getValidTo().isBefore(now))
-                .filter(d -> d.getProbabilityWeight() > 0)
-                .toList();
-
-        if (candidates.isEmpty()) return ResponseEntity.noContent().build();
-
-        int totalWeight = candidates.stream().mapToInt(Discount::getProbabilityWeight).sum();
-        int rand = new Random().nextInt(totalWeight) + 1;
-
-        int cumulative = 0;
-        for (Discount d : candidates) {
-            cumulative += d.getProbabilityWeight();
-            if (rand <= cumulative) {
-                return ResponseEntity.ok(d);
-            }
-        }
+        Discount picked = discountSpinService.spin();
+        return picked != null ? ResponseEntity.ok(picked) : ResponseEntity.noContent().build();
+    }
 
-        return ResponseEntity.internalServerError().build();
+    @GetMapping("/spin/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Long>> getSpinStats() {
+        return ResponseEntity.ok(discountSpinService.getHitCounts());
     }
 
     @GetMapping("/active")
@@ -1,6 +1,8 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.CategoryStockSummaryDTO;
 import com.sondv.phone.dto.InventoryReportDTO;
+import com.sondv.phone.dto.StockContentionDTO;
 import com.sondv.phone.entity.Inventory;
 import com.sondv.phone.entity.InventoryLog;
 import com.sondv.phone.entity.User;
@@ -8,6 +10,8 @@ import com.sondv.phone.repository.InventoryLogRepository;
 import com.sondv.phone.repository.InventoryRepository;
 import com.sondv.phone.repository.UserRepository;
 import com.sondv.phone.service.InventoryService;
+import com.sondv.phone.service.InventorySummaryService;
+import com.sondv.phone.service.StockReservationService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -33,6 +37,8 @@ public class InventoryController {
     private final UserRepository userRepository;
     private final InventoryLogRepository inventoryLogRepository;
     private final InventoryRepository inventoryRepository;
+    private final StockReservationService stockReservationService;
+    private final InventorySummaryService inventorySummaryService;
 
     // Xem tồn kho
     @GetMapping("/{productId}")
@@ -99,20 +105,21 @@ public class InventoryController {
     @GetMapping("/summary")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<?> getInventorySummary() {
-        List<Inventory> inventories = inventoryRepository.findAll();
-
-        long totalProducts = inventories.size();
-        long outOfStock = inventories.stream().filter(i -> i.getQuantity() == 0).count();
-        long lowStock = inventories.stream().filter(i -> i.getQuantity() > 0 && i.getQuantity() < i.getMinQuantity()).count();
-        long inStock = totalProducts - outOfStock - lowStock;
+        return ResponseEntity.ok(inventorySummaryService.getSummary());
+    }
 
-        Map<String, Long> summary = new HashMap<>();
-        summary.put("totalProducts", totalProducts);
-        summary.put("inStock", inStock);
-        summary.put("lowStock", lowStock);
-        summary.put("outOfStock", outOfStock);
+    // Tổng hợp tồn kho theo danh mục
+    @GetMapping("/summary/categories")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<CategoryStockSummaryDTO>> getInventorySummaryByCategory() {
+        return ResponseEntity.ok(inventorySummaryService.getCategoryBreakdown());
+    }
 
-        return ResponseEntity.ok(summary);
+    // Các SKU bị tranh chấp nhiều nhất khi giữ hàng (số lượt chạy chồng, bị từ chối, thời gian chờ)
+    @GetMapping("/contention")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<StockContentionDTO>> getStockContention(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(stockReservationService.topContended(Math.max(1, Math.min(limit, 200))));
     }
 
     @PostMapping("/adjust/{productId}")
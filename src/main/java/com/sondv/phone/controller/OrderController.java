@@ -3,6 +3,7 @@ package com.sondv.phone.controller;
 import com.sondv.phone.dto.*;
 import com.sondv.phone.entity.*;
 import com.sondv.phone.repository.*;
+import com.sondv.phone.service.IdempotencyService;
 import com.sondv.phone.service.InventoryService;
 import com.sondv.phone.service.OrderService;
 import com.sondv.phone.service.ShippingService;
@@ -11,10 +12,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.Collections;
@@ -34,14 +37,21 @@ public class OrderController {
     private final OrderService orderService;
     private final InventoryService inventoryService;
     private final ShippingService shippingService;
+    private final IdempotencyService idempotencyService;
 
     private static final Logger logger = LoggerFactory.getLogger(OrderController.class);
 
     @PostMapping
     @PreAuthorize("hasRole('CUSTOMER')")
-    public ResponseEntity<Order> createOrder(@RequestBody OrderRequest orderRequest, Authentication authentication) {
+    public ResponseEntity<?> createOrder(@RequestBody OrderRequest orderRequest,
+                                         @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                         Authentication authentication) {
         User user = (User) authentication.getPrincipal();
+        return idempotencyService.execute("order.create", user.getId(), idempotencyKey, orderRequest,
+                () -> doCreateOrder(orderRequest, user));
+    }
 
+    private ResponseEntity<?> doCreateOrder(OrderRequest orderRequest, User user) {
         // Cập nhật address và phone nếu chưa có (phù hợp với OAuth2)
         boolean updated = false;
         if (user.getAddress() == null || user.getAddress().isBlank()) {
@@ -85,6 +95,32 @@ public class OrderController {
         return ResponseEntity.ok(response);
     }
 
+    // Cùng dữ liệu với GET /api/orders nhưng ghi dần dạng NDJSON, không dựng cả danh sách trong bộ nhớ
+    @GetMapping("/stream")
+    @PreAuthorize("hasAnyRole('CUSTOMER', 'ADMIN', 'STAFF')")
+    public ResponseEntity<?> streamOrders(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(401).body(Collections.singletonMap("message", "Chưa đăng nhập!"));
+        }
+
+        User user = (User) authentication.getPrincipal();
+        Optional<Customer> customer = customerRepository.findByUserId(user.getId());
+
+        Long customerId;
+        if (customer.isPresent()) {
+            customerId = customer.get().getId();
+        } else if (user.getRoles().stream().anyMatch(role -> role == RoleName.ADMIN || role == RoleName.STAFF)) {
+            customerId = null;
+        } else {
+            return ResponseEntity.status(403).body(Collections.singletonMap("message", "Không có quyền truy cập!"));
+        }
+
+        StreamingResponseBody body = out -> orderService.writeOrderHistory(customerId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('CUSTOMER', 'ADMIN', 'STAFF')")
     public ResponseEntity<?> getOrderById(@PathVariable Long id, Authentication authentication) {
@@ -118,6 +154,7 @@ public class OrderController {
             @RequestParam(defaultValue = "desc") String direction,
             @RequestParam(required = false) String status,
             @RequestParam(required = false) String customerName,
+            @RequestParam(required = false) String phone,
             @RequestParam(required = false) String orderId,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
@@ -128,14 +165,43 @@ public class OrderController {
         }
 
         User user = (User) authentication.getPrincipal();
+        OrderSearchCriteria criteria = new OrderSearchCriteria(status, customerName, phone, orderId, startDate, endDate);
 
-        Page<OrderResponse> result = orderService.getPaginatedOrders(
-                user, page, size, sort, direction, status, customerName, orderId, startDate, endDate
-        );
+        Page<OrderResponse> result = orderService.getPaginatedOrders(user, page, size, sort, direction, criteria);
 
         return ResponseEntity.ok(result);
     }
 
+    @GetMapping("/search")
+    @PreAuthorize("hasAnyRole('CUSTOMER', 'ADMIN', 'STAFF')")
+    public ResponseEntity<?> searchOrders(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String customerName,
+            @RequestParam(required = false) String phone,
+            @RequestParam(required = false) String orderId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            Authentication authentication
+    ) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ResponseEntity.status(401).body(Collections.singletonMap("message", "Chưa đăng nhập!"));
+        }
+        if (size <= 0 || size > 100) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("message", "Kích thước trang không hợp lệ!"));
+        }
+
+        User user = (User) authentication.getPrincipal();
+        OrderSearchCriteria criteria = new OrderSearchCriteria(status, customerName, phone, orderId, startDate, endDate);
+        try {
+            return ResponseEntity.ok(orderService.searchOrders(user, criteria, direction, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("message", e.getMessage()));
+        }
+    }
+
     @PutMapping("/{id}/status")
     @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
     public ResponseEntity<OrderResponse> updateOrderStatus(@PathVariable Long id,
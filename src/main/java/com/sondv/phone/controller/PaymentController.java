@@ -4,9 +4,12 @@ import com.sondv.phone.dto.PaymentRequest;
 import com.sondv.phone.dto.PaymentUpdateRequest;
 import com.sondv.phone.repository.PaymentRepository;
 import com.sondv.phone.entity.*;
+import com.sondv.phone.exception.ApiException;
+import com.sondv.phone.service.IdempotencyService;
 import com.sondv.phone.service.MomoService;
 import com.sondv.phone.service.OrderService;
 import com.sondv.phone.service.PaymentService;
+import com.sondv.phone.service.StockHoldService;
 import com.sondv.phone.service.VNPayService;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
@@ -20,6 +23,7 @@ import org.springframework.web.bind.annotation.*;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.*;
 
 @RestController
@@ -31,17 +35,26 @@ public class PaymentController {
     private final MomoService momoService;
     private final PaymentRepository paymentRepository;
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final StockHoldService stockHoldService;
     private static final Logger log = LoggerFactory.getLogger(PaymentController.class);
 
     @PreAuthorize("hasAuthority('CUSTOMER')")
     @PostMapping
-    public ResponseEntity<Map<String, String>> createPayment(@RequestBody PaymentRequest paymentRequest, Authentication authentication) {
+    public ResponseEntity<?> createPayment(@RequestBody PaymentRequest paymentRequest,
+                                           @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                           Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        return idempotencyService.execute("payment.create", user.getId(), idempotencyKey, paymentRequest,
+                () -> doCreatePayment(paymentRequest, user));
+    }
+
+    private ResponseEntity<?> doCreatePayment(PaymentRequest paymentRequest, User user) {
         if (paymentRequest.getMethod() == null) {
             log.error("Payment method is null in request: {}", paymentRequest);
             return ResponseEntity.badRequest().body(Map.of("message", "Phương thức thanh toán không được để trống"));
         }
 
-        User user = (User) authentication.getPrincipal();
         Order order = paymentService.getOrderById(paymentRequest.getOrderId());
 
         if (!order.getCustomer().getUser().getId().equals(user.getId())) {
@@ -55,8 +68,7 @@ public class PaymentController {
 
             switch (paymentRequest.getMethod()) {
                 case VNPAY:
-                    paymentService.updatePaymentStatus(order.getId(), PaymentStatus.PROCESSING, null);
-                    paymentUrl = vnPayService.createPayment(payment.getId(), order.getTotalPrice().doubleValue());
+                    paymentUrl = createVNPayUrl(order, payment);
                     break;
                 case COD:
                     paymentService.updatePaymentStatus(order.getId(), PaymentStatus.AWAITING_DELIVERY, payment.getTransactionId());
@@ -123,8 +135,11 @@ public class PaymentController {
 
             if (status == PaymentStatus.PAID) {
                 log.info("Confirming order for payment TxnRef={}", vnp_TxnRef);
-                orderService.confirmOrder(payment.getOrder().getId(), user);
-                response.sendRedirect("/order-confirmation");
+                if (confirmPaidOrder(payment.getOrder().getId(), user)) {
+                    response.sendRedirect("/order-confirmation");
+                } else {
+                    response.sendRedirect("/payment-failed?code=98&message=order_expired_refund");
+                }
             } else {
                 log.warn("Payment failed for TxnRef={}. ResponseCode={}", vnp_TxnRef, vnp_ResponseCode);
                 response.sendRedirect("/payment-failed?code=" + vnp_ResponseCode + "&message=payment_failed");
@@ -169,7 +184,7 @@ public class PaymentController {
 
             if (status == PaymentStatus.PAID) {
                 log.info("Confirming order for payment TxnRef={}", vnp_TxnRef);
-                orderService.confirmOrder(payment.getOrder().getId(), null);
+                confirmPaidOrder(payment.getOrder().getId(), null);
             } else {
                 log.warn("Payment failed for TxnRef={}. ResponseCode={}", vnp_TxnRef, vnp_ResponseCode);
             }
@@ -206,8 +221,7 @@ public class PaymentController {
         String paymentUrl;
         switch (payment.getPaymentMethod()) {
             case VNPAY:
-                paymentService.updatePaymentStatus(orderId, PaymentStatus.PROCESSING, null);
-                paymentUrl = vnPayService.createPayment(payment.getId(), order.getTotalPrice().doubleValue());
+                paymentUrl = createVNPayUrl(order, payment);
                 break;
             case COD:
                 paymentUrl = "/order-confirmation";
@@ -293,6 +307,31 @@ public class PaymentController {
                 paymentUpdateRequest.getTransactionId()));
     }
 
+    // Chỉ phát hành URL khi đơn còn giữ hàng; URL hết hạn trước hold để khách không trả tiền cho đơn đã hoàn kho
+    private String createVNPayUrl(Order order, Payment payment) {
+        if (order.getStatus() != OrderStatus.PENDING) {
+            throw new ApiException(400, "Đơn hàng không còn chờ thanh toán");
+        }
+        LocalDateTime expiresAt = stockHoldService.paymentExpiry(order.getCreatedAt());
+        paymentService.markProcessing(order.getId(), expiresAt);
+        return vnPayService.createPayment(payment.getId(), order.getTotalPrice().doubleValue(), expiresAt);
+    }
+
+    // Tiền đã về: xác nhận đơn, hoặc nếu đơn đã bị hủy do hết hạn giữ hàng thì đánh dấu hoàn tiền thay vì bỏ qua
+    private boolean confirmPaidOrder(Long orderId, User user) {
+        try {
+            orderService.confirmOrder(orderId, user);
+            return true;
+        } catch (IllegalStateException e) {
+            if (paymentService.flagForRefund(orderId)) {
+                return false;
+            }
+            // Đơn đã được xác nhận qua đường khác (IPN tới trước callback): thanh toán vẫn hợp lệ
+            log.warn("Order {} already left PENDING before payment confirmation: {}", orderId, e.getMessage());
+            return true;
+        }
+    }
+
     private String buildHashData(Map<String, String> params) {
         List<String> fieldNames = new ArrayList<>(params.keySet());
         Collections.sort(fieldNames);
@@ -1,7 +1,9 @@
 package com.sondv.phone.controller;
 
+import com.sondv.phone.dto.ProductCursorPageDTO;
 import com.sondv.phone.dto.ProductDTO;
 import com.sondv.phone.dto.ProductImageDTO;
+import com.sondv.phone.dto.ProductSuggestionDTO;
 import com.sondv.phone.entity.*;
 import com.sondv.phone.service.ProductService;
 import jakarta.validation.Valid;
@@ -125,6 +127,50 @@ public class ProductController {
         }
     }
 
+    @GetMapping("/suggest")
+    public ResponseEntity<List<ProductSuggestionDTO>> suggestProducts(
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(defaultValue = "8") int limit) {
+        try {
+            if (limit <= 0) {
+                return ResponseEntity.badRequest().body(List.of());
+            }
+            return ResponseEntity.ok(productService.suggestProducts(q, limit));
+        } catch (Exception e) {
+            logger.error("Error suggesting products for prefix: {}", q, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(List.of());
+        }
+    }
+
+    @GetMapping("/filtered/cursor")
+    public ResponseEntity<ProductCursorPageDTO> getFilteredProductsByCursor(
+            @RequestParam(required = false) String searchKeyword,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            if (size <= 0 || size > 100) {
+                return ResponseEntity.badRequest().build();
+            }
+            if ((minPrice != null && minPrice.compareTo(BigDecimal.ZERO) < 0)
+                    || (maxPrice != null && maxPrice.compareTo(BigDecimal.ZERO) < 0)
+                    || (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0)) {
+                logger.warn("Invalid price range: min={}, max={}", minPrice, maxPrice);
+                return ResponseEntity.badRequest().build();
+            }
+
+            ProductCursorPageDTO products = productService.getFilteredProductsByCursor(searchKeyword, minPrice, maxPrice, sortBy, cursor, size);
+            return ResponseEntity.ok(products);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error fetching products by cursor", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ProductDTO> getProductById(@PathVariable String id) {
         try {
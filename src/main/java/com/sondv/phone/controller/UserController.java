@@ -6,6 +6,7 @@ import com.sondv.phone.entity.Customer;
 import com.sondv.phone.entity.User;
 import com.sondv.phone.repository.CustomerRepository;
 import com.sondv.phone.repository.UserRepository;
+import com.sondv.phone.service.OrderSearchService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -27,6 +28,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @RestController
@@ -36,6 +38,7 @@ public class UserController {
 
     private final UserRepository userRepository;
     private final CustomerRepository customerRepository;
+    private final OrderSearchService orderSearchService;
     private static final Logger logger = LoggerFactory.getLogger(UserController.class);
 
     @GetMapping("/me")
@@ -118,6 +121,7 @@ public class UserController {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new RuntimeException("Người dùng không tồn tại!"));
 
+        boolean renamed = !Objects.equals(user.getFullName(), request.getFullName());
         user.setFullName(request.getFullName());
         if (request.getPhone() != null && !request.getPhone().equals(user.getPhone())) {
             if (userRepository.existsByPhone(request.getPhone())) {
@@ -128,6 +132,9 @@ public class UserController {
         user.setAddress(request.getAddress());
         user.setAvatarUrl(request.getAvatarUrl());
         userRepository.save(user);
+        if (renamed) {
+            orderSearchService.customerRenamed(user.getId(), user.getFullName());
+        }
 
         UserResponseDTO userDTO = mapToUserResponseDTO(user);
         return ResponseEntity.ok(userDTO);
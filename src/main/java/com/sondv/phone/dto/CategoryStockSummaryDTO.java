@@ -0,0 +1,15 @@
+package com.sondv.phone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CategoryStockSummaryDTO {
+    private Long categoryId;
+    private String categoryName;
+    private long totalProducts;
+    private long inStock;
+    private long lowStock;
+    private long outOfStock;
+}
@@ -16,4 +16,6 @@ public class DiscountDTO {
     private OffsetDateTime validTo;
     private double minOrderValue;
     private int probabilityWeight;
+    // Số lượt dùng tối đa; bỏ trống hoặc 1 là mã dùng một lần
+    private Integer maxUses;
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.sondv.phone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Một dòng biến động tồn kho, ánh xạ 1-1 với bảng inventory_logs
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryLedgerEntry {
+    private Long productId;
+    private int oldQuantity;
+    private int newQuantity;
+    private String reason;
+    private Long userId;
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,30 @@
+package com.sondv.phone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Bộ lọc tìm kiếm đơn hàng; toString() liệt kê mọi trường nên được dùng làm một phần của cache key
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSearchCriteria {
+    private String status;
+
+    // Tìm theo tiền tố tên khách, không phân biệt dấu/hoa thường
+    private String customerName;
+
+    // Tìm theo tiền tố số điện thoại nhận hàng
+    private String phone;
+
+    // Mã đơn chính xác
+    private String orderId;
+
+    private LocalDate startDate;
+
+    private LocalDate endDate;
+}
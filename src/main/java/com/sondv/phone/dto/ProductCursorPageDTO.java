@@ -0,0 +1,21 @@
+package com.sondv.phone.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductCursorPageDTO {
+    private List<ProductDTO> content;
+
+    // Token mờ để lấy trang kế tiếp, null nếu đã hết dữ liệu
+    private String nextCursor;
+
+    private boolean hasNext;
+
+    private int size;
+}
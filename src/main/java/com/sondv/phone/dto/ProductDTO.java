@@ -66,5 +66,6 @@ public class ProductDTO {
 
     private Inventory inventory;
 
+    // Chỉ có ở trang chi tiết sản phẩm; các trang liệt kê để null
     private List<InventoryLog> inventoryLogs;
 }
@@ -0,0 +1,15 @@
+package com.sondv.phone.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductSuggestionDTO {
+    private Long id;
+    private String name;
+    private Integer soldQuantity;
+    private Double rating;
+}
@@ -0,0 +1,17 @@
+package com.sondv.phone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StockContentionDTO {
+    private Long productId;
+    private long attempts;
+    private long rejected;
+    private long contended;
+    private long avgMicros;
+    private long maxMicros;
+    private long avgLockHeldMicros;
+    private long maxLockHeldMicros;
+}
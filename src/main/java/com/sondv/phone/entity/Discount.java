@@ -35,4 +35,11 @@ public class Discount {
 
     @Column(nullable = false)
     private boolean used = false;
+
+    // Số lượt dùng tối đa; null hoặc 1 là mã dùng một lần (chỉ dùng cờ used)
+    private Integer maxUses;
+
+    // Số lượt đã dùng, được cộng dồn theo lô nên có thể trễ vài giây so với bộ đếm trên Redis
+    @Column(nullable = false, columnDefinition = "INT DEFAULT 0")
+    private Integer usedCount = 0;
 }
\ No newline at end of file
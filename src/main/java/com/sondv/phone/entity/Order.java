@@ -1,20 +1,30 @@
 package com.sondv.phone.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_status_created_at", columnList = "status, created_at"),
+        @Index(name = "idx_orders_customer_created_at", columnList = "customer_id, created_at"),
+        @Index(name = "idx_orders_created_at", columnList = "created_at"),
+        @Index(name = "idx_orders_customer_phone", columnList = "customer_phone")
+})
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
+    public static final int CUSTOMER_PHONE_LENGTH = 20;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -48,4 +58,21 @@ public class Order {
     @JsonManagedReference
     private ShippingInfo shippingInfo;
 
+    // Tên khách đã bỏ dấu, chữ thường (TextNormalizer.fold); null nghĩa là đơn cũ chưa được điền cột tìm kiếm
+    @JsonIgnore
+    @Column(name = "customer_name_search", length = 50)
+    private String customerNameSearch;
+
+    // Từng từ của customerNameSearch, lọc theo tiền tố trên index (token, order_id) nên khớp được cả tên đệm, tên
+    @JsonIgnore
+    @ElementCollection
+    @CollectionTable(name = "order_name_tokens", joinColumns = @JoinColumn(name = "order_id"),
+            indexes = @Index(name = "idx_order_name_tokens_token", columnList = "token, order_id"))
+    @Column(name = "token", length = 50)
+    private Set<String> customerNameTokens = new HashSet<>();
+
+    // Số điện thoại nhận hàng lúc đặt đơn, chỉ giữ chữ số và dấu '+' đầu (OrderSearchService.normalizePhone)
+    @Column(name = "customer_phone", length = Order.CUSTOMER_PHONE_LENGTH)
+    private String customerPhone;
+
 }
@@ -0,0 +1,43 @@
+package com.sondv.phone.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sự kiện được ghi cùng transaction nghiệp vụ và xử lý bất đồng bộ sau đó (transactional outbox).
+ * Dòng chưa có processedAt nghĩa là chưa được xử lý xong và sẽ được quét lại.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_type_processed_id", columnList = "type, processed_at, id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String type;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    // Số lần xử lý thất bại; sự kiện được thử lại sau availableAt
+    @Column(nullable = false, columnDefinition = "INT DEFAULT 0")
+    private Integer attempts = 0;
+
+    @Column(name = "available_at")
+    private LocalDateTime availableAt;
+}
@@ -33,4 +33,8 @@ public class Payment {
 
     @Column(nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
+
+    // Hạn của URL thanh toán online đã phát hành (vnp_ExpireDate); sau mốc này cổng không nhận thanh toán nữa
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
 }
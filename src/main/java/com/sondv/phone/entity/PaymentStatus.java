@@ -6,5 +6,6 @@ public enum PaymentStatus {
     PAID,             // Đã thanh toán (VNPay thành công hoặc COD khi giao hàng thành công)
     AWAITING_DELIVERY,// Chờ giao hàng (cho COD sau khi tạo)
     FAILED,           // Thanh toán thất bại
-    CANCELLED         // Hủy (khi đơn hàng hủy)
+    CANCELLED,        // Hủy (khi đơn hàng hủy)
+    REFUND_PENDING    // Đã nhận tiền nhưng đơn đã bị hủy (hết hạn giữ hàng), chờ hoàn tiền
 }
\ No newline at end of file
@@ -3,6 +3,8 @@ package com.sondv.phone.entity;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.sondv.phone.util.DiscountWindow;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 import lombok.*;
@@ -11,7 +13,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_sold_quantity_id", columnList = "sold_quantity, id"),
+        @Index(name = "idx_products_effective_price_id", columnList = "effective_price, id")
+})
 @Getter
 @Setter
 @Entity
@@ -38,6 +43,12 @@ public class Product {
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime discountEndDate;
 
+    // Giá hiệu lực lưu sẵn để lọc/sắp theo giá trên index (effective_price, id). Tính lại khi lưu entity,
+    // khi áp giá hàng loạt và ở mỗi mốc mở/đóng khung giảm giá (DiscountTimeline)
+    @JsonIgnore
+    @Column(name = "effective_price")
+    private BigDecimal effectivePrice;
+
     @Column(name = "is_featured", nullable = false, columnDefinition = "BOOLEAN DEFAULT FALSE")
     private boolean isFeatured = false;
 
@@ -74,4 +85,11 @@ public class Product {
     @OneToMany(mappedBy = "product", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonManagedReference("product-inventoryLogs")
     private List<InventoryLog> inventoryLogs;
-}
\ No newline at end of file
+
+    @PrePersist
+    @PreUpdate
+    void computeEffectivePrice() {
+        effectivePrice = DiscountWindow.priceAt(sellingPrice, discountedPrice, discountStartDate, discountEndDate,
+                LocalDateTime.now());
+    }
+}
@@ -4,13 +4,19 @@ import com.sondv.phone.entity.Customer;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
     Optional<Customer> findByUserId(Long userId);
 
+    @Modifying
+    @Query("UPDATE Customer c SET c.loyaltyPoints = COALESCE(c.loyaltyPoints, 0) + :points WHERE c.id = :id")
+    int addLoyaltyPoints(@Param("id") Long id, @Param("points") int points);
+
     Page<Customer> findAllByOrderByIdAsc(Pageable pageable); // Sắp xếp theo id tăng dần có phân trang
 
     Page<Customer> findAllByOrderByIdDesc(Pageable pageable); // Sắp xếp theo id giảm dần có phân trang
@@ -4,15 +4,34 @@ import com.sondv.phone.entity.Discount;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface DiscountRepository extends JpaRepository<Discount, Long> {
     Optional<Discount> findByCode(String code);
 
+    // Compare-and-set cho mã dùng một lần: chỉ một giao dịch nhận được 1
+    @Modifying
+    @Query("UPDATE Discount d SET d.used = true, d.usedCount = d.usedCount + 1 WHERE d.id = :id AND d.used = false")
+    int markUsedIfUnused(@Param("id") Long id);
+
+    // Ghi dồn số lượt đã dùng từ bộ đếm trong bộ nhớ/Redis.
+    // MySQL gán SET từ trái sang phải nên cột used phải được tính trước khi usedCount đổi
+    @Modifying
+    @Query("UPDATE Discount d SET d.used = CASE WHEN d.usedCount + :delta >= d.maxUses THEN true ELSE false END, " +
+            "d.usedCount = d.usedCount + :delta " +
+            "WHERE d.id = :id")
+    int addUsage(@Param("id") Long id, @Param("delta") int delta);
+
+    // Mã có thể xuất hiện trên vòng quay từ giờ trở đi: đang hiệu lực hoặc sắp tới
+    @Query("SELECT d FROM Discount d WHERE d.validTo >= :now AND d.probabilityWeight > 0")
+    List<Discount> findSpinCandidates(@Param("now") OffsetDateTime now);
+
     @Query("""
     SELECT d FROM Discount d
     WHERE d.validFrom <= :now
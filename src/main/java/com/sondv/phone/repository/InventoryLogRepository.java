@@ -10,7 +10,7 @@ import org.springframework.data.repository.query.Param;
 import java.time.LocalDateTime;
 import java.util.List;
 
-public interface InventoryLogRepository extends JpaRepository<InventoryLog, Long> {
+public interface InventoryLogRepository extends JpaRepository<InventoryLog, Long>, InventoryLogRepositoryCustom {
     List<InventoryLog> findByProductId(Long productId);
 
     @Query("SELECT log FROM InventoryLog log " +
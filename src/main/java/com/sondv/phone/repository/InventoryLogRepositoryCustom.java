@@ -0,0 +1,11 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.dto.InventoryLedgerEntry;
+
+import java.util.List;
+
+public interface InventoryLogRepositoryCustom {
+
+    // Ghi nhiều dòng log trong một JDBC batch (id IDENTITY khiến Hibernate không gộp insert được)
+    void insertAll(List<InventoryLedgerEntry> entries);
+}
@@ -0,0 +1,34 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.dto.InventoryLedgerEntry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class InventoryLogRepositoryImpl implements InventoryLogRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO inventory_logs " +
+            "(product_id, old_quantity, new_quantity, reason, user_id, timestamp) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertAll(List<InventoryLedgerEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setLong(1, entry.getProductId());
+            ps.setInt(2, entry.getOldQuantity());
+            ps.setInt(3, entry.getNewQuantity());
+            ps.setString(4, entry.getReason());
+            ps.setLong(5, entry.getUserId());
+            LocalDateTime timestamp = entry.getTimestamp() != null ? entry.getTimestamp() : LocalDateTime.now();
+            ps.setTimestamp(6, Timestamp.valueOf(timestamp));
+        });
+    }
+}
@@ -2,13 +2,18 @@ package com.sondv.phone.repository;
 
 import com.sondv.phone.dto.InventoryReportDTO;
 import com.sondv.phone.entity.Inventory;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
@@ -16,6 +21,38 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
 
     boolean existsByProductId(Long productId);
 
+    // Khóa các dòng tồn kho (và sản phẩm) theo thứ tự product_id tăng dần để nhiều giao dịch không khóa chéo nhau
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Inventory i JOIN FETCH i.product p WHERE p.id IN :productIds ORDER BY p.id")
+    List<Inventory> findAllByProductIdsForUpdate(@Param("productIds") Collection<Long> productIds);
+
+    // Trừ kho nguyên tử: chỉ trừ khi còn đủ hàng, trả về 0 nếu không đủ (hoặc chưa có tồn kho)
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Inventory i SET i.quantity = i.quantity - :quantity, i.lastUpdated = :now " +
+            "WHERE i.product.id = :productId AND i.quantity >= :quantity")
+    int decrementIfAvailable(@Param("productId") Long productId,
+                             @Param("quantity") int quantity,
+                             @Param("now") LocalDateTime now);
+
+    // Hoàn kho đã giữ trước đó; không chặn theo maxQuantity vì đây là hàng vốn đã có trong kho
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Inventory i SET i.quantity = i.quantity + :quantity, i.lastUpdated = :now " +
+            "WHERE i.product.id = :productId")
+    int increment(@Param("productId") Long productId,
+                  @Param("quantity") int quantity,
+                  @Param("now") LocalDateTime now);
+
+    // [productId, categoryId, categoryName, quantity, minQuantity] cho bảng tổng hợp tồn kho
+    @Query("SELECT p.id, c.id, c.name, i.quantity, i.minQuantity FROM Inventory i JOIN i.product p JOIN p.category c")
+    List<Object[]> findSummaryRows();
+
+    // [productId, quantity, minQuantity]
+    @Query("SELECT i.product.id, i.quantity, i.minQuantity FROM Inventory i WHERE i.product.id IN :productIds")
+    List<Object[]> findStockLevels(@Param("productIds") Collection<Long> productIds);
+
+    @Query("SELECT i.quantity FROM Inventory i WHERE i.product.id = :productId")
+    Optional<Integer> findQuantityByProductId(@Param("productId") Long productId);
+
     @Modifying
     @Query("DELETE FROM Inventory i WHERE i.product.id = :productId")
     void deleteByProductId(@Param("productId") Long productId);
@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long> {
@@ -52,4 +53,7 @@ public interface OrderDetailRepository extends JpaRepository<OrderDetail, Long>
             @Param("start") LocalDateTime start,
             @Param("end") LocalDateTime end);
 
+    // [productId, quantity] của các đơn, dùng để hoàn kho theo lô
+    @Query("SELECT od.product.id, od.quantity FROM OrderDetail od WHERE od.order.id IN :orderIds")
+    List<Object[]> findProductQuantitiesByOrderIds(@Param("orderIds") Collection<Long> orderIds);
 }
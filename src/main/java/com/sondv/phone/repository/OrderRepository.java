@@ -2,16 +2,20 @@ package com.sondv.phone.repository;
 
 import com.sondv.phone.entity.Order;
 import com.sondv.phone.entity.OrderStatus;
+import com.sondv.phone.entity.PaymentMethod;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
-public interface OrderRepository extends JpaRepository<Order, Long>, JpaSpecificationExecutor<Order> {
+public interface OrderRepository extends JpaRepository<Order, Long>, JpaSpecificationExecutor<Order>, OrderRepositoryCustom {
 
     List<Order> findByCustomerId(Long customerId);
 
@@ -21,6 +25,44 @@ public interface OrderRepository extends JpaRepository<Order, Long>, JpaSpecific
 
     List<Order> findTop10ByOrderByCreatedAtDesc();
 
+    // [orderId, createdAt] của các đơn PENDING thanh toán online, đang giữ hàng chờ thanh toán
+    @Query("SELECT o.id, o.createdAt FROM Order o, Payment p WHERE p.order = o " +
+            "AND o.status = com.sondv.phone.entity.OrderStatus.PENDING AND p.paymentMethod IN :methods")
+    List<Object[]> findOpenHolds(@Param("methods") Collection<PaymentMethod> methods);
+
+    @Query("SELECT o.id FROM Order o, Payment p WHERE p.order = o " +
+            "AND o.status = com.sondv.phone.entity.OrderStatus.PENDING AND p.paymentMethod IN :methods " +
+            "AND o.createdAt < :before ORDER BY o.createdAt")
+    List<Long> findExpiredHoldIds(@Param("methods") Collection<PaymentMethod> methods,
+                                  @Param("before") LocalDateTime before,
+                                  Pageable pageable);
+
+    // Chỉ hủy khi đơn vẫn PENDING, chưa thanh toán và không còn URL thanh toán nào đang hiệu lực
+    // (PROCESSING với expiresAt sau :now); trả về 0 nếu đơn đã được xử lý ở nơi khác
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.sondv.phone.entity.OrderStatus.CANCELLED " +
+            "WHERE o.id = :id AND o.status = com.sondv.phone.entity.OrderStatus.PENDING " +
+            "AND NOT EXISTS (SELECT p.id FROM Payment p WHERE p.order.id = :id " +
+            "AND (p.status = com.sondv.phone.entity.PaymentStatus.PAID " +
+            "OR (p.status = com.sondv.phone.entity.PaymentStatus.PROCESSING AND p.expiresAt > :now)))")
+    int cancelIfUnpaid(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Xác nhận có điều kiện: trả về 0 nếu đơn đã rời PENDING (ví dụ bị lượt hết hạn giữ hàng hủy cùng lúc)
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.sondv.phone.entity.OrderStatus.CONFIRMED " +
+            "WHERE o.id = :id AND o.status = com.sondv.phone.entity.OrderStatus.PENDING")
+    int confirmIfPending(@Param("id") Long id);
+
+    // [orderId, fullName, phoneNumber] của các đơn cũ chưa có cột tìm kiếm
+    @Query("SELECT o.id, u.fullName, s.phoneNumber FROM Order o JOIN o.customer c JOIN c.user u " +
+            "LEFT JOIN o.shippingInfo s WHERE o.customerNameSearch IS NULL ORDER BY o.id")
+    List<Object[]> findMissingSearchColumns(Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Order o SET o.customerNameSearch = :name " +
+            "WHERE o.customer.id IN (SELECT c.id FROM Customer c WHERE c.user.id = :userId)")
+    int updateCustomerNameSearch(@Param("userId") Long userId, @Param("name") String name);
+
     @Query("SELECT SUM(o.totalPrice) FROM Order o")
     Double sumTotalRevenue();
 
@@ -0,0 +1,27 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.entity.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+public interface OrderRepositoryCustom {
+
+    // Lấy tối đa limit đơn khớp điều kiện, không chạy truy vấn COUNT; customer và user được nạp cùng câu lệnh
+    List<Order> findTop(Specification<Order> spec, Sort sort, int limit);
+
+    // Ghi các cột tìm kiếm phi chuẩn hóa: mỗi phần tử là [orderId, customerNameSearch, customerPhone]
+    // (cùng các token tên tương ứng)
+    void updateSearchColumns(List<Object[]> rows);
+
+    // Thay token tên trên mọi đơn của một user (khách đổi tên)
+    void replaceNameTokens(Long userId, Set<String> tokens);
+
+    // Một lô lịch sử đơn theo (createdAt, id) giảm dần, tiếp sau đơn (afterCreatedAt, afterId); null = lô đầu.
+    // customerId null = mọi khách (admin/staff). Chỉ điều kiện có giá trị mới được thêm vào câu lệnh,
+    // nên lịch sử của một khách đi thẳng theo index (customer_id, created_at)
+    List<Order> findHistoryBatch(Long customerId, LocalDateTime afterCreatedAt, Long afterId, int limit);
+}
@@ -0,0 +1,123 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.entity.Customer;
+import com.sondv.phone.entity.Order;
+import com.sondv.phone.util.TextNormalizer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@RequiredArgsConstructor
+public class OrderRepositoryImpl implements OrderRepositoryCustom {
+
+    private static final String UPDATE_SEARCH_SQL =
+            "UPDATE orders SET customer_name_search = ?, customer_phone = ? WHERE id = ?";
+    private static final String INSERT_TOKEN_SQL = "INSERT INTO order_name_tokens (order_id, token) VALUES (?, ?)";
+    private static final String DELETE_USER_TOKENS_SQL = "DELETE t FROM order_name_tokens t " +
+            "JOIN orders o ON o.id = t.order_id JOIN customers c ON c.id = o.customer_id WHERE c.user_id = ?";
+    private static final String INSERT_USER_TOKEN_SQL = "INSERT INTO order_name_tokens (order_id, token) " +
+            "SELECT o.id, ? FROM orders o JOIN customers c ON c.id = o.customer_id WHERE c.user_id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public List<Order> findTop(Specification<Order> spec, Sort sort, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Order> query = cb.createQuery(Order.class);
+        Root<Order> root = query.from(Order.class);
+        root.fetch("customer").fetch("user");
+
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<Order> findHistoryBatch(Long customerId, LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Order> query = cb.createQuery(Order.class);
+        Root<Order> root = query.from(Order.class);
+        // Các quan hệ một-một được nạp cùng dòng; orderDetails nạp theo lô nhờ default_batch_fetch_size
+        Fetch<Order, Customer> customer = root.fetch("customer");
+        customer.fetch("user");
+        root.fetch("shippingInfo", JoinType.LEFT);
+        root.fetch("discount", JoinType.LEFT);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (customerId != null) {
+            predicates.add(cb.equal(root.get("customer").get("id"), customerId));
+        }
+        if (afterCreatedAt != null && afterId != null) {
+            Path<LocalDateTime> createdAt = root.get("createdAt");
+            Path<Long> id = root.get("id");
+            predicates.add(cb.or(cb.lessThan(createdAt, afterCreatedAt),
+                    cb.and(cb.equal(createdAt, afterCreatedAt), cb.lessThan(id, afterId))));
+        }
+        query.where(predicates.toArray(new Predicate[0]));
+        query.orderBy(cb.desc(root.get("createdAt")), cb.desc(root.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultList();
+    }
+
+    @Override
+    public void updateSearchColumns(List<Object[]> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(UPDATE_SEARCH_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setString(1, (String) row[1]);
+            ps.setString(2, (String) row[2]);
+            ps.setLong(3, (Long) row[0]);
+        });
+
+        List<Object[]> tokens = new ArrayList<>();
+        for (Object[] row : rows) {
+            for (String token : TextNormalizer.searchTokens((String) row[1])) {
+                tokens.add(new Object[]{row[0], token});
+            }
+        }
+        if (!tokens.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_TOKEN_SQL, tokens, tokens.size(), (ps, token) -> {
+                ps.setLong(1, (Long) token[0]);
+                ps.setString(2, (String) token[1]);
+            });
+        }
+    }
+
+    @Override
+    public void replaceNameTokens(Long userId, Set<String> tokens) {
+        jdbcTemplate.update(DELETE_USER_TOKENS_SQL, userId);
+        if (!tokens.isEmpty()) {
+            List<String> values = new ArrayList<>(tokens);
+            jdbcTemplate.batchUpdate(INSERT_USER_TOKEN_SQL, values, values.size(), (ps, token) -> {
+                ps.setString(1, token);
+                ps.setLong(2, userId);
+            });
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.entity.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    @Query("SELECT e FROM OutboxEvent e WHERE e.type = :type AND e.processedAt IS NULL " +
+            "AND e.createdAt < :before ORDER BY e.id")
+    List<OutboxEvent> findUnprocessed(@Param("type") String type,
+                                      @Param("before") LocalDateTime before,
+                                      Pageable pageable);
+
+    // Giành quyền xử lý: khóa các dòng còn chưa xử lý để hai luồng không cùng xử lý một sự kiện
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e.id FROM OutboxEvent e WHERE e.id IN :ids AND e.processedAt IS NULL")
+    List<Long> lockUnprocessed(@Param("ids") Collection<Long> ids);
+
+    // Lấy một lô sự kiện đến hạn cho worker; SKIP LOCKED (lock.timeout = -2) để các worker không chờ nhau
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM OutboxEvent e WHERE e.type IN :types AND e.processedAt IS NULL " +
+            "AND (e.availableAt IS NULL OR e.availableAt <= :now) ORDER BY e.id")
+    List<OutboxEvent> claimBatch(@Param("types") Collection<String> types,
+                                 @Param("now") LocalDateTime now,
+                                 Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.processedAt = :now WHERE e.id IN :ids")
+    int markProcessed(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.processedAt IS NOT NULL AND e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
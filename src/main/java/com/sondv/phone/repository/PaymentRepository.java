@@ -1,12 +1,25 @@
 package com.sondv.phone.repository;
 
 import com.sondv.phone.entity.Payment;
+import com.sondv.phone.entity.PaymentStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
 
     Optional<Payment> findByOrderId(Long orderId);
 
+    List<Payment> findByOrderIdIn(Collection<Long> orderIds);
+
     Optional<Payment> findByTransactionId(String transactionId);
-}
\ No newline at end of file
+
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = :status WHERE p.order.id IN :orderIds")
+    int updateStatusByOrderIds(@Param("orderIds") Collection<Long> orderIds, @Param("status") PaymentStatus status);
+}
@@ -2,8 +2,16 @@ package com.sondv.phone.repository;
 
 import com.sondv.phone.entity.ProductImage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductImageRepository extends JpaRepository<ProductImage, Long> {
     List<ProductImage> findByProductId(Long productId);
+
+    // [productId, imageId, imageUrl] cho cả trang sản phẩm trong một truy vấn
+    @Query("SELECT i.product.id, i.id, i.imageUrl FROM ProductImage i WHERE i.product.id IN :ids ORDER BY i.id")
+    List<Object[]> findImageRowsByProductIds(@Param("ids") Collection<Long> ids);
 }
@@ -5,41 +5,64 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
-
-    List<Product> findTop3ByNameContainingIgnoreCase(String keyword);
-
-    List<Product> findTop2ByNameContainingIgnoreCase(String keyword);
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
 
     List<Product> findTop5ByNameContainingIgnoreCase(String keyword);
 
     Optional<Product> findFirstByNameContainingIgnoreCase(String keyword);
 
-    Page<Product> findByNameContainingIgnoreCase(String name, Pageable pageable);
-
     List<Product> findByCategoryId(Long categoryId);
 
     List<Product> findByCategoryIdAndSellingPriceLessThan(Long categoryId, BigDecimal price);
 
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
     List<Product> findTop5ByOrderBySoldQuantityDesc();
 
     List<Product> findTop3ByOrderBySoldQuantityDesc();
 
     List<Product> findByStockLessThan(int threshold);
 
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
     List<Product> findByIsFeaturedTrue();
 
     List<Product> findAllByOrderByIdDesc();
 
-    List<Product> findByDiscountEndDateBefore(LocalDateTime dateTime);
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    List<Product> findByOrderByIdDesc(Pageable pageable);
+
+    // [id, sellingPrice, discountedPrice, discountStartDate, discountEndDate] của mọi sản phẩm, dựng bảng giá hiệu lực
+    @Query("SELECT p.id, p.sellingPrice, p.discountedPrice, p.discountStartDate, p.discountEndDate FROM Product p")
+    List<Object[]> findPriceRows();
+
+    // [id, sellingPrice, discountedPrice, discountStartDate, discountEndDate, soldQuantity] của mọi sản phẩm,
+    // dựng chỉ mục danh mục
+    @Query("SELECT p.id, p.sellingPrice, p.discountedPrice, p.discountStartDate, p.discountEndDate, p.soldQuantity " +
+            "FROM Product p")
+    List<Object[]> findCatalogRows();
+
+    // [id, discountStartDate, discountEndDate] của mọi sản phẩm đang có khung giảm giá
+    @Query("SELECT p.id, p.discountStartDate, p.discountEndDate FROM Product p " +
+            "WHERE p.discountedPrice IS NOT NULL AND p.discountStartDate IS NOT NULL AND p.discountEndDate IS NOT NULL")
+    List<Object[]> findDiscountWindows();
+
+    // Gỡ khung giảm giá đã kết thúc; điều kiện thời gian bỏ qua sản phẩm vừa được đặt khung mới
+    @Modifying
+    @Query("UPDATE Product p SET p.discountedPrice = NULL, p.discountStartDate = NULL, p.discountEndDate = NULL, " +
+            "p.effectivePrice = p.sellingPrice WHERE p.id IN :ids AND p.discountEndDate < :now")
+    int clearExpiredDiscounts(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
 
     List<Product> findBySoldQuantityGreaterThan(int quantity);
 
@@ -60,21 +83,58 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT p FROM Product p ORDER BY p.soldQuantity DESC")
     List<Product> findTopNByOrderBySoldQuantityDesc(org.springframework.data.domain.Pageable pageable);
 
+    // Các truy vấn danh sách nạp kèm category, supplier, inventory trong cùng một câu lệnh;
+    // ảnh được nạp riêng theo lô (ProductImageRepository#findImageRowsByProductIds) để tránh N+1.
+    // Truy vấn riêng thay vì ghi đè findAll(Pageable) để các nơi khác dùng findAll không bị kéo theo ba join
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    @Query(value = "SELECT p FROM Product p", countQuery = "SELECT COUNT(p) FROM Product p")
+    Page<Product> findListingPage(Pageable pageable);
+
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
+    @Query("SELECT p FROM Product p WHERE p.id IN :ids")
+    List<Product> findAllWithCategoryAndSupplierByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Trang chi tiết: thêm ảnh; inventoryLogs vẫn lazy (hai collection bag không thể cùng fetch join)
+    @EntityGraph(attributePaths = {"category", "supplier", "images", "inventory"})
+    @Query("SELECT p FROM Product p WHERE p.id = :id")
+    Optional<Product> findDetailById(@Param("id") Long id);
+
+    // Đồng bộ cột stock (bản sao của inventory.quantity) mà không nạp entity
+    @Modifying
+    @Query("UPDATE Product p SET p.stock = :stock WHERE p.id = :id")
+    int updateStock(@Param("id") Long id, @Param("stock") int stock);
+
+    @Modifying
+    @Query("UPDATE Product p SET p.soldQuantity = COALESCE(p.soldQuantity, 0) + :quantity WHERE p.id = :id")
+    int addSoldQuantity(@Param("id") Long id, @Param("quantity") int quantity);
+
     @Query("SELECT p.name FROM Product p")
     List<String> findAllProductNames();
 
-    @Query("SELECT p FROM Product p WHERE LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%'))")
-    List<Product> findByNameContainingFlexible(@Param("keyword") String keyword);
-
-    @Query("SELECT p FROM Product p WHERE LOWER(p.name) LIKE LOWER(CONCAT(:brand, '%')) AND p.name LIKE '%' || :model || '%'")
-    List<Product> findByBrandAndModel(@Param("brand") String brand, @Param("model") String model);
+    @Query("SELECT p.id, p.name, p.soldQuantity, p.rating FROM Product p")
+    List<Object[]> findAllSearchFields();
+
+    // Nạp sản phẩm theo danh sách id và giữ nguyên thứ tự của danh sách (dùng cho kết quả từ chỉ mục)
+    default List<Product> findAllByIdInOrder(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Product> byId = new HashMap<>();
+        findAllWithCategoryAndSupplierByIdIn(ids).forEach(p -> byId.put(p.getId(), p));
+        List<Product> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Product p = byId.get(id);
+            if (p != null) {
+                ordered.add(p);
+            }
+        }
+        return ordered;
+    }
 
     @Query("SELECT p FROM Product p WHERE p.id = :productId")
     Optional<Product> findProductById(@Param("productId") Long productId);
 
-    @Query("SELECT p FROM Product p WHERE LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%'))")
-    List<Product> findByNameContainingIgnoreCase(@Param("keyword") String keyword);
-
+    @EntityGraph(attributePaths = {"category", "supplier", "inventory"})
     @Query("SELECT p FROM Product p WHERE p.category.id = :categoryId AND p.id != :productId AND p.sellingPrice BETWEEN :minPrice AND :maxPrice ORDER BY p.soldQuantity DESC")
     List<Product> findRelatedProducts(@Param("categoryId") Long categoryId, @Param("productId") Long productId, @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice, Pageable pageable);
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.entity.Product;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+
+    // Đặt giá giảm = max(sellingPrice * factor - fixed, 0) bằng câu UPDATE theo tập; productIds null là toàn bộ sản phẩm
+    int applyLinearDiscount(Collection<Long> productIds, BigDecimal factor, BigDecimal fixedAmount,
+                            LocalDateTime start, LocalDateTime end);
+
+    // Tính lại cột effective_price theo khung giảm giá tại thời điểm now; productIds null là toàn bộ sản phẩm
+    int refreshEffectivePrices(Collection<Long> productIds, LocalDateTime now);
+
+    // Lấy tối đa limit sản phẩm khớp điều kiện, không chạy truy vấn COUNT; category, supplier, inventory nạp cùng câu lệnh
+    List<Product> findTop(Specification<Product> spec, Sort sort, int limit);
+}
@@ -0,0 +1,98 @@
+package com.sondv.phone.repository;
+
+import com.sondv.phone.entity.Product;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private static final int IN_CHUNK_SIZE = 1000;
+
+    // Giá hiệu lực: giá giảm nếu đang trong khung (tính cả hai đầu mút), ngược lại giá bán; cùng quy tắc với
+    // DiscountWindow.isOpen. MySQL gán SET từ trái sang phải nên biểu thức đọc giá trị vừa ghi
+    private static final String EFFECTIVE_PRICE = "effective_price = CASE WHEN discounted_price IS NOT NULL " +
+            "AND discount_start_date IS NOT NULL AND discount_end_date IS NOT NULL " +
+            "AND discount_start_date <= ? AND discount_end_date >= ? " +
+            "THEN discounted_price ELSE selling_price END";
+
+    private static final String LINEAR_DISCOUNT_SQL = "UPDATE products " +
+            "SET discounted_price = GREATEST(ROUND(selling_price * ? - ?, 2), 0), " +
+            "discount_start_date = ?, discount_end_date = ?, " + EFFECTIVE_PRICE + " " +
+            "WHERE selling_price IS NOT NULL";
+
+    private static final String REFRESH_EFFECTIVE_PRICE_SQL = "UPDATE products SET " + EFFECTIVE_PRICE +
+            " WHERE 1 = 1";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public int applyLinearDiscount(Collection<Long> productIds, BigDecimal factor, BigDecimal fixedAmount,
+                                   LocalDateTime start, LocalDateTime end) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Object[] head = {factor, fixedAmount, Timestamp.valueOf(start), Timestamp.valueOf(end), now, now};
+        return updateInChunks(LINEAR_DISCOUNT_SQL, head, productIds);
+    }
+
+    @Override
+    public int refreshEffectivePrices(Collection<Long> productIds, LocalDateTime now) {
+        Timestamp at = Timestamp.valueOf(now);
+        return updateInChunks(REFRESH_EFFECTIVE_PRICE_SQL, new Object[]{at, at}, productIds);
+    }
+
+    @Override
+    public List<Product> findTop(Specification<Product> spec, Sort sort, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Product> query = cb.createQuery(Product.class);
+        Root<Product> root = query.from(Product.class);
+        root.fetch("category", JoinType.LEFT);
+        root.fetch("supplier", JoinType.LEFT);
+        root.fetch("inventory", JoinType.LEFT);
+
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    // Chạy câu UPDATE cho toàn bảng (productIds null) hoặc theo từng lô id
+    private int updateInChunks(String sql, Object[] head, Collection<Long> productIds) {
+        if (productIds == null) {
+            return jdbcTemplate.update(sql, head);
+        }
+        List<Long> ids = new ArrayList<>(productIds);
+        int updated = 0;
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size()));
+            String chunkSql = sql + " AND id IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            List<Object> args = new ArrayList<>(head.length + chunk.size());
+            Collections.addAll(args, head);
+            args.addAll(chunk);
+            updated += jdbcTemplate.update(chunkSql, args.toArray());
+        }
+        return updated;
+    }
+}
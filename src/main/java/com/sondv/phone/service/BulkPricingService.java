@@ -0,0 +1,88 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.repository.ProductRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+/**
+ * Áp giá giảm cho nhiều sản phẩm cùng lúc mà không nạp entity.
+ * <p>
+ * Quy tắc giảm (phần trăm và/hoặc số tiền cố định) chạy thành một câu UPDATE theo tập trong transaction
+ * của người gọi. Chỉ mục danh mục, bảng giá hiệu lực, lịch khung giảm giá và cache sản phẩm được cập nhật
+ * một lần khi xong.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkPricingService {
+
+    /** Giảm theo phần trăm rồi trừ số tiền cố định, không âm; null nghĩa là không áp thành phần đó. */
+    public record LinearRule(BigDecimal percentage, BigDecimal fixedAmount) implements UnaryOperator<BigDecimal> {
+
+        BigDecimal factor() {
+            return percentage != null && percentage.signum() > 0
+                    ? BigDecimal.ONE.subtract(percentage.movePointLeft(2)) : BigDecimal.ONE;
+        }
+
+        BigDecimal fixed() {
+            return fixedAmount != null && fixedAmount.signum() > 0 ? fixedAmount : BigDecimal.ZERO;
+        }
+
+        // Cùng phép tính và làm tròn với câu UPDATE trong ProductRepositoryImpl
+        @Override
+        public BigDecimal apply(BigDecimal sellingPrice) {
+            return sellingPrice.multiply(factor()).subtract(fixed())
+                    .setScale(2, RoundingMode.HALF_UP).max(BigDecimal.ZERO);
+        }
+    }
+
+    private final ProductRepository productRepository;
+    private final ProductCatalogIndex catalogIndex;
+    private final ProductCacheInvalidator cacheInvalidator;
+    private final DiscountTimeline discountTimeline;
+    private final ProductPricingService pricingService;
+    private final MeterRegistry meterRegistry;
+
+    private Timer bulkTimer;
+
+    @PostConstruct
+    void registerMetrics() {
+        bulkTimer = meterRegistry.timer("pricing.bulk.apply");
+    }
+
+    /**
+     * Áp khung giảm giá cho các sản phẩm; productIds null là toàn bộ sản phẩm có giá bán.
+     *
+     * @return số sản phẩm đã cập nhật
+     */
+    public int apply(Collection<Long> productIds, LinearRule rule, LocalDateTime start, LocalDateTime end) {
+        long startedAt = System.nanoTime();
+        int updated = productRepository.applyLinearDiscount(productIds, rule.factor(), rule.fixed(), start, end);
+        bulkTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+
+        if (updated > 0) {
+            catalogIndex.applyDiscount(productIds, rule, start, end);
+            pricingService.productsRepriced(productIds);
+            if (productIds == null) {
+                cacheInvalidator.allProductsChanged();
+                discountTimeline.reload();
+            } else {
+                cacheInvalidator.productsChanged(productIds);
+                discountTimeline.windowsChanged(productIds, start, end);
+            }
+        }
+        log.info("Đã áp giá giảm cho {} sản phẩm trong {} ms", updated, (System.nanoTime() - startedAt) / 1_000_000);
+        return updated;
+    }
+}
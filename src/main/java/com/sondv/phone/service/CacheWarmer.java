@@ -0,0 +1,283 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.config.CacheInvalidatedEvent;
+import com.sondv.phone.config.CacheKeyPopularity;
+import com.sondv.phone.config.TwoTierCacheManager;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Làm ấm cache khi khởi động và sau mỗi lần cache bị xóa.
+ * <p>
+ * Việc nạp đi qua chính các phương thức {@code @Cacheable} của ProductService, CategoryService, DiscountService
+ * và SupplierService (qua proxy), nên kết quả nằm đúng entry mà request thật sẽ đọc. Key được ưu tiên theo
+ * số lần truy cập quan sát được ({@link CacheKeyPopularity}), luôn kèm các key mặc định của trang chủ.
+ * Số tác vụ chạy song song bị giới hạn, và trước mỗi tác vụ bộ làm ấm nhường nếu pool kết nối DB đang bận.
+ * Luồng làm ấm không có session Hibernate nên mỗi tác vụ chạy trong transaction chỉ đọc của riêng nó.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CacheWarmer {
+
+    // Khớp với giá trị mặc định của các controller
+    private static final int DEFAULT_LIST_LIMIT = 5;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int DEFAULT_DISCOUNT_PAGE_SIZE = 10;
+
+    private record WarmTask(String cache, String key, long hits, Runnable action) {
+    }
+
+    private final CacheManager cacheManager;
+    private final ProductService productService;
+    private final CategoryService categoryService;
+    private final DiscountService discountService;
+    private final SupplierService supplierService;
+    private final DataSource dataSource;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.cache.warm.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cache.warm.concurrency:2}")
+    private int concurrency;
+
+    @Value("${app.cache.warm.top-keys:20}")
+    private int topKeys;
+
+    @Value("${app.cache.warm.debounce-ms:2000}")
+    private long debounceMs;
+
+    // Số kết nối rảnh tối thiểu phải còn lại cho request thật
+    @Value("${app.cache.warm.reserved-connections:2}")
+    private int reservedConnections;
+
+    private final Set<String> pendingCaches = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cache-warmer");
+        t.setDaemon(true);
+        return t;
+    });
+    private TransactionTemplate readOnlyTransaction;
+    private final AtomicInteger workerCounter = new AtomicInteger();
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "cache-warmer-" + workerCounter.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        if (cacheManager instanceof TwoTierCacheManager twoTier) {
+            // Giảm dần bộ đếm để độ phổ biến bám theo lưu lượng gần đây
+            scheduler.scheduleAtFixedRate(() -> twoTier.getPopularity().decay(), 10, 10, TimeUnit.MINUTES);
+        }
+        request(Set.of(ProductCacheInvalidator.PRODUCT, ProductCacheInvalidator.PRODUCTS,
+                ProductCacheInvalidator.FEATURED, ProductCacheInvalidator.NEWEST, ProductCacheInvalidator.BEST_SELLING,
+                "categories", "suppliers", "activeDiscounts"));
+    }
+
+    @EventListener
+    public void onCacheInvalidated(CacheInvalidatedEvent event) {
+        request(event.cacheNames());
+    }
+
+    // Gom các lần xóa liên tiếp (ví dụ giảm giá hàng loạt) thành một lượt làm ấm
+    private void request(Set<String> cacheNames) {
+        if (!enabled) {
+            return;
+        }
+        pendingCaches.addAll(cacheNames);
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::runPending, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runPending() {
+        scheduled.set(false);
+        Set<String> caches = Set.copyOf(pendingCaches);
+        pendingCaches.removeAll(caches);
+        if (caches.isEmpty()) {
+            return;
+        }
+        try {
+            warm(caches);
+        } catch (Exception e) {
+            log.error("Làm ấm cache thất bại", e);
+        }
+    }
+
+    private void warm(Set<String> caches) throws InterruptedException {
+        List<WarmTask> tasks = new ArrayList<>();
+        for (String cache : caches) {
+            tasks.addAll(plan(cache));
+        }
+        tasks.sort(Comparator.comparingLong(WarmTask::hits).reversed());
+
+        long start = System.currentTimeMillis();
+        Semaphore permits = new Semaphore(Math.max(1, concurrency));
+        AtomicInteger done = new AtomicInteger();
+        int submitted = 0;
+        for (WarmTask task : tasks) {
+            if (!awaitDbHeadroom()) {
+                log.info("Pool kết nối DB bận, hoãn {} tác vụ làm ấm cache", tasks.size() - submitted);
+                caches.forEach(pendingCaches::add);
+                if (scheduled.compareAndSet(false, true)) {
+                    scheduler.schedule(this::runPending, debounceMs * 5, TimeUnit.MILLISECONDS);
+                }
+                break;
+            }
+            permits.acquire();
+            submitted++;
+            workers.execute(() -> {
+                try {
+                    readOnlyTransaction.executeWithoutResult(status -> task.action().run());
+                    done.incrementAndGet();
+                } catch (Exception e) {
+                    log.debug("Không thể làm ấm {}::{}: {}", task.cache(), task.key(), e.getMessage());
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+        permits.acquire(Math.max(1, concurrency));
+        permits.release(Math.max(1, concurrency));
+        log.info("Đã làm ấm {}/{} entry cho cache {} trong {} ms", done.get(), tasks.size(), caches,
+                System.currentTimeMillis() - start);
+    }
+
+    // Key phổ biến (nếu có số liệu) cộng với key mặc định của từng cache
+    private List<WarmTask> plan(String cache) {
+        List<WarmTask> tasks = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        String seedKey = seedKey(cache);
+        // Cache chỉ có một entry (key rỗng) thì không cần tra độ phổ biến
+        List<CacheKeyPopularity.KeyScore> popular = "".equals(seedKey) ? List.of() : popularKeys(cache);
+        for (CacheKeyPopularity.KeyScore score : popular) {
+            Runnable action = actionFor(cache, score.key());
+            if (action != null && seen.add(score.key())) {
+                tasks.add(new WarmTask(cache, score.key(), score.hits(), action));
+            }
+        }
+        if (seedKey != null && seen.add(seedKey)) {
+            Runnable action = actionFor(cache, seedKey);
+            if (action != null) {
+                tasks.add(new WarmTask(cache, seedKey, 0, action));
+            }
+        }
+        return tasks;
+    }
+
+    private List<CacheKeyPopularity.KeyScore> popularKeys(String cache) {
+        if (cacheManager instanceof TwoTierCacheManager twoTier) {
+            return twoTier.getPopularity().top(cache, topKeys);
+        }
+        return List.of();
+    }
+
+    private String seedKey(String cache) {
+        return switch (cache) {
+            case ProductCacheInvalidator.NEWEST, ProductCacheInvalidator.BEST_SELLING -> String.valueOf(DEFAULT_LIST_LIMIT);
+            case ProductCacheInvalidator.PRODUCTS -> "-0-" + DEFAULT_PAGE_SIZE;
+            case ProductCacheInvalidator.FEATURED, "categories", "suppliers", "activeDiscounts" -> "";
+            default -> null;
+        };
+    }
+
+    // Dựng lời gọi phương thức @Cacheable tương ứng với key (định dạng key theo SpEL của từng phương thức)
+    private Runnable actionFor(String cache, String key) {
+        try {
+            return switch (cache) {
+                case ProductCacheInvalidator.PRODUCT -> {
+                    long id = Long.parseLong(key);
+                    yield () -> productService.getProductById(id);
+                }
+                case ProductCacheInvalidator.NEWEST -> {
+                    int limit = Integer.parseInt(key);
+                    yield () -> productService.getNewestProducts(limit);
+                }
+                case ProductCacheInvalidator.BEST_SELLING -> {
+                    int limit = Integer.parseInt(key);
+                    yield () -> productService.getBestSellingProducts(limit);
+                }
+                case ProductCacheInvalidator.FEATURED -> productService::getFeaturedProducts;
+                case ProductCacheInvalidator.PRODUCTS -> {
+                    // "<từ khóa>-<trang>-<kích thước>", từ khóa có thể chứa dấu '-'
+                    int sizeSep = key.lastIndexOf('-');
+                    int pageSep = key.lastIndexOf('-', sizeSep - 1);
+                    String keyword = key.substring(0, pageSep);
+                    int page = Integer.parseInt(key.substring(pageSep + 1, sizeSep));
+                    int size = Integer.parseInt(key.substring(sizeSep + 1));
+                    String searchKeyword = "null".equals(keyword) ? null : keyword;
+                    yield () -> productService.getAllProducts(searchKeyword, PageRequest.of(page, size));
+                }
+                case "categories" -> categoryService::getAllCategories;
+                case "suppliers" -> supplierService::getAllSuppliers;
+                // Chỉ làm ấm trang mặc định của /api/discounts/active
+                case "activeDiscounts" -> () -> discountService.getActiveDiscounts(null,
+                        PageRequest.of(0, DEFAULT_DISCOUNT_PAGE_SIZE, Sort.by("validTo").descending()));
+                default -> null;
+            };
+        } catch (RuntimeException e) {
+            log.debug("Bỏ qua key không làm ấm được {}::{}", cache, key);
+            return null;
+        }
+    }
+
+    // Chờ tối đa ~2 giây cho tới khi pool còn kết nối rảnh và không có request nào đang xếp hàng chờ kết nối
+    private boolean awaitDbHeadroom() throws InterruptedException {
+        if (!(dataSource instanceof HikariDataSource hikari)) {
+            return true;
+        }
+        for (int attempt = 0; attempt < 10; attempt++) {
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            if (pool == null || (pool.getThreadsAwaitingConnection() == 0
+                    && pool.getIdleConnections() + (hikari.getMaximumPoolSize() - pool.getTotalConnections()) > reservedConnections)) {
+                return true;
+            }
+            Thread.sleep(200);
+        }
+        return false;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+}
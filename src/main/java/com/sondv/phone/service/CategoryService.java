@@ -19,9 +19,10 @@ import java.util.Optional;
 public class CategoryService {
 
     private final CategoryRepository categoryRepository;
+    private final ProductCacheInvalidator cacheInvalidator;
 
     // Lấy danh sách danh mục
-    @Cacheable(value = "categories")
+    @Cacheable(value = "categories", sync = true)
     public List<Category> getAllCategories() {
         return categoryRepository.findAll();
     }
@@ -60,6 +61,8 @@ public class CategoryService {
 
         category.setName(name);
         categoryRepository.save(category);
+        // Tên danh mục được nhúng trong ProductDTO
+        cacheInvalidator.categoryChanged(id);
 
         return "Cập nhật danh mục thành công!";
     }
@@ -6,6 +6,7 @@ import com.sondv.phone.entity.Message;
 import com.sondv.phone.entity.Product;
 import com.sondv.phone.repository.MessageRepository;
 import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.TextNormalizer;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -17,7 +18,6 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.text.Normalizer;
 import java.text.NumberFormat;
 import java.time.LocalTime;
 import java.util.*;
@@ -35,8 +35,11 @@ public class ChatbotService {
     private final ProductRepository productRepository;
     private final MessageRepository messageRepository;
     private final OpenAiClient openAiClient;
+    private final ProductSearchIndex searchIndex;
+    private final ProductPricingService pricingService;
 
     private static final int MAX_PRODUCTS_SUGGESTED = 3;
+    private static final int MAX_KEYWORD_MATCHES = 10;
     private final Long BOT_ID = 0L;
     private final Locale locale = new Locale("vi", "VN");
     private final Random random = new Random();
@@ -115,8 +118,8 @@ public class ChatbotService {
             }
             case "comparison" -> {
                 String[] keywords = extractComparisonKeywords(userMessage);
-                List<Product> products1 = productRepository.findTop2ByNameContainingIgnoreCase(keywords[0]);
-                List<Product> products2 = productRepository.findTop2ByNameContainingIgnoreCase(keywords[1]);
+                List<Product> products1 = findTopByKeyword(keywords[0], 2);
+                List<Product> products2 = findTopByKeyword(keywords[1], 2);
                 if (!products1.isEmpty() && !products2.isEmpty()) {
                     productIds.add(products1.get(0).getId());
                     productIds.add(products2.get(0).getId());
@@ -333,38 +336,37 @@ public class ChatbotService {
 
     // Restored method: findProductsByKeyword
     private List<Product> findProductsByKeyword(String keyword) {
-        List<Product> results = productRepository.findByNameContainingIgnoreCase(keyword);
-        if (!results.isEmpty()) {
-            return results;
-        }
-
-        results = productRepository.findByNameContainingFlexible(keyword);
-        if (!results.isEmpty()) {
-            return results;
-        }
-
-        String[] brandModel = keyword.split(" ");
-        if (brandModel.length >= 2) {
-            results = productRepository.findByBrandAndModel(brandModel[0], brandModel[1]);
+        // Chỉ mục tìm kiếm không phân biệt dấu, tự nới sang khớp gần đúng khi không có kết quả chính xác
+        List<Long> ids = searchIndex.searchFuzzy(keyword, MAX_KEYWORD_MATCHES);
+        if (ids.isEmpty()) {
+            // Dự phòng "hãng + model": chỉ dùng hai từ đầu, bỏ phần còn lại của câu hỏi ("samsung s23 giá bao nhiêu")
+            String[] brandModel = keyword.trim().split("\\s+");
+            if (brandModel.length > 2) {
+                ids = searchIndex.search(brandModel[0] + " " + brandModel[1], MAX_KEYWORD_MATCHES);
+            }
         }
-        return results;
+        return productRepository.findAllByIdInOrder(ids);
     }
 
     // Restored method: findSimilarProducts
     private List<Product> findSimilarProducts(String keyword) {
         if (keyword.toLowerCase().contains("iphone") || keyword.toLowerCase().contains("apple")) {
-            return productRepository.findTop3ByNameContainingIgnoreCase("iphone");
+            return findTopByKeyword("iphone", 3);
         } else if (keyword.toLowerCase().contains("samsung") || keyword.toLowerCase().contains("galaxy")) {
-            return productRepository.findTop3ByNameContainingIgnoreCase("samsung");
+            return findTopByKeyword("samsung", 3);
         } else if (keyword.toLowerCase().contains("xiaomi") || keyword.toLowerCase().contains("redmi")) {
-            return productRepository.findTop3ByNameContainingIgnoreCase("xiaomi");
+            return findTopByKeyword("xiaomi", 3);
         } else if (keyword.toLowerCase().contains("oppo")) {
-            return productRepository.findTop3ByNameContainingIgnoreCase("oppo");
+            return findTopByKeyword("oppo", 3);
         } else {
             return productRepository.findTop3ByOrderBySoldQuantityDesc();
         }
     }
 
+    private List<Product> findTopByKeyword(String keyword, int limit) {
+        return productRepository.findAllByIdInOrder(searchIndex.search(keyword, limit));
+    }
+
     // Restored method: extractBudget
     private BigDecimal extractBudget(String userMessage) {
         Pattern pricePattern = Pattern.compile("(\\d+\\.?\\d*)\\s*(triệu|tr|trieu|million)");
@@ -386,9 +388,7 @@ public class ChatbotService {
 
     // Restored method: normalizeText
     private String normalizeText(String text) {
-        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
-        Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
-        return pattern.matcher(normalized).replaceAll("");
+        return TextNormalizer.stripDiacritics(text);
     }
 
     private String getProductHighlight(Product product) {
@@ -550,7 +550,7 @@ public class ChatbotService {
     private String buildPriceInquiryPrompt(String userMessage, List<Product> products, String template) {
         StringBuilder productData = new StringBuilder();
         for (Product p : products) {
-            BigDecimal price = p.getDiscountedPrice() != null ? p.getDiscountedPrice() : p.getSellingPrice();
+            BigDecimal price = pricingService.currentPrice(p);
             productData.append(String.format(
                     "- %s | Giá hiện tại: %s | Kho: %d\n",
                     p.getName(),
@@ -610,7 +610,7 @@ public class ChatbotService {
         StringBuilder productData = new StringBuilder();
         for (int i = 0; i < Math.min(2, products.size()); i++) {
             Product p = products.get(i);
-            BigDecimal price = p.getDiscountedPrice() != null ? p.getDiscountedPrice() : p.getSellingPrice();
+            BigDecimal price = pricingService.currentPrice(p);
             productData.append(String.format(
                     "- %s | Giá: %s | Đã bán: %d sp\n",
                     p.getName(),
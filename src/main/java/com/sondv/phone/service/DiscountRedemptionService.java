@@ -0,0 +1,187 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.Discount;
+import com.sondv.phone.exception.ApiException;
+import com.sondv.phone.repository.DiscountRepository;
+import com.sondv.phone.util.TransactionUtils;
+import com.sondv.phone.util.UsageLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Giành lượt dùng mã giảm giá khi đặt hàng, không khóa dòng {@code discounts}.
+ * <p>
+ * Mã dùng một lần: một câu UPDATE có điều kiện {@code used = false}, chỉ một giao dịch thắng.
+ * Mã nhiều lượt ({@code maxUses > 1}): bộ đếm nằm trên Redis (script Lua kiểm tra giới hạn rồi INCR trong một
+ * lệnh) hoặc trong bộ nhớ ({@code store=local}, chỉ đúng khi chạy một node), nên các đơn dùng chung một mã
+ * phổ biến không phải xếp hàng trên cùng một dòng DB. Số lượt đã dùng được cộng dồn về DB theo lô mỗi
+ * {@code flush-interval}; giao dịch rollback thì lượt đã giành được trả lại. Redis lỗi thì từ chối áp dụng mã
+ * nhiều lượt (503): {@code usedCount} trong DB còn thiếu các lượt chưa ghi về của mọi node, nên không thể
+ * dùng nó để kiểm tra giới hạn mà không cho vượt {@code maxUses}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DiscountRedemptionService {
+
+    private static final String PREFIX = "discount:uses:";
+
+    // KEYS[1] = bộ đếm; ARGV = [giới hạn, giá trị khởi đầu từ DB, TTL giây]. Trả -1 nếu đã hết lượt
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+                    "if not v then redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3]) v = ARGV[2] end " +
+                    "if tonumber(v) >= tonumber(ARGV[1]) then return -1 end " +
+                    "return redis.call('INCR', KEYS[1])",
+            Long.class);
+
+    private final DiscountRepository discountRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.discount.redemption.store:redis}")
+    private String store;
+
+    @Value("${app.discount.redemption.flush-interval:1s}")
+    private Duration flushInterval;
+
+    private final UsageLimiter<Long> localCounters = new UsageLimiter<>();
+    // Lượt đã commit nhưng chưa ghi về DB, cộng dồn theo mã
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "discount-usage-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Counter redeemedCounter;
+    private Counter rejectedCounter;
+    private Counter unavailableCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        redeemedCounter = meterRegistry.counter("discount.redemption", "result", "redeemed");
+        rejectedCounter = meterRegistry.counter("discount.redemption", "result", "rejected");
+        unavailableCounter = meterRegistry.counter("discount.redemption", "result", "unavailable");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long interval = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Giành một lượt dùng mã trong transaction hiện tại; ném IllegalArgumentException nếu mã đã hết lượt.
+     */
+    public void redeem(Discount discount) {
+        boolean acquired = isMultiUse(discount) ? acquireShared(discount) : discountRepository.markUsedIfUnused(discount.getId()) == 1;
+        if (!acquired) {
+            rejectedCounter.increment();
+            throw new IllegalArgumentException("❌ Mã giảm giá đã được sử dụng.");
+        }
+        redeemedCounter.increment();
+    }
+
+    private boolean acquireShared(Discount discount) {
+        Long id = discount.getId();
+        int limit = discount.getMaxUses();
+        int seed = discount.getUsedCount() != null ? discount.getUsedCount() : 0;
+
+        if ("local".equalsIgnoreCase(store)) {
+            if (!localCounters.tryAcquire(id, limit, () -> seed)) {
+                return false;
+            }
+            TransactionUtils.afterRollback(() -> localCounters.release(id));
+        } else {
+            Long result;
+            try {
+                result = redisTemplate.execute(ACQUIRE, List.of(PREFIX + id),
+                        String.valueOf(limit), String.valueOf(seed), String.valueOf(ttlSeconds(discount)));
+            } catch (RuntimeException e) {
+                log.warn("Redis lỗi khi giành lượt mã {}: {}", discount.getCode(), e.getMessage());
+                unavailableCounter.increment();
+                throw new ApiException(503, "❌ Tạm thời không thể áp dụng mã giảm giá, vui lòng thử lại sau.");
+            }
+            if (result == null || result < 0) {
+                return false;
+            }
+            TransactionUtils.afterRollback(() -> releaseRemote(id));
+        }
+        TransactionUtils.afterCommit(() -> pending.computeIfAbsent(id, k -> new LongAdder()).increment());
+        return true;
+    }
+
+    private void releaseRemote(Long id) {
+        try {
+            redisTemplate.opsForValue().decrement(PREFIX + id);
+        } catch (RuntimeException e) {
+            log.warn("Không trả lại được lượt mã giảm giá {} trên Redis: {}", id, e.getMessage());
+        }
+    }
+
+    // Ghi số lượt đã dùng về DB: mỗi mã một câu UPDATE cộng dồn, cả lô trong một transaction
+    private void flush() {
+        try {
+            Map<Long, Integer> deltas = new HashMap<>();
+            pending.forEach((id, adder) -> {
+                int delta = (int) adder.sumThenReset();
+                if (delta > 0) {
+                    deltas.put(id, delta);
+                }
+            });
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        deltas.forEach(discountRepository::addUsage));
+            } catch (RuntimeException e) {
+                // Trả lại để lượt sau ghi tiếp
+                deltas.forEach((id, delta) -> pending.computeIfAbsent(id, k -> new LongAdder()).add(delta));
+                throw e;
+            }
+        } catch (Exception e) {
+            log.error("Không thể ghi số lượt dùng mã giảm giá về DB", e);
+        }
+    }
+
+    private static boolean isMultiUse(Discount discount) {
+        return discount.getMaxUses() != null && discount.getMaxUses() > 1;
+    }
+
+    // Bộ đếm sống đến hết hạn mã cộng thêm một ngày, tối thiểu một giờ
+    private static long ttlSeconds(Discount discount) {
+        long seconds = Duration.between(OffsetDateTime.now(), discount.getValidTo()).getSeconds() + 86_400;
+        return Math.max(seconds, 3_600);
+    }
+}
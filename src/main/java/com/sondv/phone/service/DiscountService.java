@@ -16,8 +16,6 @@ import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
-import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -26,10 +24,13 @@ public class DiscountService {
 
     private final DiscountRepository discountRepository;
     private final ProductRepository productRepository;
+    private final DiscountSpinService discountSpinService;
+    private final ProductPricingService pricingService;
 
     @Transactional
     @CacheEvict(value = "activeDiscounts", allEntries = true)
     public Discount createDiscount(Discount discount) {
+        discountSpinService.discountsChanged();
         return discountRepository.save(discount);
     }
 
@@ -37,10 +38,6 @@ public class DiscountService {
         return discountRepository.findAll(pageable);
     }
 
-    public List<Discount> getAll() {
-        return discountRepository.findAll();
-    }
-
     @Cacheable(value = "activeDiscounts")
     public Page<Discount> getActiveDiscounts(Double minPercentage, Pageable pageable) {
         OffsetDateTime now = OffsetDateTime.now();
@@ -63,6 +60,8 @@ public class DiscountService {
         existing.setValidTo(updatedDiscount.getValidTo());
         existing.setMinOrderValue(updatedDiscount.getMinOrderValue());
         existing.setProbabilityWeight(updatedDiscount.getProbabilityWeight());
+        existing.setMaxUses(updatedDiscount.getMaxUses());
+        discountSpinService.discountsChanged();
 
         return discountRepository.save(existing);
     }
@@ -71,6 +70,7 @@ public class DiscountService {
     @CacheEvict(value = "activeDiscounts", allEntries = true)
     public void deleteDiscount(Long id) {
         discountRepository.deleteById(id);
+        discountSpinService.discountsChanged();
     }
 
     public DiscountApplyResponse applyDiscountLogic(DiscountApplyRequest request) {
@@ -100,20 +100,9 @@ public class DiscountService {
                     .orElseThrow(() -> new IllegalArgumentException("Sản phẩm không tồn tại hoặc đã bị xoá."));
 
             // ❌ Không áp mã nếu sản phẩm đang được khuyến mãi
-            if (product.getDiscountedPrice() != null &&
-                    product.getDiscountStartDate() != null &&
-                    product.getDiscountEndDate() != null) {
-
-                // Chuyển LocalDateTime -> OffsetDateTime để so sánh
-                OffsetDateTime start = product.getDiscountStartDate().atOffset(ZoneOffset.UTC);
-                OffsetDateTime end = product.getDiscountEndDate().atOffset(ZoneOffset.UTC);
-
-                boolean isDiscountActive = !now.isBefore(start) && !now.isAfter(end);
-
-                if (isDiscountActive) {
-                    throw new IllegalArgumentException(
-                            "Sản phẩm \"" + product.getName() + "\" đang khuyến mãi. Không thể áp thêm mã giảm giá.");
-                }
+            if (pricingService.isOnSale(product)) {
+                throw new IllegalArgumentException(
+                        "Sản phẩm \"" + product.getName() + "\" đang khuyến mãi. Không thể áp thêm mã giảm giá.");
             }
 
             BigDecimal price = product.getSellingPrice(); // dùng giá gốc để tính điều kiện
@@ -132,17 +121,4 @@ public class DiscountService {
 
         return new DiscountApplyResponse(originalTotal, discountAmount, finalTotal, "Mã giảm giá đã được áp dụng.");
     }
-
-    private BigDecimal resolveCurrentPrice(Product product) {
-        OffsetDateTime now = OffsetDateTime.now();
-
-        boolean inDiscountPeriod = product.getDiscountedPrice() != null
-                && product.getDiscountStartDate() != null
-                && product.getDiscountEndDate() != null
-                && now.isAfter(product.getDiscountStartDate().atOffset(now.getOffset()))
-                && now.isBefore(product.getDiscountEndDate().atOffset(now.getOffset()));
-
-        return inDiscountPeriod ? product.getDiscountedPrice() : product.getSellingPrice();
-    }
-
-}
\ No newline at end of file
+}
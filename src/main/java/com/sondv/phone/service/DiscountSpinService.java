@@ -0,0 +1,167 @@
+package com.sondv.phone.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sondv.phone.entity.Discount;
+import com.sondv.phone.repository.DiscountRepository;
+import com.sondv.phone.util.AliasSampler;
+import com.sondv.phone.util.DiscountWindow;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Vòng quay mã giảm giá: giữ sẵn bảng alias ({@link AliasSampler}) của các mã đang hiệu lực,
+ * nên mỗi lượt quay là O(1) và không chạm DB.
+ * <p>
+ * Bảng được dựng lại khi mã được tạo/sửa/xóa (sau commit), đúng lúc một khung hiệu lực mở hoặc đóng
+ * (hẹn giờ theo mốc gần nhất), và định kỳ mỗi {@code refresh-interval} để nhận thay đổi từ node khác.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DiscountSpinService {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+    // Số mã tối đa được đếm lượt trúng riêng; mã ít trúng nhất bị loại khi vượt ngưỡng
+    private static final int MAX_TRACKED_CODES = 1000;
+
+    // nextChange: mốc sớm nhất mà tập mã hiệu lực thay đổi; null nếu không còn mốc nào
+    private record Snapshot(AliasSampler<Discount> sampler, OffsetDateTime nextChange) {
+    }
+
+    private final DiscountRepository discountRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.discount.spin.refresh-interval:5m}")
+    private Duration refreshInterval;
+
+    private volatile Snapshot snapshot;
+    private ScheduledFuture<?> boundaryTask;
+    // Metric chỉ có tổng lượt trúng: gắn tag theo mã sẽ sinh meter mới cho mỗi mã và không bao giờ giải phóng
+    private Counter hitCounter;
+    private final Cache<String, LongAdder> hits = Caffeine.newBuilder().maximumSize(MAX_TRACKED_CODES).build();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "discount-spin-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void registerMetrics() {
+        hitCounter = meterRegistry.counter("discount.spin.hits");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long interval = refreshInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::safeRebuild, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Chọn một mã theo trọng số trong số mã đang hiệu lực; null nếu không có mã nào.
+     */
+    public Discount spin() {
+        OffsetDateTime now = OffsetDateTime.now(ZONE);
+        Snapshot current = snapshot;
+        if (current == null || (current.nextChange() != null && !now.isBefore(current.nextChange()))) {
+            // Chưa dựng lần nào hoặc vừa qua một mốc mà lượt hẹn giờ chưa kịp chạy
+            current = rebuild(false);
+        }
+        Discount picked = current.sampler().sample();
+        if (picked != null) {
+            hitCounter.increment();
+            hits.get(picked.getCode(), code -> new LongAdder()).increment();
+        }
+        return picked;
+    }
+
+    // Số lần trúng của từng mã kể từ khi khởi động node này (tối đa MAX_TRACKED_CODES mã)
+    public Map<String, Long> getHitCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        hits.asMap().forEach((code, adder) -> result.put(code, adder.sum()));
+        return result;
+    }
+
+    // Gọi trong transaction tạo/sửa/xóa mã: dựng lại sau khi commit
+    public void discountsChanged() {
+        TransactionUtils.afterCommit(() -> scheduler.execute(this::safeRebuild));
+    }
+
+    private void safeRebuild() {
+        try {
+            rebuild(true);
+        } catch (Exception e) {
+            log.error("Không thể dựng lại vòng quay mã giảm giá", e);
+        }
+    }
+
+    // force = false: bỏ qua nếu luồng khác vừa dựng xong và bảng hiện tại vẫn còn đúng
+    private synchronized Snapshot rebuild(boolean force) {
+        OffsetDateTime now = OffsetDateTime.now(ZONE);
+        Snapshot current = snapshot;
+        if (!force && current != null && (current.nextChange() == null || now.isBefore(current.nextChange()))) {
+            return current;
+        }
+
+        List<Discount> active = new ArrayList<>();
+        OffsetDateTime nextChange = null;
+        for (Discount d : discountRepository.findSpinCandidates(now)) {
+            OffsetDateTime boundary;
+            if (d.getValidFrom().isAfter(now)) {
+                boundary = d.getValidFrom();
+            } else {
+                active.add(d);
+                // Khung hiệu lực gồm cả validTo nên mã chỉ rời vòng quay sau mốc đó
+                boundary = DiscountWindow.closesAt(d.getValidTo());
+            }
+            if (nextChange == null || boundary.isBefore(nextChange)) {
+                nextChange = boundary;
+            }
+        }
+
+        Snapshot fresh = new Snapshot(new AliasSampler<>(active, Discount::getProbabilityWeight), nextChange);
+        snapshot = fresh;
+        scheduleBoundary(nextChange, now);
+        log.debug("Dựng lại vòng quay: {} mã hiệu lực, mốc kế tiếp {}", active.size(), nextChange);
+        return fresh;
+    }
+
+    private void scheduleBoundary(OffsetDateTime nextChange, OffsetDateTime now) {
+        if (boundaryTask != null) {
+            boundaryTask.cancel(false);
+            boundaryTask = null;
+        }
+        if (nextChange == null) {
+            return;
+        }
+        long delay = Math.max(0, Duration.between(now, nextChange).toMillis()) + 1;
+        boundaryTask = scheduler.schedule(this::safeRebuild, delay, TimeUnit.MILLISECONDS);
+    }
+}
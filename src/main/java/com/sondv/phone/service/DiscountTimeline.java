@@ -0,0 +1,263 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.DiscountWindow;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lịch mở/đóng khung giảm giá của sản phẩm, thay cho việc quét toàn bảng mỗi phút.
+ * <p>
+ * Các mốc (discountStartDate, và ngay sau discountEndDate vì khung gồm cả mốc cuối) được giữ trong một
+ * {@link TreeMap} theo thời điểm; chỉ một tác vụ hẹn giờ cho mốc sớm nhất. Khi đến mốc, mọi sản phẩm cùng
+ * mốc được xử lý một lượt: khung kết thúc thì gỡ giá giảm, khung bắt đầu thì tính lại cột giá hiệu lực
+ * ({@code effective_price}), mỗi loại bằng một câu UPDATE theo lô, rồi chỉ xóa cache của đúng các sản phẩm đó.
+ * Lúc khởi động, giá hiệu lực của mọi sản phẩm được tính lại một lần (các mốc đã qua lúc node đang tắt).
+ * Lịch được nạp khi khởi động và đồng bộ lại với DB mỗi {@code resync-interval} để nhận thay đổi từ node khác.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DiscountTimeline {
+
+    private static final int UPDATE_CHUNK_SIZE = 1000;
+
+    private record Window(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime closesAt() {
+            return DiscountWindow.closesAt(end);
+        }
+    }
+
+    private static final class Bucket {
+        final Set<Long> opening = new HashSet<>();
+        final Set<Long> closing = new HashSet<>();
+
+        boolean isEmpty() {
+            return opening.isEmpty() && closing.isEmpty();
+        }
+    }
+
+    private final ProductRepository productRepository;
+    private final ProductCacheInvalidator cacheInvalidator;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.discount.timeline.resync-interval:15m}")
+    private Duration resyncInterval;
+
+    // Truy cập dưới khóa của đối tượng này
+    private final TreeMap<LocalDateTime, Bucket> timeline = new TreeMap<>();
+    private final Map<Long, Window> windows = new HashMap<>();
+    private ScheduledFuture<?> nextTask;
+    private LocalDateTime nextTaskAt;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "discount-timeline");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Counter openedCounter;
+    private Counter closedCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        openedCounter = meterRegistry.counter("discount.timeline.transitions", "kind", "open");
+        closedCounter = meterRegistry.counter("discount.timeline.transitions", "kind", "close");
+        Gauge.builder("discount.timeline.pending", this, t -> t.pendingCount()).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.execute(this::refreshEffectivePrices);
+        long interval = resyncInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::resync, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Sản phẩm vừa được đặt (hoặc gỡ, khi start/end null) khung giảm giá; áp vào lịch sau khi commit.
+     */
+    public void windowChanged(Long productId, LocalDateTime start, LocalDateTime end) {
+        windowsChanged(List.of(productId), start, end);
+    }
+
+    public void windowsChanged(Collection<Long> productIds, LocalDateTime start, LocalDateTime end) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(productIds);
+        Window window = start != null && end != null ? new Window(start, end) : null;
+        TransactionUtils.afterCommit(() -> {
+            synchronized (this) {
+                LocalDateTime now = LocalDateTime.now();
+                ids.forEach(id -> put(id, window, now));
+                reschedule();
+            }
+        });
+    }
+
+    // Sau thay đổi hàng loạt không liệt kê id (áp giá toàn bộ sản phẩm): đồng bộ lại sau khi commit
+    public void reload() {
+        TransactionUtils.afterCommit(() -> scheduler.execute(this::resync));
+    }
+
+    // Dựng lại toàn bộ lịch từ DB; các khung đã kết thúc mà còn sót được gỡ ngay
+    void resync() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Map<Long, Window> fresh = new HashMap<>();
+            for (Object[] row : productRepository.findDiscountWindows()) {
+                fresh.put((Long) row[0], new Window((LocalDateTime) row[1], (LocalDateTime) row[2]));
+            }
+            synchronized (this) {
+                timeline.clear();
+                windows.clear();
+                fresh.forEach((id, window) -> put(id, window, now));
+                // Mốc đã qua (kể cả khung hết hạn lúc node đang tắt) được xử lý ở lượt fire đầu tiên
+                reschedule();
+            }
+            log.debug("Đồng bộ lịch giảm giá: {} sản phẩm có khung giảm giá, mốc kế tiếp {}", fresh.size(), nextTaskAt);
+        } catch (Exception e) {
+            log.error("Không thể đồng bộ lịch giảm giá", e);
+        }
+    }
+
+    private void refreshEffectivePrices() {
+        try {
+            Integer updated = transactionTemplate.execute(
+                    status -> productRepository.refreshEffectivePrices(null, LocalDateTime.now()));
+            log.debug("Đã tính lại giá hiệu lực cho {} sản phẩm", updated);
+        } catch (Exception e) {
+            log.error("Không thể tính lại giá hiệu lực của sản phẩm", e);
+        }
+    }
+
+    private void fire() {
+        Set<Long> opened = new HashSet<>();
+        Set<Long> closed = new HashSet<>();
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (this) {
+            nextTask = null;
+            nextTaskAt = null;
+            while (!timeline.isEmpty() && !timeline.firstKey().isAfter(now)) {
+                Bucket due = timeline.pollFirstEntry().getValue();
+                opened.addAll(due.opening);
+                closed.addAll(due.closing);
+            }
+            closed.forEach(windows::remove);
+        }
+        opened.removeAll(closed);
+        try {
+            if (!closed.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> {
+                    List<Long> ids = new ArrayList<>(closed);
+                    for (int from = 0; from < ids.size(); from += UPDATE_CHUNK_SIZE) {
+                        productRepository.clearExpiredDiscounts(
+                                ids.subList(from, Math.min(from + UPDATE_CHUNK_SIZE, ids.size())), now);
+                    }
+                    cacheInvalidator.productsChanged(closed);
+                });
+                closedCounter.increment(closed.size());
+            }
+            if (!opened.isEmpty()) {
+                // Giá giảm đã có sẵn trong DB, chỉ cột giá hiệu lực và các bản DTO đã cache còn mang giá gốc
+                transactionTemplate.executeWithoutResult(status -> {
+                    productRepository.refreshEffectivePrices(opened, now);
+                    cacheInvalidator.productsChanged(opened);
+                });
+                openedCounter.increment(opened.size());
+            }
+            if (!closed.isEmpty() || !opened.isEmpty()) {
+                log.info("Khung giảm giá: mở {} sản phẩm, đóng {} sản phẩm", opened.size(), closed.size());
+            }
+        } catch (Exception e) {
+            // Lượt đồng bộ kế tiếp sẽ đưa các khung chưa gỡ được vào lịch lại
+            log.error("Không thể áp mốc giảm giá cho {} sản phẩm", closed.size() + opened.size(), e);
+        } finally {
+            synchronized (this) {
+                reschedule();
+            }
+        }
+    }
+
+    // Khung đã mở thì không cần mốc mở (cache đã được xóa lúc đặt khung); mốc đóng luôn được giữ
+    private void put(Long productId, Window window, LocalDateTime now) {
+        Window previous = window != null ? windows.put(productId, window) : windows.remove(productId);
+        if (previous != null) {
+            unlink(previous.start(), productId, true);
+            unlink(previous.closesAt(), productId, false);
+        }
+        if (window != null) {
+            if (window.start().isAfter(now)) {
+                timeline.computeIfAbsent(window.start(), k -> new Bucket()).opening.add(productId);
+            }
+            timeline.computeIfAbsent(window.closesAt(), k -> new Bucket()).closing.add(productId);
+        }
+    }
+
+    private void unlink(LocalDateTime at, Long productId, boolean opening) {
+        Bucket bucket = timeline.get(at);
+        if (bucket != null) {
+            (opening ? bucket.opening : bucket.closing).remove(productId);
+            if (bucket.isEmpty()) {
+                timeline.remove(at);
+            }
+        }
+    }
+
+    // Hẹn giờ lại nếu mốc sớm nhất đã đổi
+    private void reschedule() {
+        LocalDateTime first = timeline.isEmpty() ? null : timeline.firstKey();
+        if (first != null && first.equals(nextTaskAt)) {
+            return;
+        }
+        if (nextTask != null) {
+            nextTask.cancel(false);
+            nextTask = null;
+            nextTaskAt = null;
+        }
+        if (first == null) {
+            return;
+        }
+        // Làm tròn lên mili giây: hẹn sớm hơn mốc thì fire() không thấy gì đến hạn và phải hẹn lại
+        long nanos = Math.max(0, Duration.between(LocalDateTime.now(), first).toNanos());
+        long delay = (nanos + 999_999) / 1_000_000;
+        nextTask = scheduler.schedule(this::fire, delay, TimeUnit.MILLISECONDS);
+        nextTaskAt = first;
+    }
+
+    private synchronized int pendingCount() {
+        return timeline.size();
+    }
+}
@@ -0,0 +1,281 @@
+package com.sondv.phone.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sondv.phone.exception.ApiException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Chống tạo trùng cho các request ghi (đặt hàng, tạo thanh toán) theo header {@code Idempotency-Key}.
+ * <p>
+ * Lần đầu tiên với một key chạy thật và lưu lại response (mã HTTP + JSON) vào Caffeine và Redis trong {@code ttl};
+ * các lần sau với cùng key nhận lại đúng response đó mà không chạy lại nghiệp vụ. Nếu lần đầu vẫn đang chạy,
+ * request đến sau chờ kết quả của nó (trong cùng node qua future, giữa các node bằng cách thăm dò Redis)
+ * thay vì chạy song song. Key được gắn với người dùng và endpoint; dùng lại key cho nội dung khác bị từ chối.
+ * Lỗi 5xx/ngoại lệ không được lưu, nên client có thể thử lại với cùng key. Redis lỗi thì chỉ còn bảo vệ trong node.
+ * Dấu "đang xử lý" trên Redis chỉ sống {@code lease}: node chết giữa chừng thì key tự nhả sau vài phút thay vì
+ * chặn mọi lần thử lại trong cả {@code ttl}; chỉ response đã hoàn tất mới được giữ đủ {@code ttl}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final String PREFIX = "idempotency:";
+    private static final int MAX_KEY_LENGTH = 100;
+    private static final long POLL_MILLIS = 100;
+
+    // status = 0: đang xử lý ở một node nào đó
+    record StoredResponse(String fingerprint, int status, String body) {
+        boolean completed() {
+            return status > 0;
+        }
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.idempotency.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${app.idempotency.wait-timeout:15s}")
+    private Duration waitTimeout;
+
+    // Thời hạn của dấu "đang xử lý"; phải dài hơn thời gian xử lý tối đa của một request
+    @Value("${app.idempotency.lease:2m}")
+    private Duration lease;
+
+    @Value("${app.idempotency.local-max-size:10000}")
+    private long localMaxSize;
+
+    private Cache<String, StoredResponse> completed;
+    private final ConcurrentMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private Counter executedCounter;
+    private Counter replayedCounter;
+
+    @PostConstruct
+    void init() {
+        completed = Caffeine.newBuilder().expireAfterWrite(ttl).maximumSize(localMaxSize).build();
+        executedCounter = meterRegistry.counter("idempotency.requests", "result", "executed");
+        replayedCounter = meterRegistry.counter("idempotency.requests", "result", "replayed");
+    }
+
+    /**
+     * Chạy {@code action} đúng một lần cho mỗi (scope, userId, key). Không có key thì chạy như bình thường.
+     *
+     * @param scope   tên thao tác, ví dụ "order.create"
+     * @param request nội dung request, dùng để phát hiện key bị dùng lại cho yêu cầu khác
+     */
+    public ResponseEntity<?> execute(String scope, Long userId, String key, Object request,
+                                     Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new ApiException(HttpStatus.BAD_REQUEST.value(), "Idempotency-Key quá dài (tối đa " + MAX_KEY_LENGTH + " ký tự)");
+        }
+        String id = scope + ":" + userId + ":" + key.trim();
+        String fingerprint = fingerprint(request);
+
+        StoredResponse done = completed.getIfPresent(id);
+        if (done != null) {
+            return replay(done, fingerprint);
+        }
+
+        CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> existing = inFlight.putIfAbsent(id, mine);
+        if (existing != null) {
+            return replay(await(existing), fingerprint);
+        }
+
+        try {
+            StoredResponse remote = claim(id, fingerprint);
+            if (remote != null) {
+                // Node khác đã hoặc đang xử lý key này
+                StoredResponse result = remote.completed() ? remote : pollRemote(id);
+                completed.put(id, result);
+                mine.complete(result);
+                return replay(result, fingerprint);
+            }
+
+            ResponseEntity<?> response;
+            try {
+                response = action.get();
+            } catch (RuntimeException | Error e) {
+                release(id);
+                throw e;
+            }
+            executedCounter.increment();
+
+            if (response.getStatusCode().is5xxServerError()) {
+                release(id);
+                mine.completeExceptionally(new ApiException(HttpStatus.CONFLICT.value(),
+                        "Yêu cầu trước với cùng Idempotency-Key đã thất bại, vui lòng thử lại"));
+                return response;
+            }
+            String body;
+            try {
+                body = toJson(response.getBody());
+            } catch (IllegalStateException e) {
+                // Nghiệp vụ đã chạy xong nên vẫn giữ key (không cho chạy lại), chỉ là lần sau không có nội dung để phát lại
+                log.warn("Không lưu được response cho Idempotency-Key {}: {}", id, e.getMessage());
+                body = "null";
+            }
+            StoredResponse result = new StoredResponse(fingerprint, response.getStatusCode().value(), body);
+            completed.put(id, result);
+            store(id, result);
+            mine.complete(result);
+            return response;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String fingerprint) {
+        if (!stored.fingerprint().equals(fingerprint)) {
+            throw new ApiException(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    "Idempotency-Key đã được dùng cho một yêu cầu khác");
+        }
+        replayedCounter.increment();
+        return ResponseEntity.status(stored.status())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("Idempotent-Replayed", "true")
+                .body(stored.body());
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> future) {
+        try {
+            return future.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw inProgress();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw inProgress();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Giành quyền xử lý key trên Redis; trả về bản ghi hiện có nếu node khác đã giành trước
+    private StoredResponse claim(String id, String fingerprint) {
+        try {
+            String marker = objectMapper.writeValueAsString(new StoredResponse(fingerprint, 0, null));
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(PREFIX + id, marker, lease);
+            if (Boolean.TRUE.equals(acquired)) {
+                return null;
+            }
+            return read(id);
+        } catch (Exception e) {
+            log.debug("Không giành được Idempotency-Key {} trên Redis: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    private StoredResponse pollRemote(String id) {
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            StoredResponse current = read(id);
+            if (current == null) {
+                // Lần trước thất bại và đã nhả key (hoặc node xử lý đã chết và hết lease): để client thử lại
+                throw new ApiException(HttpStatus.CONFLICT.value(),
+                        "Yêu cầu trước với cùng Idempotency-Key đã thất bại, vui lòng thử lại");
+            }
+            if (current.completed()) {
+                return current;
+            }
+        }
+        throw inProgress();
+    }
+
+    private StoredResponse read(String id) {
+        try {
+            String raw = redisTemplate.opsForValue().get(PREFIX + id);
+            return raw != null ? objectMapper.readValue(raw, StoredResponse.class) : null;
+        } catch (Exception e) {
+            log.debug("Không đọc được Idempotency-Key {} từ Redis: {}", id, e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(String id, StoredResponse result) {
+        try {
+            redisTemplate.opsForValue().set(PREFIX + id, objectMapper.writeValueAsString(result), ttl);
+        } catch (Exception e) {
+            log.debug("Không lưu được Idempotency-Key {} lên Redis: {}", id, e.getMessage());
+        }
+    }
+
+    private void release(String id) {
+        try {
+            redisTemplate.delete(PREFIX + id);
+        } catch (Exception e) {
+            log.debug("Không nhả được Idempotency-Key {} trên Redis: {}", id, e.getMessage());
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(toJson(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("Không thể tuần tự hóa response để lưu Idempotency-Key", e);
+        }
+    }
+
+    private static ApiException inProgress() {
+        return new ApiException(HttpStatus.CONFLICT.value(),
+                "Yêu cầu với cùng Idempotency-Key đang được xử lý, vui lòng thử lại sau");
+    }
+}
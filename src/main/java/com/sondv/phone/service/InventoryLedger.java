@@ -0,0 +1,278 @@
+package com.sondv.phone.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sondv.phone.dto.InventoryLedgerEntry;
+import com.sondv.phone.entity.OutboxEvent;
+import com.sondv.phone.repository.InventoryLogRepository;
+import com.sondv.phone.repository.OutboxEventRepository;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sổ cái biến động tồn kho chỉ ghi thêm (append-only), ghi trễ theo lô.
+ * <p>
+ * Trong transaction nghiệp vụ chỉ có một dòng outbox chứa toàn bộ biến động của lần điều chỉnh đó.
+ * Sau khi commit, lô được đẩy vào một hàng đợi vòng có giới hạn; luồng flush gom nhiều lô đến khi đủ
+ * {@code batch-size} dòng hoặc hết {@code flush-interval} rồi chèn vào {@code inventory_logs} bằng một JDBC batch,
+ * đánh dấu outbox đã xử lý trong cùng transaction. Nếu hàng đợi đầy hoặc tiến trình dừng đột ngột,
+ * lượt khôi phục định kỳ đọc lại các dòng outbox chưa xử lý, nên không mất biến động nào.
+ * Lịch sử tồn kho vì vậy trễ tối đa khoảng một {@code flush-interval}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InventoryLedger {
+
+    public static final String EVENT_TYPE = "INVENTORY_LEDGER";
+
+    private static final TypeReference<List<InventoryLedgerEntry>> ENTRIES_TYPE = new TypeReference<>() {
+    };
+
+    private record PendingBatch(Long outboxId, List<InventoryLedgerEntry> entries) {
+    }
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final InventoryLogRepository inventoryLogRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.inventory.ledger.buffer-capacity:4096}")
+    private int bufferCapacity;
+
+    @Value("${app.inventory.ledger.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.inventory.ledger.flush-interval:500ms}")
+    private Duration flushInterval;
+
+    // Dòng outbox chưa xử lý lâu hơn mức này được coi là bị bỏ sót bởi đường trong bộ nhớ
+    @Value("${app.inventory.ledger.recovery-delay:30s}")
+    private Duration recoveryDelay;
+
+    @Value("${app.inventory.ledger.retention:1d}")
+    private Duration retention;
+
+    private BlockingQueue<PendingBatch> buffer;
+    private Thread flusher;
+    private volatile boolean running;
+    private Counter flushedCounter;
+    private Counter overflowCounter;
+
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "inventory-ledger-recovery");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    void init() {
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        flushedCounter = meterRegistry.counter("inventory.ledger.flushed");
+        overflowCounter = meterRegistry.counter("inventory.ledger.overflow");
+        Gauge.builder("inventory.ledger.buffer", this, l -> l.buffer.size()).register(meterRegistry);
+
+        running = true;
+        flusher = new Thread(this::runFlusher, "inventory-ledger-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRecovery() {
+        long delay = recoveryDelay.toMillis();
+        maintenance.scheduleWithFixedDelay(this::recover, delay, delay, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::purge, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        maintenance.shutdownNow();
+        flusher.interrupt();
+        try {
+            flusher.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Phần còn lại trong hàng đợi vẫn nằm trong outbox, ghi nốt nếu kịp
+        List<PendingBatch> rest = new ArrayList<>();
+        buffer.drainTo(rest);
+        if (!rest.isEmpty()) {
+            try {
+                flush(rest);
+            } catch (Exception e) {
+                log.warn("Chưa ghi kịp {} lô sổ cái khi dừng, sẽ khôi phục từ outbox", rest.size());
+            }
+        }
+    }
+
+    /**
+     * Ghi nhận biến động trong transaction hiện tại. Phải được gọi bên trong transaction nghiệp vụ
+     * để dòng outbox commit/rollback cùng thay đổi tồn kho.
+     */
+    public void append(List<InventoryLedgerEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        OutboxEvent event = new OutboxEvent();
+        event.setType(EVENT_TYPE);
+        event.setPayload(serialize(entries));
+        event.setCreatedAt(LocalDateTime.now());
+        Long outboxId = outboxEventRepository.save(event).getId();
+
+        List<InventoryLedgerEntry> snapshot = List.copyOf(entries);
+        TransactionUtils.afterCommit(() -> {
+            if (!buffer.offer(new PendingBatch(outboxId, snapshot))) {
+                // Không chặn luồng checkout; lượt khôi phục sẽ ghi lô này từ outbox
+                overflowCounter.increment();
+            }
+        });
+    }
+
+    private void runFlusher() {
+        List<PendingBatch> batch = new ArrayList<>();
+        while (running) {
+            try {
+                PendingBatch first = buffer.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int entries = first.entries().size();
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (entries < batchSize) {
+                    long wait = deadline - System.nanoTime();
+                    PendingBatch next = wait > 0 ? buffer.poll(wait, TimeUnit.NANOSECONDS) : buffer.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    entries += next.entries().size();
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Trả lô về hàng đợi để shutdown() ghi nốt; lô không vừa vẫn còn trong outbox
+                batch.forEach(buffer::offer);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Lô vẫn chưa được đánh dấu trong outbox nên sẽ được khôi phục sau
+                log.error("Không thể ghi {} lô sổ cái tồn kho", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void recover() {
+        try {
+            List<OutboxEvent> events;
+            do {
+                events = outboxEventRepository.findUnprocessed(EVENT_TYPE,
+                        LocalDateTime.now().minus(recoveryDelay), PageRequest.of(0, batchSize));
+                if (events.isEmpty()) {
+                    return;
+                }
+                List<PendingBatch> batches = new ArrayList<>(events.size());
+                List<Long> invalid = new ArrayList<>();
+                for (OutboxEvent event : events) {
+                    try {
+                        batches.add(new PendingBatch(event.getId(), deserialize(event.getPayload())));
+                    } catch (IllegalStateException e) {
+                        log.error("Bỏ qua dòng outbox sổ cái không hợp lệ id={}", event.getId(), e);
+                        invalid.add(event.getId());
+                    }
+                }
+                if (!invalid.isEmpty()) {
+                    transactionTemplate.executeWithoutResult(status ->
+                            outboxEventRepository.markProcessed(invalid, LocalDateTime.now()));
+                }
+                flush(batches);
+                log.info("Đã khôi phục {} lô sổ cái tồn kho từ outbox", batches.size());
+            } while (events.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("Lỗi khi khôi phục sổ cái tồn kho từ outbox", e);
+        }
+    }
+
+    private void purge() {
+        try {
+            Integer deleted = transactionTemplate.execute(status ->
+                    outboxEventRepository.deleteProcessedBefore(LocalDateTime.now().minus(retention)));
+            if (deleted != null && deleted > 0) {
+                log.debug("Đã dọn {} dòng outbox đã xử lý", deleted);
+            }
+        } catch (Exception e) {
+            log.warn("Không thể dọn outbox: {}", e.getMessage());
+        }
+    }
+
+    // Giành quyền các dòng outbox còn chưa xử lý, chèn log của chúng và đánh dấu trong cùng một transaction
+    private void flush(List<PendingBatch> batches) {
+        if (batches.isEmpty()) {
+            return;
+        }
+        Map<Long, List<InventoryLedgerEntry>> byOutboxId = new HashMap<>();
+        for (PendingBatch batch : batches) {
+            byOutboxId.put(batch.outboxId(), batch.entries());
+        }
+        Integer written = transactionTemplate.execute(status -> {
+            Set<Long> claimed = new HashSet<>(outboxEventRepository.lockUnprocessed(byOutboxId.keySet()));
+            if (claimed.isEmpty()) {
+                return 0;
+            }
+            List<InventoryLedgerEntry> rows = new ArrayList<>();
+            claimed.forEach(id -> rows.addAll(byOutboxId.get(id)));
+            inventoryLogRepository.insertAll(rows);
+            outboxEventRepository.markProcessed(claimed, LocalDateTime.now());
+            return rows.size();
+        });
+        if (written != null && written > 0) {
+            flushedCounter.increment(written);
+        }
+    }
+
+    private String serialize(List<InventoryLedgerEntry> entries) {
+        try {
+            return objectMapper.writeValueAsString(entries);
+        } catch (Exception e) {
+            throw new IllegalStateException("Không thể tuần tự hóa biến động tồn kho", e);
+        }
+    }
+
+    private List<InventoryLedgerEntry> deserialize(String payload) {
+        try {
+            return objectMapper.readValue(payload, ENTRIES_TYPE);
+        } catch (Exception e) {
+            throw new IllegalStateException("Dữ liệu outbox sổ cái không hợp lệ", e);
+        }
+    }
+}
@@ -1,26 +1,29 @@
 package com.sondv.phone.service;
 
+import com.sondv.phone.dto.InventoryLedgerEntry;
 import com.sondv.phone.entity.Inventory;
-import com.sondv.phone.entity.InventoryLog;
 import com.sondv.phone.entity.Product;
-import com.sondv.phone.repository.InventoryLogRepository;
 import com.sondv.phone.repository.InventoryRepository;
-import com.sondv.phone.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 @RequiredArgsConstructor
 public class InventoryService {
     private final InventoryRepository inventoryRepository;
-    private final ProductRepository productRepository;
-    private final NotificationService notificationService;
-    private final InventoryLogRepository inventoryLogRepository;
+    private final LowStockAlertPipeline lowStockAlerts;
+    private final InventoryLedger inventoryLedger;
+    private final ProductCacheInvalidator cacheInvalidator;
+    private final InventorySummaryService inventorySummary;
 
     public Optional<Inventory> getInventoryByProduct(Long productId) {
         return inventoryRepository.findByProductId(productId);
@@ -28,35 +31,81 @@ public class InventoryService {
 
     @Transactional
     public Inventory adjustInventory(Long productId, int quantityChange, String reason, Long userId) {
-        Inventory inventory = inventoryRepository.findByProductId(productId)
-                .orElseThrow(() -> new IllegalArgumentException("Sản phẩm chưa có thông tin tồn kho"));
-        Product product = inventory.getProduct();
+        return adjustInventory(Map.of(productId, quantityChange), reason, userId).get(0);
+    }
+
+    /**
+     * Điều chỉnh tồn kho nhiều sản phẩm trong một lần: khóa tất cả dòng bằng một SELECT ... FOR UPDATE
+     * theo thứ tự product_id, kiểm tra hết rồi mới ghi, nên một dòng sai sẽ không để lại thay đổi dở dang.
+     * Các UPDATE được Hibernate gộp batch lúc flush; lịch sử được ghi trễ qua {@link InventoryLedger}.
+     *
+     * @param changes productId -> số lượng thay đổi (âm là giảm kho)
+     */
+    @Transactional
+    public List<Inventory> adjustInventory(Map<Long, Integer> changes, String reason, Long userId) {
+        return applyChanges(changes, reason, userId, true);
+    }
 
-        int oldQuantity = inventory.getQuantity();
-        int newQuantity = oldQuantity + quantityChange;
+    /**
+     * Hoàn lại hàng đã trừ trước đó (hủy đơn, hết hạn giữ hàng): không chặn theo maxQuantity
+     * vì số hàng này vốn đã nằm trong kho.
+     */
+    @Transactional
+    public List<Inventory> restoreInventory(Map<Long, Integer> changes, String reason, Long userId) {
+        return applyChanges(changes, reason, userId, false);
+    }
+
+    private List<Inventory> applyChanges(Map<Long, Integer> changes, String reason, Long userId, boolean enforceMax) {
+        if (changes == null || changes.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Integer> sorted = new TreeMap<>(changes);
+        List<Inventory> inventories = inventoryRepository.findAllByProductIdsForUpdate(sorted.keySet());
+        if (inventories.size() != sorted.size()) {
+            throw new IllegalArgumentException("Sản phẩm chưa có thông tin tồn kho");
+        }
 
-        if (newQuantity < 0) {
-            throw new IllegalArgumentException("Số lượng không được âm");
+        for (Inventory inventory : inventories) {
+            int newQuantity = inventory.getQuantity() + sorted.get(inventory.getProduct().getId());
+            if (newQuantity < 0) {
+                throw new IllegalArgumentException("Số lượng không được âm");
+            }
+            if (enforceMax && newQuantity > inventory.getMaxQuantity()) {
+                throw new IllegalArgumentException("Số lượng vượt quá ngưỡng tối đa");
+            }
         }
-        if (newQuantity > inventory.getMaxQuantity()) {
-            throw new IllegalArgumentException("Số lượng vượt quá ngưỡng tối đa");
+
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.of("+07:00"));
+        List<InventoryLedgerEntry> entries = new ArrayList<>(inventories.size());
+        for (Inventory inventory : inventories) {
+            Product product = inventory.getProduct();
+            int quantityChange = sorted.get(product.getId());
+            int oldQuantity = inventory.getQuantity();
+            int newQuantity = oldQuantity + quantityChange;
+
+            inventory.setQuantity(newQuantity);
+            inventory.setLastUpdated(now);
+            product.setStock(newQuantity);
+            inventorySummary.quantityChanged(product.getId(), newQuantity);
+            detectThresholdCrossing(product.getId(), oldQuantity, newQuantity, inventory.getMinQuantity());
+
+            entries.add(new InventoryLedgerEntry(product.getId(), oldQuantity, newQuantity,
+                    reason != null ? reason : (quantityChange > 0 ? "Nhập kho" : "Giảm kho"), userId, now));
         }
 
-        inventory.setQuantity(newQuantity);
-        inventory.setLastUpdated(LocalDateTime.now(ZoneOffset.of("+07:00")));
-        product.setStock(newQuantity);
-        inventoryRepository.save(inventory);
-        productRepository.save(product);
-
-        InventoryLog log = new InventoryLog();
-        log.setProduct(product);
-        log.setOldQuantity(oldQuantity);
-        log.setNewQuantity(newQuantity);
-        log.setReason(reason != null ? reason : (quantityChange > 0 ? "Nhập kho" : "Giảm kho"));
-        log.setUserId(userId);
-        log.setTimestamp(LocalDateTime.now(ZoneOffset.of("+07:00")));
-        inventoryLogRepository.save(log);
-
-        return inventory;
+        // Entity đang được quản lý: các UPDATE inventory/products được ghi cùng lượt flush
+        inventoryLedger.append(entries);
+        cacheInvalidator.productsChanged(sorted.keySet());
+
+        return inventories;
+    }
+
+    // Chỉ phát cảnh báo tại thời điểm vượt ngưỡng (xuống dưới minQuantity hoặc về 0), không lặp lại mỗi lần trừ kho
+    public void detectThresholdCrossing(Long productId, int oldQuantity, int newQuantity, int minQuantity) {
+        boolean becameLow = oldQuantity >= minQuantity && newQuantity < minQuantity;
+        boolean becameEmpty = oldQuantity > 0 && newQuantity == 0;
+        if (becameLow || becameEmpty) {
+            lowStockAlerts.publish(productId, newQuantity, minQuantity);
+        }
     }
-}
\ No newline at end of file
+}
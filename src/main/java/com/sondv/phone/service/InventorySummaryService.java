@@ -0,0 +1,231 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.dto.CategoryStockSummaryDTO;
+import com.sondv.phone.repository.InventoryRepository;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bảng tổng hợp tồn kho (còn hàng / sắp hết / hết hàng) giữ trong bộ nhớ, toàn cục và theo danh mục.
+ * <p>
+ * Mỗi thay đổi số lượng chỉ cập nhật bộ đếm khi sản phẩm đổi trạng thái (qua mốc 0 hoặc minQuantity),
+ * nên chi phí là O(1) và dashboard không còn quét cả bảng inventory. Các thay đổi được áp sau khi commit;
+ * lượt đối soát định kỳ dựng lại từ DB để sửa mọi sai lệch (ví dụ callback của hai transaction chạy lệch thứ tự).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class InventorySummaryService {
+
+    private static final int IN = 0;
+    private static final int LOW = 1;
+    private static final int OUT = 2;
+
+    private static final class Item {
+        Long categoryId;
+        int quantity;
+        int minQuantity;
+    }
+
+    private final InventoryRepository inventoryRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.inventory.summary.reconcile-interval:10m}")
+    private Duration reconcileInterval;
+
+    private final Map<Long, Item> items = new HashMap<>();
+    private final long[] totals = new long[3];
+    private final Map<Long, long[]> byCategory = new HashMap<>();
+    private final Map<Long, String> categoryNames = new HashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "inventory-summary");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Counter correctionCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        correctionCounter = meterRegistry.counter("inventory.summary.corrections");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        reconcile();
+        long interval = reconcileInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::reconcile, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Số lượng của sản phẩm đã đổi; áp sau khi transaction hiện tại commit.
+     * Sản phẩm chưa được theo dõi sẽ được bổ sung ở lượt đối soát kế tiếp.
+     */
+    public void quantityChanged(Long productId, int newQuantity) {
+        TransactionUtils.afterCommit(() -> {
+            synchronized (this) {
+                Item item = items.get(productId);
+                if (item == null) {
+                    return;
+                }
+                move(item, item.categoryId, newQuantity, item.minQuantity);
+            }
+        });
+    }
+
+    // Sản phẩm mới hoặc vừa sửa tồn kho trực tiếp
+    public void track(Long productId, Long categoryId, int quantity, int minQuantity) {
+        TransactionUtils.afterCommit(() -> {
+            synchronized (this) {
+                Item item = items.get(productId);
+                if (item == null) {
+                    item = new Item();
+                    item.categoryId = categoryId;
+                    item.quantity = quantity;
+                    item.minQuantity = minQuantity;
+                    items.put(productId, item);
+                    add(categoryId, status(quantity, minQuantity), 1);
+                } else {
+                    move(item, categoryId, quantity, minQuantity);
+                }
+            }
+        });
+    }
+
+    public void untrack(Long productId) {
+        TransactionUtils.afterCommit(() -> {
+            synchronized (this) {
+                Item item = items.remove(productId);
+                if (item != null) {
+                    add(item.categoryId, status(item.quantity, item.minQuantity), -1);
+                }
+            }
+        });
+    }
+
+    public synchronized Map<String, Long> getSummary() {
+        Map<String, Long> summary = new HashMap<>();
+        summary.put("totalProducts", totals[IN] + totals[LOW] + totals[OUT]);
+        summary.put("inStock", totals[IN]);
+        summary.put("lowStock", totals[LOW]);
+        summary.put("outOfStock", totals[OUT]);
+        return summary;
+    }
+
+    public synchronized List<CategoryStockSummaryDTO> getCategoryBreakdown() {
+        List<CategoryStockSummaryDTO> result = new ArrayList<>(byCategory.size());
+        byCategory.forEach((categoryId, c) -> result.add(new CategoryStockSummaryDTO(categoryId,
+                categoryNames.get(categoryId), c[IN] + c[LOW] + c[OUT], c[IN], c[LOW], c[OUT])));
+        result.sort(Comparator.comparing(CategoryStockSummaryDTO::getOutOfStock)
+                .thenComparing(CategoryStockSummaryDTO::getLowStock)
+                .reversed());
+        return result;
+    }
+
+    // Dựng lại từ DB bằng một truy vấn projection rồi thay toàn bộ trạng thái trong bộ nhớ
+    void reconcile() {
+        try {
+            List<Object[]> rows = inventoryRepository.findSummaryRows();
+            Map<Long, Item> fresh = new HashMap<>(rows.size() * 2);
+            Map<Long, String> names = new HashMap<>();
+            for (Object[] row : rows) {
+                Item item = new Item();
+                item.categoryId = (Long) row[1];
+                item.quantity = ((Number) row[3]).intValue();
+                item.minQuantity = ((Number) row[4]).intValue();
+                fresh.put((Long) row[0], item);
+                names.put(item.categoryId, (String) row[2]);
+            }
+
+            int corrections;
+            synchronized (this) {
+                corrections = countDifferences(fresh);
+                items.clear();
+                items.putAll(fresh);
+                categoryNames.clear();
+                categoryNames.putAll(names);
+                Arrays.fill(totals, 0);
+                byCategory.clear();
+                items.values().forEach(item -> add(item.categoryId, status(item.quantity, item.minQuantity), 1));
+            }
+            if (corrections > 0) {
+                correctionCounter.increment(corrections);
+                log.info("Đối soát tổng hợp tồn kho: sửa {} sản phẩm lệch", corrections);
+            }
+        } catch (Exception e) {
+            log.error("Không thể đối soát tổng hợp tồn kho", e);
+        }
+    }
+
+    private int countDifferences(Map<Long, Item> fresh) {
+        int diff = 0;
+        for (Map.Entry<Long, Item> e : fresh.entrySet()) {
+            Item current = items.get(e.getKey());
+            Item expected = e.getValue();
+            if (current == null || !current.categoryId.equals(expected.categoryId)
+                    || status(current.quantity, current.minQuantity) != status(expected.quantity, expected.minQuantity)) {
+                diff++;
+            }
+        }
+        for (Long productId : items.keySet()) {
+            if (!fresh.containsKey(productId)) {
+                diff++;
+            }
+        }
+        return items.isEmpty() ? 0 : diff;
+    }
+
+    private void move(Item item, Long categoryId, int quantity, int minQuantity) {
+        int before = status(item.quantity, item.minQuantity);
+        int after = status(quantity, minQuantity);
+        if (before != after || !item.categoryId.equals(categoryId)) {
+            add(item.categoryId, before, -1);
+            add(categoryId, after, 1);
+        }
+        item.categoryId = categoryId;
+        item.quantity = quantity;
+        item.minQuantity = minQuantity;
+    }
+
+    private void add(Long categoryId, int status, int delta) {
+        totals[status] += delta;
+        long[] counters = byCategory.computeIfAbsent(categoryId, id -> new long[3]);
+        counters[status] += delta;
+        if (counters[IN] + counters[LOW] + counters[OUT] == 0) {
+            byCategory.remove(categoryId);
+        }
+    }
+
+    private static int status(int quantity, int minQuantity) {
+        if (quantity == 0) {
+            return OUT;
+        }
+        return quantity < minQuantity ? LOW : IN;
+    }
+}
@@ -0,0 +1,154 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.Product;
+import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Hàng đợi cảnh báo tồn kho thấp: nhận sự kiện vượt ngưỡng từ {@link InventoryService}, gộp theo sản phẩm,
+ * bỏ trùng trong {@code dedup-window} và gửi một bản tổng hợp mỗi {@code digest-interval}
+ * qua email và kênh WebSocket của admin.
+ * <p>
+ * Luồng checkout chỉ ghi vào một map sau khi commit; mọi I/O (SMTP, WebSocket, tra tên sản phẩm)
+ * chạy trên luồng riêng, nên một đợt flash sale làm cạn hàng trăm SKU chỉ sinh ra một email.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LowStockAlertPipeline {
+
+    public record Alert(Long productId, String productName, int quantity, int minQuantity, LocalDateTime detectedAt) {
+        public boolean outOfStock() {
+            return quantity == 0;
+        }
+    }
+
+    private record Sent(LocalDateTime at, boolean outOfStock) {
+    }
+
+    private final ProductRepository productRepository;
+    private final NotificationService notificationService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.inventory.alert.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.inventory.alert.digest-interval:5m}")
+    private Duration digestInterval;
+
+    @Value("${app.inventory.alert.dedup-window:6h}")
+    private Duration dedupWindow;
+
+    // Sản phẩm chờ gửi ở lượt tổng hợp kế tiếp; cùng sản phẩm chỉ giữ trạng thái mới nhất
+    private final Map<Long, Alert> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Sent> lastSent = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "low-stock-digest");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Counter detectedCounter;
+    private Counter suppressedCounter;
+    private Counter deliveredCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        detectedCounter = meterRegistry.counter("inventory.alert.detected");
+        suppressedCounter = meterRegistry.counter("inventory.alert.suppressed");
+        deliveredCounter = meterRegistry.counter("inventory.alert.delivered");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long interval = digestInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Ghi nhận sản phẩm vừa xuống dưới ngưỡng; chỉ có hiệu lực nếu transaction hiện tại commit.
+     */
+    public void publish(Long productId, int quantity, int minQuantity) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        TransactionUtils.afterCommit(() -> {
+            detectedCounter.increment();
+            pending.put(productId, new Alert(productId, null, quantity, minQuantity, now));
+        });
+    }
+
+    void flush() {
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Alert> batch = new ArrayList<>(pending.size());
+            for (Long productId : new ArrayList<>(pending.keySet())) {
+                Alert alert = pending.remove(productId);
+                if (alert != null) {
+                    batch.add(alert);
+                }
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            lastSent.values().removeIf(sent -> sent.at().isBefore(now.minus(dedupWindow)));
+            List<Alert> due = new ArrayList<>(batch.size());
+            for (Alert alert : batch) {
+                Sent sent = lastSent.get(alert.productId());
+                // Đã báo trong cửa sổ thì bỏ qua, trừ khi chuyển từ sắp hết sang hết hẳn
+                if (sent != null && (sent.outOfStock() || !alert.outOfStock())) {
+                    suppressedCounter.increment();
+                    continue;
+                }
+                due.add(alert);
+            }
+            if (due.isEmpty()) {
+                return;
+            }
+
+            Map<Long, String> names = productRepository.findAllById(
+                            due.stream().map(Alert::productId).toList()).stream()
+                    .collect(Collectors.toMap(Product::getId, Product::getName));
+            List<Alert> digest = due.stream()
+                    .map(a -> new Alert(a.productId(), names.getOrDefault(a.productId(), "ID " + a.productId()),
+                            a.quantity(), a.minQuantity(), a.detectedAt()))
+                    .sorted(Comparator.comparingInt(Alert::quantity).thenComparing(Alert::productId))
+                    .toList();
+
+            notificationService.sendLowStockDigest(digest);
+            digest.forEach(a -> lastSent.put(a.productId(), new Sent(now, a.outOfStock())));
+            deliveredCounter.increment(digest.size());
+        } catch (Exception e) {
+            log.error("Không thể gửi tổng hợp cảnh báo tồn kho", e);
+        }
+    }
+}
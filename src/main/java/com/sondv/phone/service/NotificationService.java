@@ -1,19 +1,31 @@
 package com.sondv.phone.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sondv.phone.config.ChatWebSocketHandler;
 import com.sondv.phone.entity.Product;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @Service
 @RequiredArgsConstructor
 public class NotificationService {
     private final JavaMailSender mailSender;
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final ObjectMapper objectMapper;
     private static final Logger logger = Logger.getLogger(NotificationService.class.getName());
 
+    @Value("${app.inventory.alert.recipients:admin@example.com}")
+    private String[] alertRecipients;
+
     // ✅ Gửi thông báo khi tồn kho thấp
     public void sendLowStockAlert(Product product, int quantity) {
         String message = "⚠️ CẢNH BÁO: Sản phẩm '" + product.getName() + "' chỉ còn " + quantity + " trong kho!";
@@ -26,4 +38,40 @@ public class NotificationService {
         mail.setText(message);
         mailSender.send(mail);
     }
+
+    // ✅ Gửi một bản tổng hợp cho nhiều sản phẩm: một email + một thông báo WebSocket cho admin/staff
+    public void sendLowStockDigest(List<LowStockAlertPipeline.Alert> alerts) {
+        if (alerts == null || alerts.isEmpty()) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder("⚠️ CẢNH BÁO TỒN KHO: ")
+                .append(alerts.size()).append(" sản phẩm vừa xuống dưới ngưỡng\n\n");
+        for (LowStockAlertPipeline.Alert alert : alerts) {
+            text.append(alert.outOfStock() ? "❌ HẾT HÀNG" : "⚠️ Sắp hết")
+                    .append(" - ").append(alert.productName())
+                    .append(" (ID ").append(alert.productId()).append("): còn ")
+                    .append(alert.quantity()).append("/").append(alert.minQuantity()).append('\n');
+        }
+        logger.warning(text.toString());
+
+        try {
+            SimpleMailMessage mail = new SimpleMailMessage();
+            mail.setTo(alertRecipients);
+            mail.setSubject("Cảnh Báo Tồn Kho Thấp (" + alerts.size() + " sản phẩm)");
+            mail.setText(text.toString());
+            mailSender.send(mail);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "❌ Không gửi được email cảnh báo tồn kho: " + e.getMessage(), e);
+        }
+
+        try {
+            Map<String, Object> notification = new LinkedHashMap<>();
+            notification.put("type", "low_stock");
+            notification.put("items", alerts);
+            chatWebSocketHandler.broadcastNotificationToAdminsOrStaff(objectMapper.writeValueAsString(notification));
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "❌ Không gửi được thông báo WebSocket tồn kho: " + e.getMessage(), e);
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package com.sondv.phone.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sondv.phone.entity.Order;
+import com.sondv.phone.entity.OrderDetail;
+import com.sondv.phone.entity.OutboxEvent;
+import com.sondv.phone.repository.CustomerRepository;
+import com.sondv.phone.repository.OrderRepository;
+import com.sondv.phone.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Tác vụ phụ của vòng đời đơn hàng, chạy trên worker outbox:
+ * đơn hoàn thành cộng điểm thành viên và số lượng đã bán của từng sản phẩm (cùng transaction với việc đánh dấu
+ * sự kiện nên chỉ cộng một lần), rồi cập nhật các chỉ mục sản phẩm (danh mục, gợi ý, tìm kiếm) và cache bán chạy sau khi commit.
+ * Sau mỗi lô có thay đổi trạng thái đơn, cache danh sách đơn hàng được xóa một lần.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderEventHandler implements OutboxHandler {
+
+    private static final int LOYALTY_POINTS_PER_ORDER = 1000;
+    private static final String USER_ORDERS_CACHE = "userOrders";
+
+    private final OrderRepository orderRepository;
+    private final CustomerRepository customerRepository;
+    private final ProductRepository productRepository;
+    private final ProductCatalogIndex catalogIndex;
+    private final ProductSuggestTrie suggestTrie;
+    private final ProductSearchIndex searchIndex;
+    private final ProductCacheInvalidator cacheInvalidator;
+    private final CacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public Set<String> types() {
+        return Set.of(OrderEventPublisher.ORDER_PLACED, OrderEventPublisher.ORDER_CONFIRMED,
+                OrderEventPublisher.ORDER_COMPLETED, OrderEventPublisher.ORDER_CANCELLED);
+    }
+
+    @Override
+    public void handle(OutboxEvent event) throws Exception {
+        if (!OrderEventPublisher.ORDER_COMPLETED.equals(event.getType())) {
+            // Các sự kiện còn lại chỉ cần xóa cache sau lô
+            return;
+        }
+        Long orderId = objectMapper.readTree(event.getPayload()).path("orderId").asLong();
+        Order order = orderRepository.findById(orderId).orElse(null);
+        if (order == null) {
+            log.warn("Bỏ qua sự kiện {}: không tìm thấy đơn {}", event.getType(), orderId);
+            return;
+        }
+        customerRepository.addLoyaltyPoints(order.getCustomer().getId(), LOYALTY_POINTS_PER_ORDER);
+        log.info("Cộng {} điểm cho khách hàng ID {} (đơn {})",
+                LOYALTY_POINTS_PER_ORDER, order.getCustomer().getId(), orderId);
+
+        // Theo thứ tự id để hai đơn cùng sản phẩm không khóa chéo nhau
+        Map<Long, Integer> sold = new TreeMap<>();
+        for (OrderDetail detail : order.getOrderDetails()) {
+            sold.merge(detail.getProduct().getId(), detail.getQuantity(), Integer::sum);
+        }
+        sold.forEach(productRepository::addSoldQuantity);
+        catalogIndex.soldQuantitiesChanged(sold);
+        suggestTrie.soldQuantitiesChanged(sold);
+        searchIndex.soldQuantitiesChanged(sold);
+        cacheInvalidator.productsChanged(sold.keySet());
+        cacheInvalidator.membershipChanged(ProductCacheInvalidator.BEST_SELLING);
+    }
+
+    @Override
+    public void afterBatch() {
+        Cache cache = cacheManager.getCache(USER_ORDERS_CACHE);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
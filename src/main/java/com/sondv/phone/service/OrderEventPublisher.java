@@ -0,0 +1,35 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.OutboxEvent;
+import com.sondv.phone.repository.OutboxEventRepository;
+import com.sondv.phone.util.TransactionUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ghi sự kiện vòng đời đơn hàng vào outbox trong transaction hiện tại; các tác vụ phụ (thông báo, email,
+ * cộng điểm, xóa cache) được {@link OrderEventHandler} chạy sau khi commit, không nằm trên đường checkout.
+ */
+@Service
+@RequiredArgsConstructor
+public class OrderEventPublisher {
+
+    public static final String ORDER_PLACED = "ORDER_PLACED";
+    public static final String ORDER_CONFIRMED = "ORDER_CONFIRMED";
+    public static final String ORDER_COMPLETED = "ORDER_COMPLETED";
+    public static final String ORDER_CANCELLED = "ORDER_CANCELLED";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxDispatcher outboxDispatcher;
+
+    public void publish(String type, Long orderId) {
+        OutboxEvent event = new OutboxEvent();
+        event.setType(type);
+        event.setPayload("{\"orderId\":" + orderId + "}");
+        event.setCreatedAt(LocalDateTime.now());
+        outboxEventRepository.save(event);
+        TransactionUtils.afterCommit(outboxDispatcher::wake);
+    }
+}
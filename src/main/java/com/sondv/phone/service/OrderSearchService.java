@@ -0,0 +1,247 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.dto.OrderSearchCriteria;
+import com.sondv.phone.entity.Order;
+import com.sondv.phone.entity.OrderStatus;
+import com.sondv.phone.repository.OrderRepository;
+import com.sondv.phone.util.TextNormalizer;
+import com.sondv.phone.util.TransactionUtils;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Truy vấn tìm kiếm đơn hàng cho trang quản trị.
+ * <p>
+ * Mọi bộ lọc đều rơi vào cột có index: tên khách (đã bỏ dấu, tách từng từ vào {@code order_name_tokens})
+ * và số điện thoại được ghi phi chuẩn hóa lúc tạo đơn và lọc theo tiền tố, mã đơn so khớp chính xác, nên
+ * không còn join customers/users hay LIKE '%...%' quét cả bảng. Mỗi từ của tên cần tìm phải là tiền tố của
+ * một từ bất kỳ trong tên khách ("an" khớp "Nguyễn Văn An"). Trang kế tiếp dùng keyset (createdAt, id) nên chi phí
+ * mỗi trang không phụ thuộc độ sâu. Đơn cũ chưa có cột tìm kiếm được điền dần ở nền sau khi khởi động.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderSearchService {
+
+    private static final String USER_ORDERS_CACHE = "userOrders";
+
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheManager cacheManager;
+
+    @Value("${app.order.search.backfill-batch-size:1000}")
+    private int backfillBatchSize;
+
+    private final ExecutorService backfillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "order-search-backfill");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        backfillExecutor.submit(this::backfill);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+    }
+
+    // Gán cột tìm kiếm cho đơn mới, trước khi lưu
+    public void index(Order order, String fullName, String phone) {
+        order.setCustomerNameSearch(TextNormalizer.fold(fullName));
+        order.setCustomerNameTokens(TextNormalizer.searchTokens(fullName));
+        order.setCustomerPhone(normalizePhone(phone));
+    }
+
+    // Khách đổi tên: cập nhật lại cột tìm kiếm trên các đơn của họ; kết quả tìm theo tên cũ đã cache bị xóa sau commit
+    @Transactional
+    public void customerRenamed(Long userId, String fullName) {
+        int updated = orderRepository.updateCustomerNameSearch(userId, TextNormalizer.fold(fullName));
+        orderRepository.replaceNameTokens(userId, TextNormalizer.searchTokens(fullName));
+        log.debug("Cập nhật tên tìm kiếm trên {} đơn của user {}", updated, userId);
+        TransactionUtils.afterCommit(() -> {
+            Cache cache = cacheManager.getCache(USER_ORDERS_CACHE);
+            if (cache != null) {
+                cache.clear();
+            }
+        });
+    }
+
+    /**
+     * Điều kiện lọc cho một lần tìm kiếm.
+     *
+     * @param customerId chỉ lấy đơn của khách này (người dùng không phải admin/staff); null = tất cả
+     */
+    public Specification<Order> specification(OrderSearchCriteria criteria, Long customerId) {
+        OrderStatus status = hasText(criteria.getStatus()) ? OrderStatus.valueOf(criteria.getStatus().trim()) : null;
+        List<String> namePrefixes = hasText(criteria.getCustomerName())
+                ? TextNormalizer.searchTokens(criteria.getCustomerName()).stream().map(t -> escapeLike(t) + "%").toList()
+                : List.of();
+        String phone = hasText(criteria.getPhone()) ? normalizePhone(criteria.getPhone()) : null;
+        String phonePrefix = phone != null ? escapeLike(phone) + "%" : null;
+        Long orderId = hasText(criteria.getOrderId()) ? parseOrderId(criteria.getOrderId()) : null;
+        boolean impossible = hasText(criteria.getOrderId()) && orderId == null
+                || hasText(criteria.getPhone()) && phone == null
+                || hasText(criteria.getCustomerName()) && namePrefixes.isEmpty();
+
+        return (root, query, cb) -> {
+            if (impossible) {
+                return cb.disjunction();
+            }
+            List<Predicate> predicates = new ArrayList<>();
+            if (customerId != null) {
+                predicates.add(cb.equal(root.get("customer").get("id"), customerId));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(root.get("status"), status));
+            }
+            for (String namePrefix : namePrefixes) {
+                Subquery<Long> matching = query.subquery(Long.class);
+                Root<Order> tokenOwner = matching.from(Order.class);
+                Join<Order, String> token = tokenOwner.join("customerNameTokens");
+                matching.select(tokenOwner.get("id")).where(cb.like(token, namePrefix, '\\'));
+                predicates.add(root.get("id").in(matching));
+            }
+            if (phonePrefix != null) {
+                predicates.add(cb.like(root.get("customerPhone"), phonePrefix, '\\'));
+            }
+            if (orderId != null) {
+                predicates.add(cb.equal(root.get("id"), orderId));
+            }
+            if (criteria.getStartDate() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createdAt"), criteria.getStartDate().atStartOfDay()));
+            }
+            if (criteria.getEndDate() != null) {
+                predicates.add(cb.lessThan(root.get("createdAt"), criteria.getEndDate().plusDays(1).atStartOfDay()));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Lấy một trang theo keyset (createdAt, id). Trả về tối đa size + 1 đơn để người gọi biết còn trang sau.
+     */
+    public List<Order> findPage(OrderSearchCriteria criteria, Long customerId, boolean ascending,
+                                String cursor, int size) {
+        Object[] after = decodeCursor(cursor, ascending);
+        Specification<Order> spec = specification(criteria, customerId);
+        if (after != null) {
+            LocalDateTime afterCreatedAt = (LocalDateTime) after[0];
+            Long afterId = (Long) after[1];
+            spec = spec.and((root, query, cb) -> ascending
+                    ? cb.or(cb.greaterThan(root.get("createdAt"), afterCreatedAt),
+                    cb.and(cb.equal(root.get("createdAt"), afterCreatedAt), cb.greaterThan(root.get("id"), afterId)))
+                    : cb.or(cb.lessThan(root.get("createdAt"), afterCreatedAt),
+                    cb.and(cb.equal(root.get("createdAt"), afterCreatedAt), cb.lessThan(root.get("id"), afterId))));
+        }
+        Sort.Direction direction = ascending ? Sort.Direction.ASC : Sort.Direction.DESC;
+        return orderRepository.findTop(spec, Sort.by(direction, "createdAt").and(Sort.by(direction, "id")), size + 1);
+    }
+
+    public String encodeCursor(Order last, boolean ascending) {
+        String raw = (ascending ? "asc" : "desc") + "|" + last.getCreatedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Trả về [createdAt, id] hoặc null nếu không có cursor; cursor phải được tạo cho đúng chiều sắp xếp
+    private Object[] decodeCursor(String cursor, boolean ascending) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !parts[0].equals(ascending ? "asc" : "desc")) {
+                throw new IllegalArgumentException("Cursor không hợp lệ");
+            }
+            return new Object[]{LocalDateTime.parse(parts[1]), Long.valueOf(parts[2])};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ", e);
+        }
+    }
+
+    // Điền cột tìm kiếm cho các đơn tạo trước khi có cột này, mỗi lô một transaction
+    private void backfill() {
+        try {
+            int total = 0;
+            List<Object[]> rows;
+            do {
+                rows = orderRepository.findMissingSearchColumns(PageRequest.of(0, backfillBatchSize));
+                if (rows.isEmpty()) {
+                    break;
+                }
+                List<Object[]> updates = new ArrayList<>(rows.size());
+                for (Object[] row : rows) {
+                    updates.add(new Object[]{row[0], TextNormalizer.fold((String) row[1]), normalizePhone((String) row[2])});
+                }
+                transactionTemplate.executeWithoutResult(status -> orderRepository.updateSearchColumns(updates));
+                total += rows.size();
+            } while (rows.size() >= backfillBatchSize && !Thread.currentThread().isInterrupted());
+            if (total > 0) {
+                log.info("Đã điền cột tìm kiếm cho {} đơn hàng cũ", total);
+            }
+        } catch (Exception e) {
+            log.error("Không thể điền cột tìm kiếm đơn hàng", e);
+        }
+    }
+
+    /**
+     * Dạng lưu và tìm của số điện thoại: bỏ khoảng trắng, dấu chấm, gạch, ngoặc; giữ '+' ở đầu số quốc tế.
+     * Số dài hơn cột ({@value Order#CUSTOMER_PHONE_LENGTH} ký tự) bị cắt, vẫn tìm được theo tiền tố.
+     */
+    static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        String trimmed = phone.trim();
+        String digits = trimmed.replaceAll("\\D", "");
+        String normalized = trimmed.startsWith("+") ? "+" + digits : digits;
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        return normalized.length() > Order.CUSTOMER_PHONE_LENGTH
+                ? normalized.substring(0, Order.CUSTOMER_PHONE_LENGTH) : normalized;
+    }
+
+    private static Long parseOrderId(String orderId) {
+        try {
+            return Long.valueOf(orderId.trim().replaceFirst("^#", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+}
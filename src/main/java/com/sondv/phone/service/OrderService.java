@@ -3,7 +3,10 @@ package com.sondv.phone.service;
 import com.sondv.phone.dto.*;
 import com.sondv.phone.entity.*;
 import com.sondv.phone.repository.*;
-import jakarta.persistence.criteria.Predicate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,17 +15,20 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
-import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -31,14 +37,26 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final CustomerRepository customerRepository;
     private final DiscountRepository discountRepository;
+    private final DiscountRedemptionService discountRedemptionService;
     private final ProductRepository productRepository;
     private final OrderDetailRepository orderDetailRepository;
-    private final InventoryService inventoryService;
+    private final StockReservationService stockReservationService;
+    private final StockHoldService stockHoldService;
     private final ShippingService shippingService;
     private final PaymentRepository paymentRepository;
+    private final OrderSearchService orderSearchService;
+    private final OrderEventPublisher orderEventPublisher;
+    private final ProductPricingService pricingService;
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     private static final Logger logger = LoggerFactory.getLogger(OrderService.class);
 
+    // Số đơn xử lý mỗi lượt khi stream lịch sử: nạp chi tiết/thanh toán theo lô rồi giải phóng persistence context
+    private static final int HISTORY_CHUNK_SIZE = 100;
+
     @Transactional
     public Order createOrder(User user, OrderRequest orderRequest) {
         if (orderRequest.getProductIds().size() != orderRequest.getQuantities().size()) {
@@ -61,35 +79,34 @@ public class OrderService {
         BigDecimal totalPriceBeforeDiscount = BigDecimal.ZERO;
         OffsetDateTime now = OffsetDateTime.now();
 
+        // Gộp số lượng theo sản phẩm; tồn kho chỉ được trừ một lần ngay trước khi lưu đơn để giữ khóa dòng ngắn nhất
+        Map<Long, Integer> reservedQuantities = new LinkedHashMap<>();
         for (int i = 0; i < orderRequest.getProductIds().size(); i++) {
-            Long productId = orderRequest.getProductIds().get(i);
             int quantity = orderRequest.getQuantities().get(i);
-
-            Inventory inventory = inventoryService.getInventoryByProduct(productId)
-                    .orElseThrow(() -> new RuntimeException("Không tìm thấy tồn kho cho sản phẩm ID: " + productId));
-
-            if (inventory.getQuantity() < quantity) {
-                throw new RuntimeException("Sản phẩm '" + inventory.getProduct().getName() + "' không đủ hàng.");
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Số lượng sản phẩm phải lớn hơn 0.");
             }
+            reservedQuantities.merge(orderRequest.getProductIds().get(i), quantity, Integer::sum);
+        }
+        Map<Long, Product> products = productRepository.findAllById(reservedQuantities.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
 
-            inventoryService.adjustInventory(productId, -quantity, "Tạo đơn hàng", user.getId());
-
-            Product product = inventory.getProduct();
-
-            if (product.getDiscountedPrice() != null &&
-                    product.getDiscountStartDate() != null &&
-                    product.getDiscountEndDate() != null) {
+        for (int i = 0; i < orderRequest.getProductIds().size(); i++) {
+            Long productId = orderRequest.getProductIds().get(i);
+            int quantity = orderRequest.getQuantities().get(i);
 
-                OffsetDateTime start = product.getDiscountStartDate().atOffset(ZoneOffset.UTC);
-                OffsetDateTime end = product.getDiscountEndDate().atOffset(ZoneOffset.UTC);
+            Product product = products.get(productId);
+            if (product == null) {
+                throw new RuntimeException("Không tìm thấy sản phẩm ID: " + productId);
+            }
 
-                boolean isDiscountActive = !now.isBefore(start) && !now.isAfter(end);
-                if (isDiscountActive && orderRequest.getDiscountCode() != null) {
-                    throw new IllegalArgumentException("Sản phẩm '" + product.getName() + "' đang khuyến mãi, không thể áp mã.");
-                }
+            // Cùng giá hiệu lực với trang sản phẩm: đang khuyến mãi thì tính giá giảm và không cho áp thêm mã
+            ProductPricingService.Quote quote = pricingService.quote(product);
+            if (quote.onSale() && orderRequest.getDiscountCode() != null) {
+                throw new IllegalArgumentException("Sản phẩm '" + product.getName() + "' đang khuyến mãi, không thể áp mã.");
             }
 
-            BigDecimal price = product.getSellingPrice();
+            BigDecimal price = quote.effectivePrice();
             OrderDetail detail = new OrderDetail();
             detail.setOrder(order);
             detail.setProduct(product);
@@ -129,8 +146,8 @@ public class OrderService {
                     .multiply(BigDecimal.valueOf(appliedDiscount.getDiscountPercentage()))
                     .divide(BigDecimal.valueOf(100));
 
-            appliedDiscount.setUsed(true);
-            discountRepository.save(appliedDiscount);
+            // Giành lượt dùng bằng UPDATE có điều kiện/bộ đếm nguyên tử thay vì đọc-rồi-ghi cờ used
+            discountRedemptionService.redeem(appliedDiscount);
         }
 
         // Shipping
@@ -139,6 +156,7 @@ public class OrderService {
         shippingInfo.setAddress(orderRequest.getAddress());
         shippingInfo.setPhoneNumber(orderRequest.getPhoneNumber());
         shippingInfo.setCarrier(orderRequest.getCarrier());
+        orderSearchService.index(order, user.getFullName(), orderRequest.getPhoneNumber());
 
         ShippingEstimateDTO estimate = shippingService.estimateShipping(
                 orderRequest.getAddress(),
@@ -166,6 +184,7 @@ public class OrderService {
             throw new IllegalArgumentException("Phương thức thanh toán không hợp lệ: " + orderRequest.getPaymentMethod());
         }
 
+        stockReservationService.reserve(reservedQuantities, "Tạo đơn hàng", user.getId());
         order = orderRepository.save(order);
 
         Payment payment = new Payment();
@@ -173,22 +192,12 @@ public class OrderService {
         payment.setPaymentMethod(paymentMethod);
         payment.setStatus(PaymentStatus.PENDING);
         paymentRepository.save(payment);
+        stockHoldService.hold(order.getId(), order.getCreatedAt(), paymentMethod);
+        orderEventPublisher.publish(OrderEventPublisher.ORDER_PLACED, order.getId());
 
         return order;
     }
 
-    private BigDecimal resolveCurrentPrice(Product product) {
-        OffsetDateTime now = OffsetDateTime.now();
-
-        boolean inDiscountPeriod = product.getDiscountedPrice() != null
-                && product.getDiscountStartDate() != null
-                && product.getDiscountEndDate() != null
-                && now.isAfter(product.getDiscountStartDate().atOffset(now.getOffset()))
-                && now.isBefore(product.getDiscountEndDate().atOffset(now.getOffset()));
-
-        return inDiscountPeriod ? product.getDiscountedPrice() : product.getSellingPrice();
-    }
-
     @Transactional
     public Order cancelOrder(Long orderId, User user) {
         Order order = orderRepository.findById(orderId)
@@ -203,6 +212,12 @@ public class OrderService {
             throw new RuntimeException("Đơn hàng này không thể hủy ở trạng thái hiện tại!");
         }
 
+        return cancel(order, user);
+    }
+
+    // Hủy đơn: trả lại hàng đã giữ lúc đặt rồi mới bỏ hẹn giờ giữ hàng, để hàng không bị mất khi không còn ai hoàn trả
+    private Order cancel(Order order, User user) {
+        Long orderId = order.getId();
         order.setStatus(OrderStatus.CANCELLED);
         paymentRepository.findByOrderId(orderId).ifPresent(payment -> {
             payment.setStatus(PaymentStatus.CANCELLED);
@@ -210,14 +225,13 @@ public class OrderService {
         });
         orderRepository.save(order);
 
+        Map<Long, Integer> releasedQuantities = new LinkedHashMap<>();
         for (OrderDetail detail : order.getOrderDetails()) {
-            inventoryService.adjustInventory(
-                    detail.getProduct().getId(),
-                    detail.getQuantity(),
-                    "Hủy đơn hàng",
-                    user.getId()
-            );
+            releasedQuantities.merge(detail.getProduct().getId(), detail.getQuantity(), Integer::sum);
         }
+        stockReservationService.release(releasedQuantities, "Hủy đơn hàng", user.getId());
+        stockHoldService.discard(orderId);
+        orderEventPublisher.publish(OrderEventPublisher.ORDER_CANCELLED, orderId);
 
         return order;
     }
@@ -227,21 +241,14 @@ public class OrderService {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng!"));
 
+        if (status == OrderStatus.CANCELLED) {
+            return order.getStatus() == OrderStatus.CANCELLED ? order : cancel(order, user);
+        }
+
         if (status == OrderStatus.COMPLETED) {
-            for (OrderDetail detail : order.getOrderDetails()) {
-                inventoryService.adjustInventory(
-                        detail.getProduct().getId(),
-                        -detail.getQuantity(),
-                        "Hoàn thành đơn hàng",
-                        user.getId()
-                );
-            }
-            Customer customer = order.getCustomer();
-            int currentPoints = customer.getLoyaltyPoints() != null ? customer.getLoyaltyPoints() : 0;
-            customer.setLoyaltyPoints(currentPoints + 1000);
-            customerRepository.save(customer);
-            logger.info("Cộng 1000 điểm cho khách hàng {} (ID: {}). Tổng điểm hiện tại: {}",
-                    customer.getUser().getFullName(), customer.getId(), customer.getLoyaltyPoints());
+            // Tồn kho đã bị trừ lúc đặt hàng (StockReservationService), hoàn tất đơn không trừ lại lần nữa.
+            // Điểm thành viên được cộng bởi worker outbox
+            orderEventPublisher.publish(OrderEventPublisher.ORDER_COMPLETED, orderId);
 
             paymentRepository.findByOrderId(orderId).ifPresent(payment -> {
                 if (payment.getPaymentMethod() == PaymentMethod.COD) {
@@ -251,80 +258,128 @@ public class OrderService {
             });
         }
 
+        if (status == OrderStatus.CONFIRMED && order.getStatus() == OrderStatus.PENDING) {
+            orderEventPublisher.publish(OrderEventPublisher.ORDER_CONFIRMED, orderId);
+        }
         order.setStatus(status);
+        if (status != OrderStatus.PENDING) {
+            stockHoldService.discard(orderId);
+        }
         return orderRepository.save(order);
     }
 
     @Transactional
     public Order confirmOrder(Long orderId, User user) {
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng!"));
-        if (order.getStatus() != OrderStatus.PENDING) {
+        // UPDATE có điều kiện thay vì ghi đè cả entity: không thể đè lên CANCELLED do lượt hết hạn giữ hàng vừa ghi
+        if (orderRepository.confirmIfPending(orderId) == 0) {
+            if (!orderRepository.existsById(orderId)) {
+                throw new RuntimeException("Không tìm thấy đơn hàng!");
+            }
             throw new IllegalStateException("Đơn hàng không ở trạng thái PENDING!");
         }
-        order.setStatus(OrderStatus.CONFIRMED);
-        return orderRepository.save(order);
+        // Thanh toán/xác nhận xong: hàng đã giữ trở thành khoản trừ vĩnh viễn
+        stockHoldService.convert(orderId);
+        orderEventPublisher.publish(OrderEventPublisher.ORDER_CONFIRMED, orderId);
+        return orderRepository.findById(orderId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng!"));
     }
 
-    @Cacheable(value = "userOrders", key = "#user.id + '-' + #page + '-' + #size + '-' + #sortField + '-' + #sortDirection + '-' + #status + '-' + #customerName + '-' + #orderId")
+    @Cacheable(value = "userOrders", key = "#user.id + '-' + #page + '-' + #size + '-' + #sortField + '-' + #sortDirection + '-' + #criteria")
     public Page<OrderResponse> getPaginatedOrders(User user,
                                                   int page,
                                                   int size,
                                                   String sortField,
                                                   String sortDirection,
-                                                  String status,
-                                                  String customerName,
-                                                  String orderId,
-                                                  LocalDate startDate,
-                                                  LocalDate endDate) {
+                                                  OrderSearchCriteria criteria) {
 
         Sort.Direction direction = Sort.Direction.fromString(sortDirection.toUpperCase());
         Pageable pageable = PageRequest.of(page - 1, size, Sort.by(direction, sortField));
 
-        Specification<Order> spec = (root, query, cb) -> {
-            Predicate predicate = cb.conjunction();
-
-            boolean isAdmin = user.getRoles().stream().anyMatch(r -> r == RoleName.ADMIN || r == RoleName.STAFF);
-            if (!isAdmin) {
-                Customer customer = customerRepository.findByUserId(user.getId())
-                        .orElseThrow(() -> new RuntimeException("Không tìm thấy thông tin khách hàng!"));
-                predicate = cb.and(predicate, cb.equal(root.get("customer").get("id"), customer.getId()));
-            }
-
-            if (status != null && !status.isBlank()) {
-                predicate = cb.and(predicate, cb.equal(root.get("status"), OrderStatus.valueOf(status)));
-            }
+        Page<Order> ordersPage = orderRepository.findAll(
+                orderSearchService.specification(criteria, resolveCustomerScope(user)), pageable);
+        Map<Long, Payment> payments = findPayments(ordersPage.getContent());
+        return ordersPage.map(order -> mapToOrderResponse(order, payments.get(order.getId())));
+    }
 
-            if (customerName != null && !customerName.isBlank()) {
-                predicate = cb.and(predicate,
-                        cb.like(cb.lower(root.get("customer").get("user").get("fullName")),
-                                "%" + customerName.toLowerCase() + "%"));
-            }
+    // Phân trang keyset theo (createdAt, id), không đếm tổng: dùng cho trang quản trị với số đơn rất lớn
+    @Cacheable(value = "userOrders", key = "'search-' + #user.id + '-' + #direction + '-' + #cursor + '-' + #size + '-' + #criteria")
+    public OrderCursorPageDTO searchOrders(User user, OrderSearchCriteria criteria, String direction, String cursor, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Kích thước trang phải lớn hơn 0");
+        }
+        boolean ascending = "asc".equalsIgnoreCase(direction);
+
+        List<Order> orders = orderSearchService.findPage(criteria, resolveCustomerScope(user), ascending, cursor, size);
+        boolean hasNext = orders.size() > size;
+        List<Order> pageContent = hasNext ? orders.subList(0, size) : orders;
+        String nextCursor = hasNext ? orderSearchService.encodeCursor(pageContent.get(pageContent.size() - 1), ascending) : null;
+
+        Map<Long, Payment> payments = findPayments(pageContent);
+        return OrderCursorPageDTO.builder()
+                .content(pageContent.stream().map(order -> mapToOrderResponse(order, payments.get(order.getId()))).toList())
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .size(size)
+                .build();
+    }
 
-            if (orderId != null && !orderId.isBlank()) {
-                predicate = cb.and(predicate,
-                        cb.like(cb.function("STR", String.class, root.get("id")),
-                                "%" + orderId + "%"));
+    /**
+     * Ghi lịch sử đơn hàng ra {@code out} dạng NDJSON (mỗi dòng một {@link OrderResponse}).
+     * Đơn được đọc theo từng lô {@value #HISTORY_CHUNK_SIZE} đơn, lô sau tiếp tục từ (createdAt, id) của đơn cuối
+     * lô trước; sau mỗi lô persistence context được xóa, nên bộ nhớ không tăng theo số đơn.
+     *
+     * @param customerId chỉ lấy đơn của khách này; null = tất cả (admin/staff)
+     */
+    @Transactional(readOnly = true)
+    public void writeOrderHistory(Long customerId, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(OrderResponse.class);
+        LocalDateTime afterCreatedAt = null;
+        Long afterId = null;
+        while (true) {
+            List<Order> batch = orderRepository.findHistoryBatch(customerId, afterCreatedAt, afterId, HISTORY_CHUNK_SIZE);
+            if (batch.isEmpty()) {
+                return;
             }
-
-            if (startDate != null) {
-                predicate = cb.and(predicate, cb.greaterThanOrEqualTo(root.get("createdAt"),
-                        startDate.atStartOfDay()));
+            Map<Long, Payment> payments = findPayments(batch);
+            for (Order order : batch) {
+                out.write(writer.writeValueAsBytes(mapToOrderResponse(order, payments.get(order.getId()))));
+                out.write('\n');
             }
-
-            if (endDate != null) {
-                predicate = cb.and(predicate, cb.lessThanOrEqualTo(root.get("createdAt"),
-                        endDate.plusDays(1).atStartOfDay()));
+            out.flush();
+            if (batch.size() < HISTORY_CHUNK_SIZE) {
+                return;
             }
+            Order last = batch.get(batch.size() - 1);
+            afterCreatedAt = last.getCreatedAt();
+            afterId = last.getId();
+            entityManager.clear();
+        }
+    }
 
-            return predicate;
-        };
+    // Admin/staff xem mọi đơn; khách hàng chỉ xem đơn của mình (tra một lần cho mỗi truy vấn)
+    private Long resolveCustomerScope(User user) {
+        boolean isAdmin = user.getRoles().stream().anyMatch(r -> r == RoleName.ADMIN || r == RoleName.STAFF);
+        if (isAdmin) {
+            return null;
+        }
+        return customerRepository.findByUserId(user.getId())
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy thông tin khách hàng!"))
+                .getId();
+    }
 
-        Page<Order> ordersPage = orderRepository.findAll(spec, pageable);
-        return ordersPage.map(this::mapToOrderResponse);
+    private Map<Long, Payment> findPayments(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return Map.of();
+        }
+        return paymentRepository.findByOrderIdIn(orders.stream().map(Order::getId).toList()).stream()
+                .collect(Collectors.toMap(p -> p.getOrder().getId(), Function.identity(), (a, b) -> a));
     }
 
     public OrderResponse mapToOrderResponse(Order order) {
+        return mapToOrderResponse(order, paymentRepository.findByOrderId(order.getId()).orElse(null));
+    }
+
+    private OrderResponse mapToOrderResponse(Order order, Payment payment) {
         OrderResponse dto = new OrderResponse();
         dto.setId(order.getId());
         dto.setStatus(order.getStatus().name());
@@ -332,7 +387,6 @@ public class OrderService {
         dto.setTotalPrice(order.getTotalPrice());
         dto.setShippingFee(order.getShippingFee());
 
-        Payment payment = paymentRepository.findByOrderId(order.getId()).orElse(null);
         if (payment != null) {
             dto.setPaymentMethod(payment.getPaymentMethod().name());
             dto.setPaymentStatus(payment.getStatus().name());
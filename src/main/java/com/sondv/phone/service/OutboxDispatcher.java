@@ -0,0 +1,244 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.OutboxEvent;
+import com.sondv.phone.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nhóm worker xử lý các sự kiện outbox được ghi cùng transaction nghiệp vụ (đặt hàng, xác nhận, hoàn thành...).
+ * <p>
+ * Mỗi worker giành một lô bằng SELECT ... FOR UPDATE SKIP LOCKED trong một transaction ngắn, chỉ để dời
+ * {@code availableAt} của lô đi {@code claim-lease} (worker khác bỏ qua các dòng này cho tới khi hết hạn giành).
+ * Sau khi transaction giành commit, từng sự kiện được xử lý trong transaction riêng (REQUIRES_NEW): {@link OutboxHandler}
+ * và việc đánh dấu đã xử lý commit cùng nhau, một sự kiện lỗi chỉ rollback chính nó. Worker được đánh thức ngay sau khi
+ * transaction phát sự kiện commit, ngoài ra quét định kỳ {@code poll-interval} để nhặt sự kiện của node khác hoặc sự kiện
+ * đến hạn thử lại. Sự kiện lỗi được thử lại với thời gian chờ tăng dần, quá {@code max-attempts} thì bỏ qua và ghi log.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxDispatcher {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final List<OutboxHandler> handlers;
+    private final TransactionTemplate transactionTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.outbox.workers:2}")
+    private int workers;
+
+    @Value("${app.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.outbox.poll-interval:2s}")
+    private Duration pollInterval;
+
+    @Value("${app.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.outbox.retry-backoff:10s}")
+    private Duration retryBackoff;
+
+    // Thời gian một lô thuộc về worker đã giành; worker chết giữa chừng thì lô được nhặt lại sau mốc này
+    @Value("${app.outbox.claim-lease:1m}")
+    private Duration claimLease;
+
+    private final Map<String, OutboxHandler> handlersByType = new HashMap<>();
+    private final Semaphore wakeups = new Semaphore(0);
+    private ExecutorService pool;
+    private TransactionTemplate eventTransaction;
+    private volatile boolean running;
+
+    // Bọc checked exception của handler để đi qua TransactionTemplate
+    private static final class HandlerException extends RuntimeException {
+        HandlerException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    private Counter processedCounter;
+    private Counter failedCounter;
+    private Counter abandonedCounter;
+
+    @PostConstruct
+    void init() {
+        for (OutboxHandler handler : handlers) {
+            for (String type : handler.types()) {
+                if (handlersByType.putIfAbsent(type, handler) != null) {
+                    throw new IllegalStateException("Trùng handler cho sự kiện outbox " + type);
+                }
+            }
+        }
+        eventTransaction = new TransactionTemplate(transactionManager);
+        eventTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        processedCounter = meterRegistry.counter("outbox.events", "result", "processed");
+        failedCounter = meterRegistry.counter("outbox.events", "result", "failed");
+        abandonedCounter = meterRegistry.counter("outbox.events", "result", "abandoned");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (handlersByType.isEmpty()) {
+            return;
+        }
+        AtomicInteger seq = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "outbox-worker-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            pool.submit(this::runWorker);
+        }
+        log.info("Khởi động {} worker outbox cho {}", workers, handlersByType.keySet());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (pool != null) {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Có sự kiện mới vừa commit: đánh thức một worker thay vì chờ lượt quét kế tiếp
+    public void wake() {
+        if (wakeups.availablePermits() < workers) {
+            wakeups.release();
+        }
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                if (drainOnce() < batchSize) {
+                    wakeups.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Lỗi khi xử lý lô outbox", e);
+                try {
+                    Thread.sleep(pollInterval.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int drainOnce() {
+        // id -> loại sự kiện của lô vừa giành; khóa dòng được nhả ngay khi transaction giành commit
+        Map<Long, String> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime leaseUntil = now.plus(claimLease);
+            Map<Long, String> batch = new LinkedHashMap<>();
+            for (OutboxEvent event : outboxEventRepository.claimBatch(handlersByType.keySet(), now,
+                    PageRequest.of(0, batchSize))) {
+                event.setAvailableAt(leaseUntil);
+                batch.put(event.getId(), event.getType());
+            }
+            return batch;
+        });
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+
+        Set<OutboxHandler> touched = new HashSet<>();
+        claimed.forEach((id, type) -> {
+            OutboxHandler handler = handlersByType.get(type);
+            if (process(id, handler)) {
+                touched.add(handler);
+            }
+        });
+        for (OutboxHandler handler : touched) {
+            try {
+                handler.afterBatch();
+            } catch (Exception e) {
+                log.warn("Lỗi afterBatch của {}: {}", handler.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+        return claimed.size();
+    }
+
+    // Một sự kiện, một transaction: lỗi của handler chỉ rollback sự kiện này, rồi ghi lần thử lỗi ở transaction khác
+    private boolean process(Long id, OutboxHandler handler) {
+        try {
+            Boolean handled = eventTransaction.execute(status -> {
+                OutboxEvent event = outboxEventRepository.findById(id).orElse(null);
+                if (event == null || event.getProcessedAt() != null) {
+                    return false;
+                }
+                try {
+                    handler.handle(event);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new HandlerException(e);
+                }
+                event.setProcessedAt(LocalDateTime.now());
+                return true;
+            });
+            if (Boolean.TRUE.equals(handled)) {
+                processedCounter.increment();
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            Exception cause = e instanceof HandlerException ? (Exception) e.getCause() : e;
+            eventTransaction.executeWithoutResult(status -> outboxEventRepository.findById(id)
+                    .ifPresent(event -> fail(event, LocalDateTime.now(), cause)));
+            return false;
+        }
+    }
+
+    private void fail(OutboxEvent event, LocalDateTime now, Exception e) {
+        int attempts = event.getAttempts() + 1;
+        event.setAttempts(attempts);
+        if (attempts >= maxAttempts) {
+            event.setProcessedAt(now);
+            abandonedCounter.increment();
+            log.error("Bỏ qua sự kiện outbox {} (id={}) sau {} lần thất bại", event.getType(), event.getId(), attempts, e);
+            return;
+        }
+        event.setAvailableAt(now.plus(retryBackoff.multipliedBy(1L << (attempts - 1))));
+        failedCounter.increment();
+        log.warn("Xử lý sự kiện outbox {} (id={}) thất bại lần {}: {}", event.getType(), event.getId(), attempts, e.getMessage());
+    }
+}
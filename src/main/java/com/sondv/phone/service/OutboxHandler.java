@@ -0,0 +1,23 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.OutboxEvent;
+
+import java.util.Set;
+
+/**
+ * Xử lý một loại sự kiện outbox cho {@link OutboxDispatcher}.
+ * {@link #handle} chạy trong transaction riêng của sự kiện, cùng với việc đánh dấu đã xử lý: ghi DB trong đó được
+ * commit đúng một lần. Tác động bên ngoài (email, WebSocket) đăng ký qua
+ * {@link com.sondv.phone.util.TransactionUtils#afterCommit} để chỉ chạy sau khi sự kiện đã commit, không giữ
+ * kết nối DB trong lúc gọi ra ngoài và không lặp lại khi transaction rollback.
+ */
+public interface OutboxHandler {
+
+    Set<String> types();
+
+    void handle(OutboxEvent event) throws Exception;
+
+    // Gọi một lần sau khi lô có sự kiện của handler này commit (ví dụ xóa cache)
+    default void afterBatch() {
+    }
+}
@@ -1,6 +1,7 @@
 package com.sondv.phone.service;
 
 import com.sondv.phone.entity.Order;
+import com.sondv.phone.entity.OrderStatus;
 import com.sondv.phone.entity.Payment;
 import com.sondv.phone.entity.PaymentMethod;
 import com.sondv.phone.entity.PaymentStatus;
@@ -8,6 +9,7 @@ import com.sondv.phone.entity.User;
 import com.sondv.phone.repository.OrderRepository;
 import com.sondv.phone.repository.PaymentRepository;
 import com.sondv.phone.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +25,7 @@ public class PaymentService {
     private final PaymentRepository paymentRepository;
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
+    private final MeterRegistry meterRegistry;
     private static final Logger log = LoggerFactory.getLogger(PaymentService.class);
 
     @Transactional
@@ -62,6 +65,37 @@ public class PaymentService {
         return paymentRepository.save(payment);
     }
 
+    // Đã phát hành URL thanh toán online: ghi lại hạn của URL để lượt hủy đơn quá hạn không hủy khi khách còn trả được
+    @Transactional
+    public Payment markProcessing(Long orderId, LocalDateTime expiresAt) {
+        Payment payment = getPaymentByOrderId(orderId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy thanh toán!"));
+        payment.setStatus(PaymentStatus.PROCESSING);
+        payment.setExpiresAt(expiresAt);
+        return paymentRepository.save(payment);
+    }
+
+    /**
+     * Cổng báo đã thu tiền nhưng đơn không xác nhận được. Nếu đơn đã bị hủy (hết hạn giữ hàng, hàng đã hoàn kho)
+     * thì thanh toán chuyển sang REFUND_PENDING để bộ phận vận hành hoàn tiền, thay vì để PAID trên một đơn đã hủy.
+     *
+     * @return true nếu thanh toán đã được đánh dấu chờ hoàn tiền
+     */
+    @Transactional
+    public boolean flagForRefund(Long orderId) {
+        Payment payment = getPaymentByOrderId(orderId)
+                .orElseThrow(() -> new RuntimeException("Không tìm thấy thanh toán!"));
+        if (payment.getOrder().getStatus() != OrderStatus.CANCELLED) {
+            return false;
+        }
+        payment.setStatus(PaymentStatus.REFUND_PENDING);
+        paymentRepository.save(payment);
+        meterRegistry.counter("payment.refund.pending").increment();
+        log.error("Nhận thanh toán {} cho đơn {} đã bị hủy, cần hoàn tiền cho khách",
+                payment.getTransactionId(), orderId);
+        return true;
+    }
+
     public Order getOrderById(Long orderId) {
         return orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy đơn hàng!"));
@@ -0,0 +1,104 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.config.CacheTags;
+import com.sondv.phone.config.TwoTierCacheManager;
+import com.sondv.phone.util.TransactionUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Điểm duy nhất để xóa cache sản phẩm sau khi dữ liệu thay đổi.
+ * <p>
+ * Thay đổi nội dung một sản phẩm (giá, tồn kho, đánh giá, tên...) chỉ xóa những entry có chứa sản phẩm đó,
+ * tra theo chỉ mục phụ thuộc của {@link TwoTierCacheManager}. Thay đổi thành viên của một danh sách
+ * (thêm/xóa sản phẩm, đổi cờ nổi bật) thì xóa toàn bộ cache danh sách tương ứng vì không thể biết trước
+ * trang nào sẽ chứa sản phẩm mới. Mọi thao tác chạy sau khi transaction commit.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductCacheInvalidator {
+
+    public static final String PRODUCT = "product";
+    public static final String PRODUCTS = "products";
+    public static final String FEATURED = "featuredProducts";
+    public static final String NEWEST = "newestProducts";
+    public static final String BEST_SELLING = "bestSellingProducts";
+
+    private static final List<String> PRODUCT_CACHES = List.of(PRODUCT, PRODUCTS, FEATURED, NEWEST, BEST_SELLING);
+
+    private final CacheManager cacheManager;
+
+    public void productChanged(Long productId) {
+        if (productId != null) {
+            productsChanged(List.of(productId));
+        }
+    }
+
+    public void productsChanged(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = Set.copyOf(productIds);
+        TransactionUtils.afterCommit(() -> {
+            // Entry chi tiết được xóa theo key để không sót bản chỉ còn nằm ở L2
+            Cache product = cacheManager.getCache(PRODUCT);
+            if (product != null) {
+                ids.forEach(product::evict);
+            }
+            evictTags(ids.stream().map(CacheTags::product).collect(Collectors.toSet()));
+        });
+    }
+
+    // Thay đổi chạm tới gần như mọi sản phẩm (áp giá hàng loạt): xóa một lần toàn bộ cache sản phẩm
+    public void allProductsChanged() {
+        membershipChanged(PRODUCT_CACHES.toArray(String[]::new));
+    }
+
+    public void categoryChanged(Long categoryId) {
+        if (categoryId != null) {
+            TransactionUtils.afterCommit(() -> evictTags(Set.of(CacheTags.category(categoryId))));
+        }
+    }
+
+    public void supplierChanged(Long supplierId) {
+        if (supplierId != null) {
+            TransactionUtils.afterCommit(() -> evictTags(Set.of(CacheTags.supplier(supplierId))));
+        }
+    }
+
+    // Tập sản phẩm của các danh sách này đã đổi (không chỉ nội dung), xóa toàn bộ
+    public void membershipChanged(String... cacheNames) {
+        TransactionUtils.afterCommit(() -> {
+            for (String name : cacheNames) {
+                Cache cache = cacheManager.getCache(name);
+                if (cache != null) {
+                    cache.clear();
+                }
+            }
+        });
+    }
+
+    private void evictTags(Set<String> tags) {
+        if (cacheManager instanceof TwoTierCacheManager twoTier) {
+            twoTier.evictTags(tags);
+            return;
+        }
+        // CacheManager khác (ví dụ profile test) không có chỉ mục phụ thuộc
+        log.debug("CacheManager không hỗ trợ xóa theo tag, xóa toàn bộ cache sản phẩm");
+        for (String name : PRODUCT_CACHES) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.Product;
+import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.DiscountWindow;
+import com.sondv.phone.util.TransactionUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Chỉ mục danh mục sản phẩm nằm trong bộ nhớ, dùng cho lọc theo giá và sắp xếp của
+ * {@link ProductService#getFilteredProducts}.
+ * <p>
+ * Dữ liệu được giữ dưới dạng các mảng nguyên thủy song song theo id tăng dần (giá hiệu lực theo đơn vị
+ * nhỏ nhất, số lượng đã bán) cùng hai hoán vị đã sắp xếp sẵn theo giá và theo lượt bán. Thay đổi một sản phẩm
+ * (lưu, xóa, đơn hoàn thành) được cập nhật tại chỗ: tìm nhị phân vị trí cũ, dời phần tử trong hoán vị, không
+ * sắp xếp lại toàn bộ. Chỉ khi áp giá hàng loạt hoặc khi một khung giảm giá bắt đầu/kết thúc thì hoán vị theo
+ * giá mới được sắp lại. Nạp, cập nhật và truy vấn cùng dùng một {@link ReentrantReadWriteLock}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductCatalogIndex {
+
+    public enum SortOrder {
+        DEFAULT, NEWEST, BESTSELLING, PRICE_ASC, PRICE_DESC;
+
+        public static SortOrder from(String sortBy) {
+            if (sortBy == null) {
+                return DEFAULT;
+            }
+            return switch (sortBy.toLowerCase()) {
+                case "newest" -> NEWEST;
+                case "bestselling" -> BESTSELLING;
+                case "priceasc" -> PRICE_ASC;
+                case "pricedesc" -> PRICE_DESC;
+                default -> DEFAULT;
+            };
+        }
+    }
+
+    /** Kết quả một trang: danh sách id theo đúng thứ tự và tổng số phần tử khớp bộ lọc. */
+    public record PageSlice(List<Long> ids, long total) {
+    }
+
+    private record Entry(long id, BigDecimal sellingPrice, BigDecimal discountedPrice,
+                         LocalDateTime discountStart, LocalDateTime discountEnd, int soldQuantity) {
+
+        Entry withPrice(BigDecimal discounted, LocalDateTime start, LocalDateTime end) {
+            return new Entry(id, sellingPrice, discounted, start, end, soldQuantity);
+        }
+
+        Entry withSoldQuantity(int sold) {
+            return new Entry(id, sellingPrice, discountedPrice, discountStart, discountEnd, sold);
+        }
+    }
+
+    // Nạp lỗi thì thử lại sau 1 giây, nhân đôi mỗi lần lỗi tiếp, tối đa 1 phút
+    private static final long MIN_RETRY_MILLIS = 1_000;
+    private static final long MAX_RETRY_MILLIS = 60_000;
+
+    // Áp giá cho nhiều hơn 1/BULK_RESORT_RATIO số sản phẩm thì sắp lại hoán vị giá một lần thay vì dời từng phần tử
+    private static final int BULK_RESORT_RATIO = 16;
+
+    private final ProductRepository productRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Các trường dưới đây chỉ được đọc khi giữ read lock và chỉ được ghi khi giữ write lock
+    private int size;
+    // Các mảng song song theo id tăng dần; các hoán vị trỏ vào vị trí trong các mảng này
+    private Entry[] entries = new Entry[0];
+    private long[] ids = new long[0];
+    private long[] prices = new long[0];
+    private int[] soldQuantities = new int[0];
+    private int[] byPriceAsc = new int[0];
+    private int[] bySoldDesc = new int[0];
+
+    // Thời điểm gần nhất mà một khung giảm giá bắt đầu hoặc kết thúc
+    private volatile LocalDateTime validUntil = LocalDateTime.MAX;
+    private volatile boolean loaded = false;
+    private volatile long retryAtMillis = 0;
+    private long retryDelayMillis = MIN_RETRY_MILLIS;
+
+    private final IntBinaryOperator priceOrder = (a, b) -> {
+        int c = Long.compare(prices[a], prices[b]);
+        return c != 0 ? c : Long.compare(ids[a], ids[b]);
+    };
+    private final IntBinaryOperator soldOrder = (a, b) -> {
+        int c = Integer.compare(soldQuantities[b], soldQuantities[a]);
+        return c != 0 ? c : Long.compare(ids[a], ids[b]);
+    };
+
+    // Giữ write lock trong lúc đọc DB để không cập nhật nào commit xen giữa bị bản nạp cũ ghi đè
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            Entry[] sorted = productRepository.findCatalogRows().stream()
+                    .map(ProductCatalogIndex::toEntry)
+                    .sorted((a, b) -> Long.compare(a.id(), b.id()))
+                    .toArray(Entry[]::new);
+            rebuild(sorted);
+            loaded = true;
+            retryDelayMillis = MIN_RETRY_MILLIS;
+            log.info("Đã nạp {} sản phẩm vào chỉ mục danh mục", size);
+        } catch (Exception e) {
+            retryAtMillis = System.currentTimeMillis() + retryDelayMillis;
+            log.error("Không thể nạp chỉ mục danh mục sản phẩm, thử lại sau {} ms", retryDelayMillis, e);
+            retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_MILLIS);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Chưa nạp được: chỉ một request thử lại khi hết thời gian chờ, các request khác đọc chỉ mục hiện có
+    private void loadIfDue() {
+        if (loaded || System.currentTimeMillis() < retryAtMillis || !lock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            if (!loaded && System.currentTimeMillis() >= retryAtMillis) {
+                load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Cập nhật một sản phẩm vào chỉ mục sau khi transaction hiện tại commit. */
+    public void upsert(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        Entry entry = toEntry(product);
+        TransactionUtils.afterCommit(() -> write(() -> put(entry, LocalDateTime.now())));
+    }
+
+    public void upsertAll(Collection<Product> products) {
+        products.forEach(this::upsert);
+    }
+
+    /**
+     * Áp cùng một khung giảm giá cho nhiều sản phẩm mà không nạp lại entity: giá giảm được tính lại
+     * từ giá bán đang giữ trong chỉ mục. productIds null là toàn bộ sản phẩm.
+     */
+    public void applyDiscount(Collection<Long> productIds, UnaryOperator<BigDecimal> priceRule,
+                              LocalDateTime start, LocalDateTime end) {
+        Set<Long> targets = productIds != null ? Set.copyOf(productIds) : null;
+        TransactionUtils.afterCommit(() -> write(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (targets != null && targets.size() <= size / BULK_RESORT_RATIO) {
+                for (Long id : targets) {
+                    int pos = indexOf(id);
+                    if (pos >= 0) {
+                        put(entries[pos].withPrice(priceRule.apply(entries[pos].sellingPrice()), start, end), now);
+                    }
+                }
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                if (targets == null || targets.contains(ids[i])) {
+                    entries[i] = entries[i].withPrice(priceRule.apply(entries[i].sellingPrice()), start, end);
+                }
+            }
+            repriceAll(now);
+        }));
+    }
+
+    /** Cộng số lượng đã bán (đơn hoàn thành) sau khi transaction hiện tại commit. */
+    public void soldQuantitiesChanged(Map<Long, Integer> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> copy = Map.copyOf(deltas);
+        TransactionUtils.afterCommit(() -> write(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            copy.forEach((id, delta) -> {
+                int pos = indexOf(id);
+                if (pos >= 0) {
+                    put(entries[pos].withSoldQuantity(entries[pos].soldQuantity() + delta), now);
+                }
+            });
+        }));
+    }
+
+    public void remove(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> write(() -> {
+            int pos = indexOf(productId);
+            if (pos >= 0) {
+                removeSlot(pos);
+            }
+        }));
+    }
+
+    /**
+     * Trả về một trang id sản phẩm thỏa khoảng giá và bộ lọc id (nếu có), theo thứ tự sắp xếp yêu cầu.
+     * Giá tính theo giá hiệu lực tại thời điểm gọi; {@code null} nghĩa là không giới hạn.
+     */
+    public PageSlice query(BigDecimal minPrice, BigDecimal maxPrice, Set<Long> idFilter,
+                           SortOrder sortOrder, long offset, int pageSize) {
+        loadIfDue();
+        if (!LocalDateTime.now().isBefore(validUntil)) {
+            write(() -> {
+                LocalDateTime now = LocalDateTime.now();
+                if (!now.isBefore(validUntil)) {
+                    repriceAll(now);
+                }
+            });
+        }
+        lock.readLock().lock();
+        try {
+            return select(minPrice, maxPrice, idFilter, sortOrder, offset, pageSize);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private PageSlice select(BigDecimal minPrice, BigDecimal maxPrice, Set<Long> idFilter,
+                             SortOrder sortOrder, long offset, int pageSize) {
+        int n = size;
+        long lo = minPrice != null ? toMinorUnits(minPrice, RoundingMode.CEILING) : Long.MIN_VALUE;
+        long hi = maxPrice != null ? toMinorUnits(maxPrice, RoundingMode.FLOOR) : Long.MAX_VALUE;
+
+        // Khoảng [from, to) trong hoán vị theo giá chứa mọi sản phẩm thỏa điều kiện giá
+        int from = lowerBound(lo);
+        int to = hi == Long.MAX_VALUE ? n : lowerBound(hi + 1);
+        if (from >= to) {
+            return new PageSlice(List.of(), 0);
+        }
+        boolean priceFiltered = from > 0 || to < n;
+
+        LongPredicate idMatches = idFilter != null ? idFilter::contains : id -> true;
+        List<Long> page = new ArrayList<>(Math.max(pageSize, 0));
+
+        if (sortOrder == SortOrder.PRICE_ASC || sortOrder == SortOrder.PRICE_DESC) {
+            boolean desc = sortOrder == SortOrder.PRICE_DESC;
+            if (idFilter == null) {
+                // Trường hợp thuần lọc giá: cắt trang trực tiếp trên hoán vị, O(log n + page)
+                long total = to - from;
+                for (long k = offset; k < total && page.size() < pageSize; k++) {
+                    int pos = desc ? to - 1 - (int) k : from + (int) k;
+                    page.add(ids[byPriceAsc[pos]]);
+                }
+                return new PageSlice(page, total);
+            }
+            long total = 0;
+            for (int k = 0; k < to - from; k++) {
+                int i = byPriceAsc[desc ? to - 1 - k : from + k];
+                if (!idMatches.test(ids[i])) continue;
+                if (total >= offset && page.size() < pageSize) {
+                    page.add(ids[i]);
+                }
+                total++;
+            }
+            return new PageSlice(page, total);
+        }
+
+        // Lọc chọn lọc (ít ứng viên so với số phần tử phải quét): gom ứng viên rồi sắp riêng chúng
+        int inRange = to - from;
+        long candidates = idFilter != null ? Math.min(idFilter.size(), inRange) : inRange;
+        long scanCost = idFilter != null ? n
+                : priceFiltered ? Math.min(n, (offset + pageSize) * n / inRange) : 0;
+        if (candidates < scanCost) {
+            return selectCandidates(lo, hi, from, to, idFilter, sortOrder, offset, pageSize);
+        }
+
+        long total = idFilter == null ? inRange : -1;
+        // Không lọc gì thì vị trí thứ offset chính là phần tử đầu trang
+        int first = !priceFiltered && idFilter == null ? (int) Math.min(offset, n) : 0;
+        long matched = first;
+        for (int k = first; k < n; k++) {
+            int i = switch (sortOrder) {
+                case NEWEST -> n - 1 - k;
+                case BESTSELLING -> bySoldDesc[k];
+                default -> k;
+            };
+            if (priceFiltered && (prices[i] < lo || prices[i] > hi)) continue;
+            if (!idMatches.test(ids[i])) continue;
+            if (matched >= offset && page.size() < pageSize) {
+                page.add(ids[i]);
+            }
+            matched++;
+            // Đã biết tổng từ tìm kiếm nhị phân nên dừng ngay khi đủ trang
+            if (total >= 0 && page.size() >= pageSize) {
+                break;
+            }
+        }
+        return new PageSlice(page, total >= 0 ? total : matched);
+    }
+
+    private PageSlice selectCandidates(long lo, long hi, int from, int to, Set<Long> idFilter,
+                                       SortOrder sortOrder, long offset, int pageSize) {
+        int[] positions;
+        int count = 0;
+        if (idFilter != null && idFilter.size() < to - from) {
+            positions = new int[idFilter.size()];
+            for (Long id : idFilter) {
+                int pos = id != null ? indexOf(id) : -1;
+                if (pos >= 0 && prices[pos] >= lo && prices[pos] <= hi) {
+                    positions[count++] = pos;
+                }
+            }
+        } else {
+            positions = new int[to - from];
+            for (int k = from; k < to; k++) {
+                int pos = byPriceAsc[k];
+                if (idFilter == null || idFilter.contains(ids[pos])) {
+                    positions[count++] = pos;
+                }
+            }
+        }
+
+        if (sortOrder == SortOrder.BESTSELLING) {
+            // Khóa (lượt bán giảm dần, vị trí tăng dần) gói trong một long để sắp mảng nguyên thủy
+            long[] keys = new long[count];
+            for (int k = 0; k < count; k++) {
+                keys[k] = ((long) (Integer.MAX_VALUE - Math.max(0, soldQuantities[positions[k]])) << 32) | positions[k];
+            }
+            Arrays.sort(keys);
+            for (int k = 0; k < count; k++) {
+                positions[k] = (int) keys[k];
+            }
+        } else {
+            Arrays.sort(positions, 0, count);
+        }
+
+        boolean reversed = sortOrder == SortOrder.NEWEST;
+        List<Long> page = new ArrayList<>(Math.max(pageSize, 0));
+        for (long k = offset; k < count && page.size() < pageSize; k++) {
+            page.add(ids[positions[reversed ? count - 1 - (int) k : (int) k]]);
+        }
+        return new PageSlice(page, count);
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebuild(Entry[] sorted) {
+        int n = sorted.length;
+        int capacity = Math.max(n, 16);
+        entries = Arrays.copyOf(sorted, capacity);
+        ids = new long[capacity];
+        prices = new long[capacity];
+        soldQuantities = new int[capacity];
+        byPriceAsc = new int[capacity];
+        bySoldDesc = new int[capacity];
+        for (int i = 0; i < n; i++) {
+            ids[i] = sorted[i].id();
+            soldQuantities[i] = sorted[i].soldQuantity();
+            bySoldDesc[i] = i;
+        }
+        size = n;
+        sortPermutation(bySoldDesc, soldOrder);
+        repriceAll(LocalDateTime.now());
+    }
+
+    // Tính lại giá hiệu lực của mọi sản phẩm và sắp lại hoán vị theo giá
+    private void repriceAll(LocalDateTime now) {
+        LocalDateTime next = LocalDateTime.MAX;
+        for (int i = 0; i < size; i++) {
+            prices[i] = toMinorUnits(effectivePrice(entries[i], now), RoundingMode.HALF_UP);
+            byPriceAsc[i] = i;
+            next = earlier(next, nextTransition(entries[i], now));
+        }
+        sortPermutation(byPriceAsc, priceOrder);
+        validUntil = next;
+    }
+
+    // Thêm mới hoặc thay một sản phẩm: gỡ khỏi hai hoán vị, ghi giá trị mới rồi chèn lại đúng thứ hạng
+    private void put(Entry entry, LocalDateTime now) {
+        int pos = indexOf(entry.id());
+        if (pos >= 0) {
+            unlink(pos);
+        } else {
+            pos = -pos - 1;
+            insertSlot(pos);
+        }
+        entries[pos] = entry;
+        ids[pos] = entry.id();
+        prices[pos] = toMinorUnits(effectivePrice(entry, now), RoundingMode.HALF_UP);
+        soldQuantities[pos] = entry.soldQuantity();
+        insertRanked(byPriceAsc, size - 1, pos, priceOrder);
+        insertRanked(bySoldDesc, size - 1, pos, soldOrder);
+        validUntil = earlier(validUntil, nextTransition(entry, now));
+    }
+
+    private void removeSlot(int pos) {
+        unlink(pos);
+        int tail = size - pos - 1;
+        System.arraycopy(entries, pos + 1, entries, pos, tail);
+        System.arraycopy(ids, pos + 1, ids, pos, tail);
+        System.arraycopy(prices, pos + 1, prices, pos, tail);
+        System.arraycopy(soldQuantities, pos + 1, soldQuantities, pos, tail);
+        size--;
+        entries[size] = null;
+        shiftReferences(pos, -1);
+    }
+
+    // Mở một vị trí trống tại pos trong các mảng song song; các hoán vị chưa trỏ tới vị trí này
+    private void insertSlot(int pos) {
+        if (size == ids.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            entries = Arrays.copyOf(entries, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            soldQuantities = Arrays.copyOf(soldQuantities, capacity);
+            byPriceAsc = Arrays.copyOf(byPriceAsc, capacity);
+            bySoldDesc = Arrays.copyOf(bySoldDesc, capacity);
+        }
+        int tail = size - pos;
+        System.arraycopy(entries, pos, entries, pos + 1, tail);
+        System.arraycopy(ids, pos, ids, pos + 1, tail);
+        System.arraycopy(prices, pos, prices, pos + 1, tail);
+        System.arraycopy(soldQuantities, pos, soldQuantities, pos + 1, tail);
+        shiftReferences(pos, 1);
+        size++;
+    }
+
+    // Dời các tham chiếu từ pos trở đi; lúc gọi, các hoán vị chứa đúng size phần tử và không chứa vị trí
+    // đang được thêm/xóa
+    private void shiftReferences(int pos, int delta) {
+        for (int k = 0; k < size; k++) {
+            if (byPriceAsc[k] >= pos) byPriceAsc[k] += delta;
+            if (bySoldDesc[k] >= pos) bySoldDesc[k] += delta;
+        }
+    }
+
+    // Gỡ vị trí pos khỏi hai hoán vị khi giá trị ở pos vẫn là giá trị đã dùng để xếp hạng
+    private void unlink(int pos) {
+        removeRanked(byPriceAsc, size, pos, priceOrder);
+        removeRanked(bySoldDesc, size, pos, soldOrder);
+    }
+
+    private static void removeRanked(int[] permutation, int count, int pos, IntBinaryOperator order) {
+        int rank = rankOf(permutation, count, pos, order);
+        System.arraycopy(permutation, rank + 1, permutation, rank, count - rank - 1);
+    }
+
+    private static void insertRanked(int[] permutation, int count, int pos, IntBinaryOperator order) {
+        int rank = rankOf(permutation, count, pos, order);
+        System.arraycopy(permutation, rank, permutation, rank + 1, count - rank);
+        permutation[rank] = pos;
+    }
+
+    // Thứ hạng đầu tiên trong permutation[0, count) không đứng trước pos
+    private static int rankOf(int[] permutation, int count, int pos, IntBinaryOperator order) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (order.applyAsInt(permutation[mid], pos) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void sortPermutation(int[] permutation, IntBinaryOperator order) {
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = permutation[i];
+        }
+        Arrays.sort(boxed, order::applyAsInt);
+        for (int i = 0; i < size; i++) {
+            permutation[i] = boxed[i];
+        }
+    }
+
+    private int indexOf(long id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    // Vị trí đầu tiên trong hoán vị theo giá có giá >= price
+    private int lowerBound(long price) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prices[byPriceAsc[mid]] < price) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static LocalDateTime earlier(LocalDateTime current, LocalDateTime candidate) {
+        return candidate != null && candidate.isBefore(current) ? candidate : current;
+    }
+
+    // Cùng quy tắc với ProductPricingService
+    private static BigDecimal effectivePrice(Entry e, LocalDateTime now) {
+        return DiscountWindow.isOpen(e.discountedPrice(), e.discountStart(), e.discountEnd(), now)
+                ? e.discountedPrice() : e.sellingPrice();
+    }
+
+    private static LocalDateTime nextTransition(Entry e, LocalDateTime now) {
+        return DiscountWindow.nextTransition(e.discountedPrice(), e.discountStart(), e.discountEnd(), now);
+    }
+
+    private static long toMinorUnits(BigDecimal price, RoundingMode roundingMode) {
+        if (price == null) {
+            return 0L;
+        }
+        return price.movePointRight(2).setScale(0, roundingMode).longValue();
+    }
+
+    private static Entry toEntry(Product p) {
+        return toEntry(p.getId(), p.getSellingPrice(), p.getDiscountedPrice(), p.getDiscountStartDate(),
+                p.getDiscountEndDate(), p.getSoldQuantity());
+    }
+
+    // Một dòng của ProductRepository#findCatalogRows
+    private static Entry toEntry(Object[] row) {
+        return toEntry((Long) row[0], (BigDecimal) row[1], (BigDecimal) row[2], (LocalDateTime) row[3],
+                (LocalDateTime) row[4], (Integer) row[5]);
+    }
+
+    private static Entry toEntry(long id, BigDecimal sellingPrice, BigDecimal discountedPrice, LocalDateTime start,
+                                 LocalDateTime end, Integer soldQuantity) {
+        return new Entry(id, sellingPrice != null ? sellingPrice : BigDecimal.ZERO, discountedPrice, start, end,
+                soldQuantity != null ? soldQuantity : 0);
+    }
+}
@@ -0,0 +1,259 @@
+package com.sondv.phone.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sondv.phone.entity.Product;
+import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.DiscountWindow;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nguồn duy nhất cho giá hiệu lực của sản phẩm (giá giảm nếu đang trong khung giảm giá, ngược lại giá bán).
+ * <p>
+ * Quy tắc khung giảm giá nằm ở {@link DiscountWindow}. Mỗi sản phẩm có một {@link Quote} bất biến đã tính sẵn
+ * giá hiệu lực và mốc hết hiệu lực; khi qua mốc (khung mở hoặc đóng) quote được tính lại và thay nguyên tử,
+ * kèm tăng số phiên bản. Danh sách sản phẩm, giỏ hàng, checkout và chatbot đều đọc qua đây trong O(1).
+ * <p>
+ * Entity được truyền vào luôn là nguồn đúng: quote trong bảng lệch với giá/khung của entity (node khác vừa sửa
+ * mà lệnh xóa chưa tới) thì bị thay bằng quote tính từ entity. Mỗi thay đổi được phát qua Redis pub/sub
+ * ({@code invalidation-channel}) để các node khác bỏ quote cũ, giống cách {@code TwoTierCache} đồng bộ L1;
+ * bảng vẫn được nạp lại mỗi {@code reload-interval} phòng khi mất tin nhắn.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProductPricingService implements MessageListener {
+
+    /**
+     * Giá của một sản phẩm tại một thời điểm; còn đúng đến trước {@code validUntil} (null là không có mốc nào).
+     */
+    public record Quote(BigDecimal sellingPrice, BigDecimal discountedPrice, LocalDateTime discountStart,
+                        LocalDateTime discountEnd, BigDecimal effectivePrice, boolean onSale,
+                        LocalDateTime validUntil, long version) {
+
+        boolean expired(LocalDateTime now) {
+            return validUntil != null && !now.isBefore(validUntil);
+        }
+    }
+
+    private final ProductRepository productRepository;
+    private final MeterRegistry meterRegistry;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<RedisMessageListenerContainer> listenerContainer;
+
+    @Value("${app.pricing.snapshot.reload-interval:15m}")
+    private Duration reloadInterval;
+
+    @Value("${app.pricing.snapshot.invalidation-channel:pricing:invalidation}")
+    private String invalidationChannel;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<Long, Quote> quotes = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "product-pricing-reload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("pricing.snapshot.size", quotes, Map::size).register(meterRegistry);
+        Gauge.builder("pricing.snapshot.version", version, AtomicLong::get).register(meterRegistry);
+        RedisMessageListenerContainer container = listenerContainer.getIfAvailable();
+        if (container != null) {
+            container.addMessageListener(this, new ChannelTopic(invalidationChannel));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long interval = reloadInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::reload, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public Quote quote(Product product) {
+        Long id = product.getId();
+        Quote current = id != null ? quotes.get(id) : null;
+        if (current != null && sameTerms(current, product)) {
+            return fresh(id, current);
+        }
+        // Chưa có trong bảng hoặc bảng đang giữ giá cũ: entity (đọc trong transaction hiện tại) là nguồn đúng
+        Quote computed = compute(product.getSellingPrice(), product.getDiscountedPrice(),
+                product.getDiscountStartDate(), product.getDiscountEndDate(), LocalDateTime.now(), version.incrementAndGet());
+        if (id != null) {
+            if (current != null) {
+                quotes.replace(id, current, computed);
+            } else {
+                quotes.putIfAbsent(id, computed);
+            }
+        }
+        return computed;
+    }
+
+    public BigDecimal currentPrice(Product product) {
+        return quote(product).effectivePrice();
+    }
+
+    public boolean isOnSale(Product product) {
+        return quote(product).onSale();
+    }
+
+    /** Sản phẩm vừa được tạo/sửa; áp vào bảng và báo các node khác sau khi commit. */
+    public void productChanged(Product product) {
+        Long id = product.getId();
+        BigDecimal selling = product.getSellingPrice();
+        BigDecimal discounted = product.getDiscountedPrice();
+        LocalDateTime start = product.getDiscountStartDate();
+        LocalDateTime end = product.getDiscountEndDate();
+        TransactionUtils.afterCommit(() -> {
+            quotes.put(id, compute(selling, discounted, start, end, LocalDateTime.now(), version.incrementAndGet()));
+            broadcast(List.of(id));
+        });
+    }
+
+    public void productRemoved(Long productId) {
+        TransactionUtils.afterCommit(() -> {
+            quotes.remove(productId);
+            version.incrementAndGet();
+            broadcast(List.of(productId));
+        });
+    }
+
+    /**
+     * Giá của nhiều sản phẩm vừa đổi hàng loạt (productIds null là toàn bộ): bỏ quote cũ trên mọi node,
+     * lần đọc kế tiếp tính lại từ entity.
+     */
+    public void productsRepriced(Collection<Long> productIds) {
+        List<Long> ids = productIds != null ? List.copyOf(productIds) : null;
+        TransactionUtils.afterCommit(() -> {
+            invalidate(ids);
+            broadcast(ids);
+        });
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, @Nullable byte[] pattern) {
+        try {
+            Map<?, ?> payload = objectMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), Map.class);
+            if (nodeId.equals(payload.get("origin"))) {
+                return;
+            }
+            invalidate(payload.get("ids") instanceof Collection<?> ids
+                    ? ids.stream().map(v -> ((Number) v).longValue()).toList() : null);
+        } catch (Exception e) {
+            log.warn("Bỏ qua lệnh xóa bảng giá không hợp lệ: {}", e.getMessage());
+        }
+    }
+
+    private void invalidate(@Nullable Collection<Long> ids) {
+        if (ids == null) {
+            // Đọc trong lúc nạp lại vẫn đúng vì quote được tính từ entity khi thiếu
+            quotes.clear();
+            scheduler.execute(this::reload);
+        } else {
+            quotes.keySet().removeAll(ids);
+        }
+        version.incrementAndGet();
+    }
+
+    private void broadcast(@Nullable List<Long> ids) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("origin", nodeId);
+        message.put("ids", ids);
+        try {
+            redisTemplate.convertAndSend(invalidationChannel, objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            // Node khác vẫn tự sửa khi đọc entity mới, hoặc ở lượt nạp lại định kỳ
+            log.warn("Không thể phát lệnh xóa bảng giá {}: {}", ids, e.getMessage());
+        }
+    }
+
+    private static boolean sameTerms(Quote quote, Product product) {
+        return sameAmount(quote.sellingPrice(), product.getSellingPrice())
+                && sameAmount(quote.discountedPrice(), product.getDiscountedPrice())
+                && Objects.equals(quote.discountStart(), product.getDiscountStartDate())
+                && Objects.equals(quote.discountEnd(), product.getDiscountEndDate());
+    }
+
+    private static boolean sameAmount(@Nullable BigDecimal a, @Nullable BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+
+    // Thay toàn bộ bảng bằng dữ liệu DB (nhận thay đổi từ node khác)
+    void reload() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            long v = version.incrementAndGet();
+            Map<Long, Quote> fresh = new ConcurrentHashMap<>();
+            for (Object[] row : productRepository.findPriceRows()) {
+                fresh.put((Long) row[0], compute((BigDecimal) row[1], (BigDecimal) row[2],
+                        (LocalDateTime) row[3], (LocalDateTime) row[4], now, v));
+            }
+            quotes.putAll(fresh);
+            quotes.keySet().retainAll(fresh.keySet());
+            log.debug("Đã nạp bảng giá hiệu lực cho {} sản phẩm (phiên bản {})", fresh.size(), v);
+        } catch (Exception e) {
+            log.error("Không thể nạp bảng giá hiệu lực", e);
+        }
+    }
+
+    // Quote đã qua mốc thì tính lại và thay nguyên tử; luồng thua dùng bản của luồng thắng
+    private Quote fresh(Long productId, Quote current) {
+        LocalDateTime now = LocalDateTime.now();
+        if (!current.expired(now)) {
+            return current;
+        }
+        Quote next = compute(current.sellingPrice(), current.discountedPrice(), current.discountStart(),
+                current.discountEnd(), now, version.incrementAndGet());
+        return quotes.replace(productId, current, next) ? next : quotes.getOrDefault(productId, next);
+    }
+
+    private static Quote compute(BigDecimal selling, BigDecimal discounted, LocalDateTime start, LocalDateTime end,
+                                 LocalDateTime now, long version) {
+        boolean onSale = DiscountWindow.isOpen(discounted, start, end, now);
+        BigDecimal effective = onSale ? discounted : selling;
+        return new Quote(selling, discounted, start, end, effective, onSale,
+                DiscountWindow.nextTransition(discounted, start, end, now), version);
+    }
+}
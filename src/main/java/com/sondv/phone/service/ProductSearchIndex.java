@@ -0,0 +1,338 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.Product;
+import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.TextNormalizer;
+import com.sondv.phone.util.TransactionUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục đảo ngược (token + trigram) trên tên sản phẩm, thay cho các truy vấn {@code LIKE '%kw%'}.
+ * <p>
+ * Tên và từ khóa được chuẩn hóa bằng {@link TextNormalizer#fold} (bỏ dấu tiếng Việt, đ -> d, chữ thường),
+ * nên "điện thoại" và "dien thoai" cho cùng kết quả. Kết quả được xếp hạng theo mức khớp
+ * (khớp nguyên cụm > khớp token > tiền tố > chuỗi con > gần đúng), sau đó theo số lượng đã bán.
+ * <p>
+ * Nạp lại và cập nhật giữ write lock (gỡ chỉ mục cũ rồi ghi chỉ mục mới của một sản phẩm là một bước với
+ * người đọc); tìm kiếm giữ read lock nên không bao giờ thấy sản phẩm đang được cập nhật biến mất.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final double FUZZY_THRESHOLD = 0.5;
+    // Nạp lỗi thì thử lại sau 1 giây, nhân đôi mỗi lần lỗi tiếp, tối đa 1 phút
+    private static final long MIN_RETRY_MILLIS = 1_000;
+    private static final long MAX_RETRY_MILLIS = 60_000;
+
+    private record Doc(long id, String folded, String[] tokens, int soldQuantity) {
+    }
+
+    private record Hit(long id, double score, int soldQuantity) {
+    }
+
+    private final ProductRepository productRepository;
+
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    // token -> id sản phẩm, sắp xếp để quét tiền tố
+    private final ConcurrentSkipListMap<String, Set<Long>> tokenPostings = new ConcurrentSkipListMap<>();
+    // trigram -> token chứa trigram đó, dùng cho khớp chuỗi con và gần đúng
+    private final Map<String, Set<String>> gramPostings = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded = false;
+    private volatile long retryAtMillis = 0;
+    private long retryDelayMillis = MIN_RETRY_MILLIS;
+
+    // Giữ write lock trong lúc đọc DB để không cập nhật nào commit xen giữa bị bản nạp cũ ghi đè
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            List<Object[]> rows = productRepository.findAllSearchFields();
+            docs.clear();
+            tokenPostings.clear();
+            gramPostings.clear();
+            for (Object[] row : rows) {
+                index((Long) row[0], (String) row[1], row[2] != null ? ((Number) row[2]).intValue() : 0);
+            }
+            loaded = true;
+            retryDelayMillis = MIN_RETRY_MILLIS;
+            log.info("Đã lập chỉ mục tìm kiếm cho {} sản phẩm", docs.size());
+        } catch (Exception e) {
+            retryAtMillis = System.currentTimeMillis() + retryDelayMillis;
+            log.error("Không thể lập chỉ mục tìm kiếm sản phẩm, thử lại sau {} ms", retryDelayMillis, e);
+            retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_MILLIS);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void upsert(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        long id = product.getId();
+        String name = product.getName();
+        int sold = product.getSoldQuantity() != null ? product.getSoldQuantity() : 0;
+        TransactionUtils.afterCommit(() -> write(() -> {
+            unindex(id);
+            index(id, name, sold);
+        }));
+    }
+
+    /** Cộng số lượng đã bán (đơn hoàn thành) để xếp hạng theo lượt bán mới, sau khi transaction commit. */
+    public void soldQuantitiesChanged(Map<Long, Integer> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> copy = Map.copyOf(deltas);
+        TransactionUtils.afterCommit(() -> write(() -> copy.forEach((id, delta) ->
+                docs.computeIfPresent(id, (k, doc) ->
+                        new Doc(doc.id(), doc.folded(), doc.tokens(), doc.soldQuantity() + delta)))));
+    }
+
+    public void remove(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> write(() -> unindex(productId)));
+    }
+
+    /**
+     * Id sản phẩm mà tên (đã chuẩn hóa) chứa mọi token của từ khóa, xếp hạng giảm dần.
+     * Tương đương ngữ nghĩa {@code LIKE '%kw%'} nhưng không phân biệt dấu và thứ tự từ.
+     */
+    public List<Long> search(String keyword, int limit) {
+        return rank(keyword, limit, false);
+    }
+
+    /** Giống {@link #search} nhưng cho phép token khớp gần đúng (sai chính tả nhẹ). */
+    public List<Long> searchFuzzy(String keyword, int limit) {
+        List<Long> strict = rank(keyword, limit, false);
+        return !strict.isEmpty() ? strict : rank(keyword, limit, true);
+    }
+
+    public Set<Long> matchingIds(String keyword) {
+        return new LinkedHashSet<>(search(keyword, Integer.MAX_VALUE));
+    }
+
+    private List<Long> rank(String keyword, int limit, boolean fuzzy) {
+        loadIfDue();
+        lock.readLock().lock();
+        try {
+            return rankLocked(keyword, limit, fuzzy);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Long> rankLocked(String keyword, int limit, boolean fuzzy) {
+        String query = TextNormalizer.fold(keyword).trim();
+        String[] queryTokens = tokenize(query);
+        if (queryTokens.length == 0 || limit <= 0) {
+            return List.of();
+        }
+
+        Map<Long, Double> scores = null;
+        for (String token : queryTokens) {
+            Map<Long, Double> tokenScores = matchToken(token, fuzzy);
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                // Mọi token đều phải khớp
+                Map<Long, Double> merged = new HashMap<>();
+                for (Map.Entry<Long, Double> e : scores.entrySet()) {
+                    Double other = tokenScores.get(e.getKey());
+                    if (other != null) {
+                        merged.put(e.getKey(), e.getValue() + other);
+                    }
+                }
+                scores = merged;
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        List<Hit> ranked = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, Double> e : scores.entrySet()) {
+            Doc doc = docs.get(e.getKey());
+            if (doc == null) continue;
+            double score = e.getValue();
+            if (doc.folded().contains(query)) {
+                score += 5;
+                if (doc.folded().startsWith(query)) {
+                    score += 2;
+                }
+            }
+            ranked.add(new Hit(doc.id(), score, doc.soldQuantity()));
+        }
+        ranked.sort(Comparator.comparingDouble(Hit::score).reversed()
+                .thenComparing(Comparator.comparingInt(Hit::soldQuantity).reversed())
+                .thenComparingLong(Hit::id));
+
+        List<Long> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && result.size() < limit; i++) {
+            result.add(ranked.get(i).id());
+        }
+        return result;
+    }
+
+    // Chưa nạp được: chỉ một request thử lại khi hết thời gian chờ, các request khác tìm trên chỉ mục hiện có
+    private void loadIfDue() {
+        if (loaded || System.currentTimeMillis() < retryAtMillis || !lock.writeLock().tryLock()) {
+            return;
+        }
+        try {
+            if (!loaded && System.currentTimeMillis() >= retryAtMillis) {
+                load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Điểm cho từng sản phẩm khớp với một token của truy vấn
+    private Map<Long, Double> matchToken(String token, boolean fuzzy) {
+        Map<Long, Double> scores = new HashMap<>();
+
+        Set<Long> exact = tokenPostings.get(token);
+        if (exact != null) {
+            exact.forEach(id -> scores.merge(id, 3.0, Math::max));
+        }
+
+        NavigableMap<String, Set<Long>> prefixed = tokenPostings.subMap(token, false, token + Character.MAX_VALUE, false);
+        prefixed.values().forEach(ids -> ids.forEach(id -> scores.merge(id, 2.0, Math::max)));
+
+        for (String candidate : candidateTokens(token)) {
+            if (candidate.contains(token) && !candidate.startsWith(token)) {
+                addPostings(scores, candidate, 1.0);
+            } else if (fuzzy && similarity(token, candidate) >= FUZZY_THRESHOLD) {
+                addPostings(scores, candidate, 0.5);
+            }
+        }
+        return scores;
+    }
+
+    private Set<String> candidateTokens(String token) {
+        if (token.length() < GRAM) {
+            // Token quá ngắn để dùng trigram: quét từ điển token (nhỏ hơn nhiều so với số sản phẩm)
+            Set<String> all = new HashSet<>();
+            for (String t : tokenPostings.keySet()) {
+                if (t.contains(token)) {
+                    all.add(t);
+                }
+            }
+            return all;
+        }
+        Set<String> candidates = new HashSet<>();
+        for (String gram : grams(token)) {
+            Set<String> tokens = gramPostings.get(gram);
+            if (tokens != null) {
+                candidates.addAll(tokens);
+            }
+        }
+        return candidates;
+    }
+
+    private void addPostings(Map<Long, Double> scores, String token, double score) {
+        Set<Long> ids = tokenPostings.get(token);
+        if (ids != null) {
+            ids.forEach(id -> scores.merge(id, score, Math::max));
+        }
+    }
+
+    // Hệ số Jaccard trên tập trigram
+    private static double similarity(String a, String b) {
+        Set<String> ga = grams(a);
+        Set<String> gb = grams(b);
+        if (ga.isEmpty() || gb.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String g : ga) {
+            if (gb.contains(g)) common++;
+        }
+        return (double) common / (ga.size() + gb.size() - common);
+    }
+
+    private void index(long id, String name, int soldQuantity) {
+        String folded = TextNormalizer.fold(name);
+        String[] tokens = tokenize(folded);
+        docs.put(id, new Doc(id, folded, tokens, soldQuantity));
+        for (String token : tokens) {
+            tokenPostings.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(id);
+            for (String gram : grams(token)) {
+                gramPostings.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(token);
+            }
+        }
+    }
+
+    private void unindex(long id) {
+        Doc doc = docs.remove(id);
+        if (doc == null) {
+            return;
+        }
+        for (String token : doc.tokens()) {
+            Set<Long> ids = tokenPostings.get(token);
+            if (ids == null) continue;
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                tokenPostings.remove(token);
+                for (String gram : grams(token)) {
+                    Set<String> tokens = gramPostings.get(gram);
+                    if (tokens != null) {
+                        tokens.remove(token);
+                        if (tokens.isEmpty()) {
+                            gramPostings.remove(gram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static String[] tokenize(String folded) {
+        return Arrays.stream(folded.split("[^\\p{L}\\p{N}]+"))
+                .filter(t -> !t.isEmpty())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private static Set<String> grams(String token) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= token.length(); i++) {
+            grams.add(token.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
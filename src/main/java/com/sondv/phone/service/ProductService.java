@@ -3,22 +3,31 @@ package com.sondv.phone.service;
 import com.sondv.phone.dto.*;
 import com.sondv.phone.entity.*;
 import com.sondv.phone.repository.*;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.*;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -32,43 +41,59 @@ public class ProductService {
     private final CategoryRepository categoryRepository;
     private final SupplierRepository supplierRepository;
     private final InventoryRepository inventoryRepository;
-    private final InventoryLogRepository inventoryLogRepository;
+    private final InventoryLedger inventoryLedger;
     private final CloudinaryService cloudinaryService;
-    private final PreloadCacheService preloadCacheService;
+    private final ProductCatalogIndex catalogIndex;
+    private final ProductSearchIndex searchIndex;
+    private final ProductSuggestTrie suggestTrie;
+    private final ProductCacheInvalidator cacheInvalidator;
+    private final InventorySummaryService inventorySummary;
+    private final DiscountTimeline discountTimeline;
+    private final BulkPricingService bulkPricingService;
+    private final ProductPricingService pricingService;
 
     // Lấy danh sách sản phẩm với phân trang
-    @Cacheable(value = "products", key = "#searchKeyword + '-' + #pageable.pageNumber + '-' + #pageable.pageSize", unless = "#result == null || #result.isEmpty()")
+    @Cacheable(value = "products", key = "#searchKeyword + '-' + #pageable.pageNumber + '-' + #pageable.pageSize", sync = true)
     public Page<ProductDTO> getAllProducts(String searchKeyword, Pageable pageable) {
         Page<Product> productPage;
         if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
-            productPage = productRepository.findByNameContainingIgnoreCase(searchKeyword.trim(), pageable);
+            List<Long> matchedIds = searchIndex.search(searchKeyword.trim(), Integer.MAX_VALUE);
+            int start = (int) Math.min(pageable.getOffset(), matchedIds.size());
+            int end = Math.min(start + pageable.getPageSize(), matchedIds.size());
+            List<Product> content = productRepository.findAllByIdInOrder(matchedIds.subList(start, end));
+            productPage = new PageImpl<>(content, pageable, matchedIds.size());
         } else {
-            productPage = productRepository.findAll(pageable);
+            productPage = productRepository.findListingPage(pageable);
         }
-        return productPage.map(this::mapToDTOWithDiscountCheck);
+        List<ProductDTO> content = mapToListDTOs(productPage.getContent());
+        return new PageImpl<>(content, pageable, productPage.getTotalElements());
+    }
+
+    // Gợi ý tên sản phẩm khi gõ, phục vụ hoàn toàn từ bộ nhớ
+    public List<ProductSuggestionDTO> suggestProducts(String prefix, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Giới hạn phải lớn hơn 0");
+        }
+        return suggestTrie.suggest(prefix, Math.min(limit, ProductSuggestTrie.MAX_K));
     }
 
     // Lấy sản phẩm nổi bật
-    @Cacheable(value = "featuredProducts")
+    @Cacheable(value = "featuredProducts", sync = true)
     public List<ProductDTO> getFeaturedProducts() {
-        List<Product> products = productRepository.findByIsFeaturedTrue();
-        return products.stream().map(this::mapToDTOWithDiscountCheck).collect(Collectors.toList());
+        return mapToListDTOs(productRepository.findByIsFeaturedTrue());
     }
 
     // Lấy sản phẩm mới nhất
-    @Cacheable(value = "newestProducts", key = "#limit")
+    @Cacheable(value = "newestProducts", key = "#limit", sync = true)
     public List<ProductDTO> getNewestProducts(int limit) {
         if (limit <= 0) {
             throw new IllegalArgumentException("Giới hạn phải lớn hơn 0");
         }
-        List<Product> products = productRepository.findAllByOrderByIdDesc().stream()
-                .limit(limit)
-                .collect(Collectors.toList());
-        return products.stream().map(this::mapToDTOWithDiscountCheck).collect(Collectors.toList());
+        return mapToListDTOs(productRepository.findByOrderByIdDesc(PageRequest.of(0, limit)));
     }
 
     // Lấy sản phẩm bán chạy
-    @Cacheable(value = "bestSellingProducts", key = "#limit")
+    @Cacheable(value = "bestSellingProducts", key = "#limit", sync = true)
     public List<ProductDTO> getBestSellingProducts(int limit) {
         if (limit <= 0) {
             throw new IllegalArgumentException("Giới hạn phải lớn hơn 0");
@@ -76,16 +101,17 @@ public class ProductService {
         List<Product> products = productRepository.findTop5ByOrderBySoldQuantityDesc().stream()
                 .limit(limit)
                 .collect(Collectors.toList());
-        return products.stream().map(this::mapToDTOWithDiscountCheck).collect(Collectors.toList());
+        return mapToListDTOs(products);
     }
 
     // Lấy sản phẩm theo ID
-    @Cacheable(value = "product", key = "#id", unless = "#result == null")
+    @Cacheable(value = "product", key = "#id", sync = true)
     public Optional<ProductDTO> getProductById(Long id) {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID sản phẩm không hợp lệ");
         }
-        return productRepository.findById(id).map(this::mapToDTOWithDiscountCheck);
+        // Trang chi tiết là nơi duy nhất nạp đầy đủ đồ thị sản phẩm (ảnh, tồn kho, lịch sử tồn kho)
+        return productRepository.findDetailById(id).map(this::mapToDTOWithDiscountCheck);
     }
 
     // Lấy sản phẩm tương tự
@@ -101,7 +127,7 @@ public class ProductService {
                 .orElseThrow(() -> new IllegalArgumentException("Sản phẩm không tồn tại với ID: " + productId));
 
         // Tính khoảng giá ±20%
-        BigDecimal currentPrice = getCurrentPrice(product, LocalDateTime.now());
+        BigDecimal currentPrice = pricingService.currentPrice(product);
         BigDecimal minPrice = currentPrice.multiply(BigDecimal.valueOf(0.8));
         BigDecimal maxPrice = currentPrice.multiply(BigDecimal.valueOf(1.2));
 
@@ -115,62 +141,78 @@ public class ProductService {
                 pageable
         );
 
-        return relatedProducts.stream()
-                .map(this::mapToDTOWithDiscountCheck)
-                .collect(Collectors.toList());
+        return mapToListDTOs(relatedProducts);
     }
 
     public Page<ProductDTO> getFilteredProducts(String searchKeyword, BigDecimal minPrice, BigDecimal maxPrice, String sortBy, Pageable pageable) {
-        List<Product> products;
+        Set<Long> idFilter = null;
+        if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
+            idFilter = searchIndex.matchingIds(searchKeyword.trim());
+            if (idFilter.isEmpty()) {
+                return new PageImpl<>(List.of(), pageable, 0);
+            }
+        }
+
+        ProductCatalogIndex.PageSlice slice = catalogIndex.query(
+                minPrice, maxPrice, idFilter, ProductCatalogIndex.SortOrder.from(sortBy),
+                pageable.getOffset(), pageable.getPageSize());
+
+        // Chỉ nạp entity cho các id thuộc trang hiện tại
+        List<ProductDTO> productDTOs = mapToListDTOs(productRepository.findAllByIdInOrder(slice.ids()));
+
+        return new PageImpl<>(productDTOs, pageable, slice.total());
+    }
 
+    // Phân trang keyset: chi phí mỗi trang không phụ thuộc vào độ sâu, cursor là token mờ do trang trước trả về
+    public ProductCursorPageDTO getFilteredProductsByCursor(String searchKeyword, BigDecimal minPrice, BigDecimal maxPrice,
+                                                            String sortBy, String cursor, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Kích thước trang phải lớn hơn 0");
+        }
+
+        String sort = sortBy != null ? sortBy.toLowerCase() : "";
+        String[] after = decodeCursor(cursor, sort);
+        Set<Long> idFilter = null;
         if (searchKeyword != null && !searchKeyword.trim().isEmpty()) {
-            products = productRepository.findByNameContainingIgnoreCase(searchKeyword.trim(), Pageable.unpaged()).getContent();
-        } else {
-            products = productRepository.findAll();
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        if (minPrice != null || maxPrice != null) {
-            products = products.stream()
-                    .filter(p -> {
-                        BigDecimal currentPrice = getCurrentPrice(p, now);
-                        boolean matchesMin = minPrice == null || currentPrice.compareTo(minPrice) >= 0;
-                        boolean matchesMax = maxPrice == null || currentPrice.compareTo(maxPrice) <= 0;
-                        return matchesMin && matchesMax;
-                    })
-                    .collect(Collectors.toList());
-        }
-
-        switch (sortBy != null ? sortBy.toLowerCase() : "") {
-            case "newest":
-                products.sort((a, b) -> b.getId().compareTo(a.getId()));
-                break;
-            case "bestselling":
-                products.sort((a, b) -> b.getSoldQuantity().compareTo(a.getSoldQuantity()));
-                break;
-            case "priceasc":
-                products.sort((a, b) -> getCurrentPrice(a, now).compareTo(getCurrentPrice(b, now)));
-                break;
-            case "pricedesc":
-                products.sort((a, b) -> getCurrentPrice(b, now).compareTo(getCurrentPrice(a, now)));
-                break;
-        }
-
-        int start = (int) pageable.getOffset();
-        if (start >= products.size()) {
-            return new PageImpl<>(List.of(), pageable, products.size());
-        }
-        int end = Math.min(start + pageable.getPageSize(), products.size());
-
-        List<ProductDTO> productDTOs = products.subList(start, end).stream()
-                .map(this::mapToDTOWithDiscountCheck)
-                .collect(Collectors.toList());
+            idFilter = searchIndex.matchingIds(searchKeyword.trim());
+            if (idFilter.isEmpty()) {
+                return ProductCursorPageDTO.builder().content(List.of()).hasNext(false).size(size).build();
+            }
+        }
 
-        return new PageImpl<>(productDTOs, pageable, products.size());
+        Sort order = switch (sort) {
+            case "newest" -> Sort.by(Sort.Direction.DESC, "id");
+            case "bestselling" -> Sort.by(Sort.Direction.DESC, "soldQuantity", "id");
+            case "priceasc" -> Sort.by(Sort.Direction.ASC, "effectivePrice", "id");
+            case "pricedesc" -> Sort.by(Sort.Direction.DESC, "effectivePrice", "id");
+            default -> Sort.by(Sort.Direction.ASC, "id");
+        };
+        // Lấy dư một phần tử để biết còn trang sau hay không
+        List<Product> products = productRepository.findTop(
+                keysetSpecification(idFilter, minPrice, maxPrice, sort, after), order, size + 1);
+
+        boolean hasNext = products.size() > size;
+        List<Product> pageContent = hasNext ? products.subList(0, size) : products;
+        String nextCursor = null;
+        if (hasNext) {
+            Product last = pageContent.get(pageContent.size() - 1);
+            String sortKey = switch (sort) {
+                case "bestselling" -> String.valueOf(last.getSoldQuantity());
+                case "priceasc", "pricedesc" -> last.getEffectivePrice().toPlainString();
+                default -> String.valueOf(last.getId());
+            };
+            nextCursor = encodeCursor(sort, sortKey, last.getId());
+        }
+
+        return ProductCursorPageDTO.builder()
+                .content(mapToListDTOs(pageContent))
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .size(size)
+                .build();
     }
 
     @Transactional
-    @CacheEvict(value = "products", allEntries = true)
     public ProductDTO createProduct(Product product) {
         logger.info("Creating product: {}", product.getName());
 
@@ -190,23 +232,27 @@ public class ProductService {
         inventory.setLastUpdated(LocalDateTime.now());
         inventoryRepository.save(inventory);
         savedProduct.setInventory(inventory);
+        inventorySummary.track(savedProduct.getId(), savedProduct.getCategory().getId(),
+                initialQuantity, inventory.getMinQuantity());
 
-        InventoryLog log = new InventoryLog();
-        log.setProduct(savedProduct);
-        log.setOldQuantity(0);
-        log.setNewQuantity(initialQuantity);
-        log.setReason("Khởi tạo sản phẩm");
-        log.setUserId(1L);
-        log.setTimestamp(LocalDateTime.now());
-        inventoryLogRepository.save(log);
+        inventoryLedger.append(List.of(new InventoryLedgerEntry(savedProduct.getId(), 0, initialQuantity,
+                "Khởi tạo sản phẩm", 1L, LocalDateTime.now())));
 
         saveProductImages(savedProduct, product.getImages());
-        preloadCacheService.preloadProductCache();
+        catalogIndex.upsert(savedProduct);
+        searchIndex.upsert(savedProduct);
+        suggestTrie.upsert(savedProduct);
+        // Sản phẩm mới làm đổi tổng số trang và danh sách mới nhất
+        cacheInvalidator.membershipChanged(ProductCacheInvalidator.PRODUCTS, ProductCacheInvalidator.NEWEST);
+        discountTimeline.windowChanged(savedProduct.getId(), discountWindowStart(savedProduct), savedProduct.getDiscountEndDate());
+        pricingService.productChanged(savedProduct);
+        if (savedProduct.isFeatured()) {
+            cacheInvalidator.membershipChanged(ProductCacheInvalidator.FEATURED);
+        }
         return mapToDTOWithDiscountCheck(savedProduct);
     }
 
     @Transactional
-    @CacheEvict(value = "products", allEntries = true)
     public ProductDTO updateProduct(Long id, Product updatedProduct) {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID sản phẩm không hợp lệ");
@@ -216,6 +262,9 @@ public class ProductService {
             validateProduct(updatedProduct);
             validateCategoryAndSupplier(updatedProduct);
 
+            boolean nameChanged = !Objects.equals(product.getName(), updatedProduct.getName());
+            boolean featuredChanged = product.isFeatured() != updatedProduct.isFeatured();
+
             product.setName(updatedProduct.getName());
             product.setDescription(updatedProduct.getDescription());
             product.setCostPrice(updatedProduct.getCostPrice());
@@ -247,24 +296,30 @@ public class ProductService {
             inventory.setLastUpdated(LocalDateTime.now());
             inventoryRepository.save(inventory);
             savedProduct.setInventory(inventory);
+            inventorySummary.track(id, savedProduct.getCategory().getId(), newQuantity, inventory.getMinQuantity());
 
             if (oldQuantity != newQuantity) {
-                InventoryLog log = new InventoryLog();
-                log.setProduct(savedProduct);
-                log.setOldQuantity(oldQuantity);
-                log.setNewQuantity(newQuantity);
-                log.setReason("Cập nhật sản phẩm");
-                log.setUserId(1L);
-                log.setTimestamp(LocalDateTime.now());
-                inventoryLogRepository.save(log);
+                inventoryLedger.append(List.of(new InventoryLedgerEntry(savedProduct.getId(), oldQuantity, newQuantity,
+                        "Cập nhật sản phẩm", 1L, LocalDateTime.now())));
+            }
+            catalogIndex.upsert(savedProduct);
+            searchIndex.upsert(savedProduct);
+            suggestTrie.upsert(savedProduct);
+            cacheInvalidator.productChanged(id);
+            discountTimeline.windowChanged(id, discountWindowStart(savedProduct), savedProduct.getDiscountEndDate());
+            pricingService.productChanged(savedProduct);
+            if (nameChanged) {
+                // Đổi tên làm đổi kết quả của các trang tìm kiếm theo từ khóa
+                cacheInvalidator.membershipChanged(ProductCacheInvalidator.PRODUCTS);
+            }
+            if (featuredChanged) {
+                cacheInvalidator.membershipChanged(ProductCacheInvalidator.FEATURED);
             }
-            preloadCacheService.preloadProductCache();
             return mapToDTOWithDiscountCheck(savedProduct);
         }).orElseThrow(() -> new IllegalArgumentException("Sản phẩm không tồn tại với ID: " + id));
     }
 
     @Transactional
-    @CacheEvict(value = "products", allEntries = true)
     public void deleteProduct(Long id) {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("ID sản phẩm không hợp lệ");
@@ -274,7 +329,15 @@ public class ProductService {
                 .orElseThrow(() -> new IllegalArgumentException("Sản phẩm không tồn tại với ID: " + id));
 
         productRepository.deleteById(id);
-        preloadCacheService.preloadProductCache();
+        inventorySummary.untrack(id);
+        catalogIndex.remove(id);
+        searchIndex.remove(id);
+        suggestTrie.remove(id);
+        discountTimeline.windowChanged(id, null, null);
+        pricingService.productRemoved(id);
+        // Các danh sách chứa sản phẩm được xóa theo tag; trang phân trang còn đổi tổng số nên xóa hết
+        cacheInvalidator.productChanged(id);
+        cacheInvalidator.membershipChanged(ProductCacheInvalidator.PRODUCTS);
     }
 
     @Transactional
@@ -289,26 +352,11 @@ public class ProductService {
         logger.info("Áp dụng giảm giá cho tất cả sản phẩm: percentage={}, fixedAmount={}, startDateTime={}, endDateTime={}",
                 percentage, fixedAmount, startDateTime, endDateTime);
 
-        List<Product> products = productRepository.findAll();
-        if (products == null || products.isEmpty()) {
+        int updated = bulkPricingService.apply(null, new BulkPricingService.LinearRule(percentage, fixedAmount),
+                startDateTime, endDateTime);
+        if (updated == 0) {
             logger.warn("Không tìm thấy sản phẩm để áp dụng giảm giá");
-            return;
-        }
-
-        for (Product product : products) {
-            if (product.getSellingPrice() == null) {
-                logger.error("Selling price is null for product: {}", product.getId());
-                continue;
-            }
-            BigDecimal newPrice = calculateDiscount(product.getSellingPrice(), percentage, fixedAmount);
-            logger.info("Giá giảm mới của {}: từ {} → {}", product.getName(), product.getSellingPrice(), newPrice);
-            product.setDiscountedPrice(newPrice);
-            product.setDiscountStartDate(startDateTime);
-            product.setDiscountEndDate(endDateTime);
         }
-
-        productRepository.saveAll(products);
-        logger.info("Đã áp dụng giảm giá cho {} sản phẩm", products.size());
     }
 
     @Transactional
@@ -323,39 +371,11 @@ public class ProductService {
             throw new IllegalArgumentException("Thời gian giảm giá không hợp lệ");
         }
 
-        List<Product> products = productRepository.findAllById(productIds);
-        if (products.isEmpty()) {
+        int updated = bulkPricingService.apply(List.copyOf(new LinkedHashSet<>(productIds)),
+                new BulkPricingService.LinearRule(percentage, fixedAmount), startDateTime, endDateTime);
+        if (updated == 0) {
             throw new IllegalArgumentException("Không tìm thấy sản phẩm nào để áp dụng giảm giá");
         }
-
-        for (Product product : products) {
-            if (product.getSellingPrice() == null) {
-                logger.warn("Selling price is null for product: {}", product.getId());
-                continue;
-            }
-            BigDecimal newPrice = calculateDiscount(product.getSellingPrice(), percentage, fixedAmount);
-            product.setDiscountedPrice(newPrice);
-            product.setDiscountStartDate(startDateTime);
-            product.setDiscountEndDate(endDateTime);
-        }
-
-        productRepository.saveAll(products);
-    }
-
-    @Transactional
-    @Scheduled(cron = "0 * * * * *")
-    public void clearExpiredDiscounts() {
-        LocalDateTime now = LocalDateTime.now();
-        List<Product> expiredProducts = productRepository.findByDiscountEndDateBefore(now);
-        if (!expiredProducts.isEmpty()) {
-            for (Product product : expiredProducts) {
-                product.setDiscountedPrice(null);
-                product.setDiscountStartDate(null);
-                product.setDiscountEndDate(null);
-            }
-            productRepository.saveAll(expiredProducts);
-            logger.info("Đã xóa giảm giá cho {} sản phẩm hết hạn", expiredProducts.size());
-        }
     }
 
     @Transactional
@@ -378,6 +398,7 @@ public class ProductService {
         ProductImage productImage = new ProductImage();
         productImage.setImageUrl(imageUrl);
         productImage.setProduct(product);
+        cacheInvalidator.productChanged(productId);
         return mapProductImageToDTO(productImageRepository.save(productImage));
     }
 
@@ -390,6 +411,7 @@ public class ProductService {
         ProductImage productImage = productImageRepository.findById(imageId)
                 .orElseThrow(() -> new IllegalArgumentException("Ảnh sản phẩm không tồn tại với ID: " + imageId));
         productImageRepository.delete(productImage);
+        cacheInvalidator.productChanged(productImage.getProduct().getId());
     }
 
     private void validateProduct(Product product) {
@@ -428,22 +450,10 @@ public class ProductService {
         }
     }
 
-    private BigDecimal calculateDiscount(BigDecimal originalPrice, BigDecimal percentage, BigDecimal fixedAmount) {
-        if (originalPrice == null) {
-            throw new IllegalArgumentException("Giá gốc không được trống");
-        }
-
-        BigDecimal discounted = originalPrice;
-
-        if (percentage != null && percentage.compareTo(BigDecimal.ZERO) > 0) {
-            discounted = originalPrice.multiply(BigDecimal.ONE.subtract(percentage.divide(BigDecimal.valueOf(100))));
-        }
-
-        if (fixedAmount != null && fixedAmount.compareTo(BigDecimal.ZERO) > 0) {
-            discounted = discounted.subtract(fixedAmount);
-        }
-
-        return discounted.max(BigDecimal.ZERO);
+    // Khung chỉ có hiệu lực khi đủ giá giảm và hai mốc; thiếu một trong ba thì coi như gỡ khung
+    private LocalDateTime discountWindowStart(Product product) {
+        return product.getDiscountedPrice() != null && product.getDiscountEndDate() != null
+                ? product.getDiscountStartDate() : null;
     }
 
     private void saveProductImages(Product product, List<ProductImage> images) {
@@ -462,9 +472,41 @@ public class ProductService {
         }
     }
 
+    // Dùng cho một sản phẩm đã nạp đủ đồ thị (trang chi tiết, sau khi lưu): mọi collection được chép sang list thường
     private ProductDTO mapToDTOWithDiscountCheck(Product product) {
-        LocalDateTime now = LocalDateTime.now();
-        BigDecimal currentPrice = getCurrentPrice(product, now);
+        List<ProductImageDTO> images = new ArrayList<>();
+        for (ProductImage image : Optional.ofNullable(product.getImages()).orElse(List.of())) {
+            images.add(mapProductImageToDTO(image));
+        }
+        // Chép ra list thường ngay trong session: DTO được cache và tuần tự hóa sau khi session đã đóng
+        List<InventoryLog> inventoryLogs = new ArrayList<>(Optional.ofNullable(product.getInventoryLogs()).orElse(List.of()));
+        return buildProductDTO(product, images, inventoryLogs);
+    }
+
+    // Map danh sách sản phẩm cho các trang liệt kê: ảnh của cả trang được nạp bằng một truy vấn,
+    // không truy cập collection lazy của từng entity. inventoryLogs để null: lịch sử tồn kho chỉ trả về ở trang chi tiết
+    private List<ProductDTO> mapToListDTOs(List<Product> products) {
+        if (products.isEmpty()) {
+            return List.of();
+        }
+        List<Long> ids = products.stream().map(Product::getId).collect(Collectors.toList());
+        Map<Long, List<ProductImageDTO>> imagesByProduct = new HashMap<>();
+        for (Object[] row : productImageRepository.findImageRowsByProductIds(ids)) {
+            imagesByProduct.computeIfAbsent((Long) row[0], k -> new ArrayList<>())
+                    .add(ProductImageDTO.builder().id((Long) row[1]).imageUrl((String) row[2]).build());
+        }
+
+        List<ProductDTO> result = new ArrayList<>(products.size());
+        for (Product product : products) {
+            result.add(buildProductDTO(product,
+                    imagesByProduct.getOrDefault(product.getId(), List.of()), null));
+        }
+        return result;
+    }
+
+    private ProductDTO buildProductDTO(Product product, List<ProductImageDTO> images,
+                                       List<InventoryLog> inventoryLogs) {
+        BigDecimal currentPrice = pricingService.currentPrice(product);
 
         return ProductDTO.builder()
                 .id(product.getId())
@@ -482,30 +524,82 @@ public class ProductService {
                 .ratingCount(product.getRatingCount())
                 .category(mapCategoryToDTO(product.getCategory()))
                 .supplier(mapSupplierToDTO(product.getSupplier()))
-                .images(
-                        Optional.ofNullable(product.getImages())
-                                .orElse(List.of())
-                                .stream()
-                                .map(this::mapProductImageToDTO)
-                                .collect(Collectors.toList())
-                )
+                .images(images)
                 .inventory(Optional.ofNullable(product.getInventory()).orElse(null))
-                .inventoryLogs(
-                        Optional.ofNullable(product.getInventoryLogs())
-                                .orElse(List.of())
-                )
+                .inventoryLogs(inventoryLogs)
                 .build();
     }
 
-    private BigDecimal getCurrentPrice(Product product, LocalDateTime now) {
-        if (product.getDiscountedPrice() != null &&
-                product.getDiscountStartDate() != null &&
-                product.getDiscountEndDate() != null &&
-                !now.isBefore(product.getDiscountStartDate()) &&
-                !now.isAfter(product.getDiscountEndDate())) {
-            return product.getDiscountedPrice();
+    // Chỉ thêm điều kiện cho bộ lọc có giá trị, để mỗi tổ hợp lọc/sắp xếp dùng thẳng index
+    // (id), (sold_quantity, id) hoặc (effective_price, id)
+    private Specification<Product> keysetSpecification(Set<Long> idFilter, BigDecimal minPrice, BigDecimal maxPrice,
+                                                       String sort, String[] after) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            Path<Long> id = root.get("id");
+            Path<BigDecimal> price = root.get("effectivePrice");
+            if (idFilter != null) {
+                predicates.add(id.in(idFilter));
+            }
+            if (minPrice != null) {
+                predicates.add(cb.greaterThanOrEqualTo(price, minPrice));
+            }
+            if (maxPrice != null) {
+                predicates.add(cb.lessThanOrEqualTo(price, maxPrice));
+            }
+            boolean byPrice = sort.equals("priceasc") || sort.equals("pricedesc");
+            if (byPrice) {
+                // Sản phẩm chưa có giá không có khóa keyset
+                predicates.add(cb.isNotNull(price));
+            }
+            if (after != null) {
+                Long afterId = Long.valueOf(after[1]);
+                switch (sort) {
+                    case "newest" -> predicates.add(cb.lessThan(id, afterId));
+                    case "bestselling" -> {
+                        Integer afterSold = Integer.valueOf(after[0]);
+                        Path<Integer> sold = root.get("soldQuantity");
+                        predicates.add(cb.or(cb.lessThan(sold, afterSold),
+                                cb.and(cb.equal(sold, afterSold), cb.lessThan(id, afterId))));
+                    }
+                    case "priceasc" -> {
+                        BigDecimal afterPrice = new BigDecimal(after[0]);
+                        predicates.add(cb.or(cb.greaterThan(price, afterPrice),
+                                cb.and(cb.equal(price, afterPrice), cb.greaterThan(id, afterId))));
+                    }
+                    case "pricedesc" -> {
+                        BigDecimal afterPrice = new BigDecimal(after[0]);
+                        predicates.add(cb.or(cb.lessThan(price, afterPrice),
+                                cb.and(cb.equal(price, afterPrice), cb.lessThan(id, afterId))));
+                    }
+                    default -> predicates.add(cb.greaterThan(id, afterId));
+                }
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private String encodeCursor(String sort, String sortKey, Long id) {
+        String raw = sort + "|" + sortKey + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Trả về [sortKey, id] hoặc null nếu không có cursor; cursor phải được tạo cho đúng kiểu sắp xếp
+    private String[] decodeCursor(String cursor, String sort) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", -1);
+            if (parts.length != 3 || !parts[0].equals(sort)) {
+                throw new IllegalArgumentException("Cursor không hợp lệ");
+            }
+            Long.parseLong(parts[2]);
+            return new String[]{parts[1], parts[2]};
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor không hợp lệ", e);
         }
-        return product.getSellingPrice();
     }
 
     private CategoryDTO mapCategoryToDTO(Category category) {
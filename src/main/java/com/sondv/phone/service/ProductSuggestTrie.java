@@ -0,0 +1,438 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.dto.ProductSuggestionDTO;
+import com.sondv.phone.entity.Product;
+import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.TextNormalizer;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Radix trie trên tên sản phẩm đã chuẩn hóa, phục vụ gợi ý khi gõ (typeahead) mà không truy cập DB.
+ * <p>
+ * Mỗi nút lưu sẵn top-{@value #MAX_K} sản phẩm tốt nhất trong cây con (theo số lượng đã bán và đánh giá),
+ * nên một truy vấn tiền tố chỉ tốn O(độ dài tiền tố + k). Ngoài tên đầy đủ, trie còn lưu các hậu tố bắt đầu
+ * từ mỗi từ ("15 pro max") để gõ giữa tên vẫn ra kết quả. Tổng số khóa không vượt {@code product.suggest.max-keys}:
+ * hậu tố bị bỏ trước, hết ngân sách thì sản phẩm mới không được đưa vào trie cho tới lần dựng lại kế tiếp.
+ * <p>
+ * Trọng số được cập nhật khi sản phẩm thay đổi (sửa, đánh giá) và khi đơn hoàn tất làm tăng số lượng đã bán;
+ * chỉ các nút trên đường đi của khóa của sản phẩm đó được tính lại top.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductSuggestTrie {
+
+    public static final int MAX_K = 10;
+
+    private static final int MAX_SUFFIXES_PER_NAME = 4;
+    private static final double RATING_WEIGHT = 20.0;
+    private static final long[] EMPTY = new long[0];
+
+    public record Stats(int products, int keys, int nodes, long estimatedBytes, int maxKeys) {
+    }
+
+    private record Entry(long id, String name, int soldQuantity, double rating, double weight, List<String> keys) {
+    }
+
+    private static final class Node {
+        String edge;
+        final Map<Character, Node> children = new HashMap<>(4);
+        Set<Long> terminals;
+        long[] top = EMPTY;
+
+        Node(String edge) {
+            this.edge = edge;
+        }
+    }
+
+    private final ProductRepository productRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${product.suggest.max-keys:100000}")
+    private int maxKeys;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private Node root = new Node("");
+    private int keyCount = 0;
+    private int nodeCount = 1;
+    private int edgeChars = 0;
+    private int skipped = 0;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("product.suggest.trie.nodes", this, t -> t.stats().nodes()).register(meterRegistry);
+        Gauge.builder("product.suggest.trie.keys", this, t -> t.stats().keys()).register(meterRegistry);
+        Gauge.builder("product.suggest.trie.bytes", this, t -> t.stats().estimatedBytes()).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            List<Object[]> rows = productRepository.findAllSearchFields();
+            lock.writeLock().lock();
+            try {
+                entries.clear();
+                root = new Node("");
+                keyCount = 0;
+                nodeCount = 1;
+                edgeChars = 0;
+                skipped = 0;
+                for (Object[] row : rows) {
+                    insertEntry((Long) row[0], (String) row[1],
+                            row[2] != null ? ((Number) row[2]).intValue() : 0,
+                            row[3] != null ? ((Number) row[3]).doubleValue() : 0.0);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            Stats stats = stats();
+            log.info("Đã dựng trie gợi ý: {} sản phẩm, {} khóa, {} nút, ~{} KB",
+                    stats.products(), stats.keys(), stats.nodes(), stats.estimatedBytes() / 1024);
+            if (skipped > 0) {
+                log.warn("Trie gợi ý đạt giới hạn {} khóa, bỏ qua {} sản phẩm", maxKeys, skipped);
+            }
+        } catch (Exception e) {
+            log.error("Không thể dựng trie gợi ý sản phẩm", e);
+        }
+    }
+
+    public void upsert(Product product) {
+        if (product == null || product.getId() == null) {
+            return;
+        }
+        long id = product.getId();
+        String name = product.getName();
+        int sold = product.getSoldQuantity() != null ? product.getSoldQuantity() : 0;
+        double rating = product.getRating() != null ? product.getRating() : 0.0;
+        TransactionUtils.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                Entry current = entries.get(id);
+                if (current != null && current.name().equals(name)) {
+                    // Tên không đổi: giữ nguyên khóa, chỉ cập nhật trọng số
+                    reweight(current, sold, rating);
+                } else {
+                    removeEntry(id);
+                    insertEntry(id, name, sold, rating);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // Cộng thêm số lượng đã bán (theo id sản phẩm) sau khi đơn hoàn tất
+    public void soldQuantitiesChanged(Map<Long, Integer> deltas) {
+        if (deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> copy = Map.copyOf(deltas);
+        TransactionUtils.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                copy.forEach((id, delta) -> {
+                    Entry current = entries.get(id);
+                    if (current != null) {
+                        reweight(current, current.soldQuantity() + delta, current.rating());
+                    }
+                });
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public void remove(Long productId) {
+        if (productId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                removeEntry(productId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    public List<ProductSuggestionDTO> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            long[] top = findTop(key);
+            List<ProductSuggestionDTO> result = new ArrayList<>(Math.min(limit, top.length));
+            for (int i = 0; i < top.length && result.size() < limit; i++) {
+                Entry e = entries.get(top[i]);
+                if (e != null) {
+                    result.add(ProductSuggestionDTO.builder()
+                            .id(e.id())
+                            .name(e.name())
+                            .soldQuantity(e.soldQuantity())
+                            .rating(e.rating())
+                            .build());
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            // Ước lượng thô: header object + map con + mảng top cho mỗi nút, 2 byte/ký tự cạnh, 8 byte/id terminal
+            long bytes = (long) nodeCount * (16 + 48 + 16 + 8L * MAX_K) + 2L * edgeChars + 8L * keyCount;
+            return new Stats(entries.size(), keyCount, nodeCount, bytes, maxKeys);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] findTop(String key) {
+        Node node = root;
+        String rest = key;
+        while (!rest.isEmpty()) {
+            Node child = node.children.get(rest.charAt(0));
+            if (child == null) {
+                return EMPTY;
+            }
+            if (rest.startsWith(child.edge)) {
+                rest = rest.substring(child.edge.length());
+                node = child;
+            } else if (child.edge.startsWith(rest)) {
+                // Tiền tố kết thúc giữa cạnh: cây con của child chính là tập kết quả
+                return child.top;
+            } else {
+                return EMPTY;
+            }
+        }
+        return node.top;
+    }
+
+    private void insertEntry(long id, String name, int soldQuantity, double rating) {
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        if (keyCount >= maxKeys) {
+            skipped++;
+            log.debug("Trie gợi ý đã đủ {} khóa, bỏ qua sản phẩm {}", maxKeys, id);
+            return;
+        }
+        double weight = weight(soldQuantity, rating);
+
+        // Tên đầy đủ được lưu trước; hậu tố theo từ chỉ được thêm khi còn trong ngân sách bộ nhớ
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(normalized);
+        String[] words = normalized.split(" ");
+        int offset = 0;
+        for (int i = 0; i < words.length - 1 && keys.size() <= MAX_SUFFIXES_PER_NAME; i++) {
+            offset += words[i].length() + 1;
+            if (keyCount + keys.size() >= maxKeys) {
+                break;
+            }
+            keys.add(normalized.substring(offset));
+        }
+
+        Entry entry = new Entry(id, name, soldQuantity, rating, weight, new ArrayList<>(keys));
+        entries.put(id, entry);
+        for (String key : entry.keys()) {
+            insertKey(key, id);
+        }
+    }
+
+    private void reweight(Entry current, int soldQuantity, double rating) {
+        double weight = weight(soldQuantity, rating);
+        Entry entry = new Entry(current.id(), current.name(), soldQuantity, rating, weight, current.keys());
+        entries.put(entry.id(), entry);
+        if (weight == current.weight()) {
+            return;
+        }
+        for (String key : entry.keys()) {
+            List<Node> path = pathOf(key);
+            for (int i = path.size() - 1; i >= 0; i--) {
+                recomputeTop(path.get(i));
+            }
+        }
+    }
+
+    // Các nút từ gốc tới nút kết thúc của khóa; rỗng nếu khóa không có trong trie
+    private List<Node> pathOf(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        String rest = key;
+        while (!rest.isEmpty()) {
+            Node child = node.children.get(rest.charAt(0));
+            if (child == null || !rest.startsWith(child.edge)) {
+                return List.of();
+            }
+            rest = rest.substring(child.edge.length());
+            node = child;
+            path.add(node);
+        }
+        return path;
+    }
+
+    private static double weight(int soldQuantity, double rating) {
+        return soldQuantity + rating * RATING_WEIGHT;
+    }
+
+    private void removeEntry(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (String key : entry.keys()) {
+            removeKey(key, id);
+        }
+    }
+
+    private void insertKey(String key, long id) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        String rest = key;
+        while (true) {
+            if (rest.isEmpty()) {
+                if (node.terminals == null) {
+                    node.terminals = new LinkedHashSet<>(2);
+                }
+                node.terminals.add(id);
+                break;
+            }
+            Node child = node.children.get(rest.charAt(0));
+            if (child == null) {
+                Node leaf = new Node(rest);
+                leaf.terminals = new LinkedHashSet<>(2);
+                leaf.terminals.add(id);
+                node.children.put(rest.charAt(0), leaf);
+                nodeCount++;
+                edgeChars += rest.length();
+                path.add(leaf);
+                break;
+            }
+            int common = commonPrefix(child.edge, rest);
+            if (common < child.edge.length()) {
+                // Tách cạnh: node -> mid -> child
+                Node mid = new Node(child.edge.substring(0, common));
+                child.edge = child.edge.substring(common);
+                mid.children.put(child.edge.charAt(0), child);
+                mid.top = child.top;
+                node.children.put(mid.edge.charAt(0), mid);
+                nodeCount++;
+                child = mid;
+            }
+            path.add(child);
+            node = child;
+            rest = rest.substring(common);
+        }
+        keyCount++;
+        for (int i = path.size() - 1; i >= 0; i--) {
+            recomputeTop(path.get(i));
+        }
+    }
+
+    private void removeKey(String key, long id) {
+        List<Node> path = pathOf(key);
+        if (path.isEmpty()) {
+            return;
+        }
+        Node node = path.get(path.size() - 1);
+        if (node.terminals == null || !node.terminals.remove(id)) {
+            return;
+        }
+        keyCount--;
+        if (node.terminals.isEmpty()) {
+            node.terminals = null;
+        }
+
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node n = path.get(i);
+            if (i > 0 && n.terminals == null) {
+                Node parent = path.get(i - 1);
+                if (n.children.isEmpty()) {
+                    parent.children.remove(n.edge.charAt(0));
+                    nodeCount--;
+                    edgeChars -= n.edge.length();
+                    continue;
+                }
+                if (n.children.size() == 1) {
+                    // Gộp nút trung gian chỉ còn một con để giữ trie ở dạng nén
+                    Node only = n.children.values().iterator().next();
+                    only.edge = n.edge + only.edge;
+                    parent.children.put(only.edge.charAt(0), only);
+                    nodeCount--;
+                    continue;
+                }
+            }
+            recomputeTop(n);
+        }
+    }
+
+    // top của nút = MAX_K id có trọng số cao nhất trong các terminal của nút và top của các con
+    private void recomputeTop(Node node) {
+        Map<Long, Double> candidates = new LinkedHashMap<>();
+        if (node.terminals != null) {
+            for (Long id : node.terminals) {
+                addCandidate(candidates, id);
+            }
+        }
+        for (Node child : node.children.values()) {
+            for (long id : child.top) {
+                addCandidate(candidates, id);
+            }
+        }
+        node.top = candidates.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.<Long, Double>comparingByKey()))
+                .limit(MAX_K)
+                .mapToLong(Map.Entry::getKey)
+                .toArray();
+    }
+
+    private void addCandidate(Map<Long, Double> candidates, long id) {
+        Entry e = entries.get(id);
+        if (e != null) {
+            candidates.putIfAbsent(id, e.weight());
+        }
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static String normalize(String text) {
+        return TextNormalizer.fold(text).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+}
@@ -23,6 +23,8 @@ public class ReviewService {
     private final ReviewRepository reviewRepository;
     private final OrderDetailRepository orderDetailRepository;
     private final ProductRepository productRepository;
+    private final ProductSuggestTrie suggestTrie;
+    private final ProductCacheInvalidator cacheInvalidator;
 
     @Transactional
     public Review addReview(Review review) {
@@ -78,6 +80,8 @@ public class ReviewService {
         product.setRating(avgRating != null ? avgRating : 0.0);
         product.setRatingCount(count != null ? count.intValue() : 0);
         productRepository.save(product);
+        suggestTrie.upsert(product);
+        cacheInvalidator.productChanged(product.getId());
     }
 
     @Cacheable(value = "pagedReviews", key = "#productId + '-' + #pageable.pageNumber + '-' + #pageable.pageSize")
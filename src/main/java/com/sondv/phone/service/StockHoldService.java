@@ -0,0 +1,261 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.PaymentMethod;
+import com.sondv.phone.exception.ApiException;
+import com.sondv.phone.entity.PaymentStatus;
+import com.sondv.phone.repository.OrderDetailRepository;
+import com.sondv.phone.repository.OrderRepository;
+import com.sondv.phone.repository.PaymentRepository;
+import com.sondv.phone.util.TimerWheel;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Giữ hàng có thời hạn cho đơn thanh toán online (VNPay, Momo).
+ * <p>
+ * Tồn kho đã bị trừ khi tạo đơn ({@link StockReservationService}); dịch vụ này chỉ theo dõi hạn của từng đơn
+ * trên một {@link TimerWheel} trong bộ nhớ. Khi thanh toán được xác nhận, hold thành khoản trừ vĩnh viễn và
+ * bị gỡ khỏi vòng; khi hết hạn mà chưa thanh toán, đơn bị hủy và hàng được hoàn theo lô (gộp theo sản phẩm).
+ * Hold được dựng lại từ DB lúc khởi động, và một lượt đối soát định kỳ bắt các đơn quá hạn mà vòng của
+ * instance này không biết (đơn tạo ở instance khác). Việc hủy dùng UPDATE có điều kiện nên chạy trùng vẫn an toàn.
+ * <p>
+ * URL thanh toán online luôn hết hạn trước khi hold hết hạn ({@link #paymentExpiry}), nên khách không thể trả tiền
+ * cho một đơn đã bị hủy và hoàn kho; đơn còn URL đang hiệu lực sẽ không bị hủy.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockHoldService {
+
+    // Người thực hiện ghi vào inventory_logs cho các thay đổi do hệ thống tự chạy
+    public static final long SYSTEM_USER_ID = 0L;
+
+    private static final Set<PaymentMethod> ONLINE_METHODS = Set.of(PaymentMethod.VNPAY, PaymentMethod.MOMO);
+    private static final long TICK_MILLIS = 1_000;
+    private static final int WHEEL_TICKS = 4096;
+    private static final Duration MIN_PAYMENT_WINDOW = Duration.ofMinutes(2);
+
+    private final OrderRepository orderRepository;
+    private final OrderDetailRepository orderDetailRepository;
+    private final PaymentRepository paymentRepository;
+    private final StockReservationService stockReservationService;
+    private final OrderEventPublisher orderEventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.inventory.hold.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.inventory.hold.ttl:30m}")
+    private Duration ttl;
+
+    @Value("${app.inventory.hold.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.inventory.hold.reconcile-interval:5m}")
+    private Duration reconcileInterval;
+
+    @Value("${app.inventory.hold.payment-window:15m}")
+    private Duration paymentWindow;
+
+    @Value("${app.inventory.hold.payment-margin:2m}")
+    private Duration paymentMargin;
+
+    private final TimerWheel<Long> wheel = new TimerWheel<>(TICK_MILLIS, WHEEL_TICKS, System.currentTimeMillis());
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stock-hold-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Counter expiredCounter;
+    private Counter convertedCounter;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("inventory.hold.open", this, StockHoldService::openHolds).register(meterRegistry);
+        expiredCounter = meterRegistry.counter("inventory.hold.expired");
+        convertedCounter = meterRegistry.counter("inventory.hold.converted");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<Object[]> rows = orderRepository.findOpenHolds(ONLINE_METHODS);
+            synchronized (wheel) {
+                for (Object[] row : rows) {
+                    wheel.schedule((Long) row[0], deadline((LocalDateTime) row[1]));
+                }
+            }
+            log.info("Đã nạp {} hold chờ thanh toán, thời hạn {}", rows.size(), ttl);
+        } catch (Exception e) {
+            log.error("Không thể nạp danh sách hold từ DB", e);
+        }
+        sweeper.scheduleWithFixedDelay(this::sweep, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        sweeper.scheduleWithFixedDelay(this::reconcile, reconcileInterval.toMillis(), reconcileInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Bắt đầu giữ hàng cho đơn vừa tạo; chỉ áp dụng cho phương thức thanh toán online.
+     */
+    public void hold(Long orderId, LocalDateTime createdAt, PaymentMethod method) {
+        if (!enabled || orderId == null || !ONLINE_METHODS.contains(method)) {
+            return;
+        }
+        long deadline = deadline(createdAt);
+        TransactionUtils.afterCommit(() -> {
+            synchronized (wheel) {
+                wheel.schedule(orderId, deadline);
+            }
+        });
+    }
+
+    /**
+     * Thanh toán đã xác nhận: hàng đã trừ trở thành vĩnh viễn, bỏ hẹn giờ hoàn kho.
+     */
+    public void convert(Long orderId) {
+        if (discard(orderId)) {
+            convertedCounter.increment();
+        }
+    }
+
+    /**
+     * Đơn rời trạng thái PENDING bằng đường khác (hủy tay, admin đổi trạng thái).
+     */
+    public boolean discard(Long orderId) {
+        synchronized (wheel) {
+            return wheel.cancel(orderId);
+        }
+    }
+
+    /**
+     * Hạn cho URL thanh toán online phát hành lúc này: tối đa {@code payment-window}, và luôn sớm hơn hạn giữ hàng
+     * một khoảng {@code payment-margin} để cổng thanh toán từ chối trước khi đơn bị hủy và hoàn kho.
+     */
+    public LocalDateTime paymentExpiry(LocalDateTime createdAt) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiry = now.plus(paymentWindow);
+        if (enabled) {
+            LocalDateTime holdEnd = (createdAt != null ? createdAt : now).plus(ttl).minus(paymentMargin);
+            if (holdEnd.isBefore(expiry)) {
+                expiry = holdEnd;
+            }
+        }
+        if (expiry.isBefore(now.plus(MIN_PAYMENT_WINDOW))) {
+            throw new ApiException(400, "Đơn hàng đã hết thời gian giữ hàng, vui lòng đặt lại");
+        }
+        return expiry;
+    }
+
+    public int openHolds() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    private void sweep() {
+        try {
+            List<Long> due;
+            do {
+                synchronized (wheel) {
+                    due = wheel.advance(System.currentTimeMillis(), batchSize);
+                }
+                if (!due.isEmpty()) {
+                    expire(due);
+                }
+            } while (due.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("Lỗi khi quét hold hết hạn", e);
+        }
+    }
+
+    private void reconcile() {
+        try {
+            LocalDateTime before = LocalDateTime.now().minus(ttl);
+            List<Long> stale;
+            do {
+                stale = orderRepository.findExpiredHoldIds(ONLINE_METHODS, before, PageRequest.of(0, batchSize));
+                if (!stale.isEmpty()) {
+                    synchronized (wheel) {
+                        stale.forEach(wheel::cancel);
+                    }
+                    if (expire(stale) == 0) {
+                        break;
+                    }
+                }
+            } while (stale.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("Lỗi khi đối soát hold quá hạn", e);
+        }
+    }
+
+    // Hủy các đơn còn PENDING và chưa thanh toán trong một transaction, hoàn kho gộp theo sản phẩm.
+    // Đơn còn URL thanh toán hiệu lực bị bỏ qua ở đây và được lượt đối soát bắt lại sau khi URL hết hạn.
+    private int expire(List<Long> orderIds) {
+        Integer cancelled = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<Long> expired = new ArrayList<>(orderIds.size());
+            for (Long orderId : orderIds) {
+                if (orderRepository.cancelIfUnpaid(orderId, now) == 1) {
+                    expired.add(orderId);
+                }
+            }
+            if (expired.isEmpty()) {
+                return 0;
+            }
+            paymentRepository.updateStatusByOrderIds(expired, PaymentStatus.CANCELLED);
+
+            Map<Long, Integer> quantities = new HashMap<>();
+            for (Object[] row : orderDetailRepository.findProductQuantitiesByOrderIds(expired)) {
+                quantities.merge((Long) row[0], (Integer) row[1], Integer::sum);
+            }
+            stockReservationService.release(quantities, "Hết hạn giữ hàng", SYSTEM_USER_ID);
+            expired.forEach(orderId -> orderEventPublisher.publish(OrderEventPublisher.ORDER_CANCELLED, orderId));
+            return expired.size();
+        });
+        int count = cancelled != null ? cancelled : 0;
+        if (count > 0) {
+            expiredCounter.increment(count);
+            log.info("Đã hủy {} đơn quá hạn thanh toán và hoàn kho", count);
+        }
+        return count;
+    }
+
+    private long deadline(LocalDateTime createdAt) {
+        LocalDateTime start = createdAt != null ? createdAt : LocalDateTime.now();
+        return start.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + ttl.toMillis();
+    }
+}
@@ -0,0 +1,209 @@
+package com.sondv.phone.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sondv.phone.dto.InventoryLedgerEntry;
+import com.sondv.phone.dto.StockContentionDTO;
+import com.sondv.phone.entity.Product;
+import com.sondv.phone.repository.InventoryRepository;
+import com.sondv.phone.repository.ProductRepository;
+import com.sondv.phone.util.TransactionUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Giữ tồn kho cho đơn hàng bằng câu lệnh UPDATE có điều kiện ({@code quantity >= ?});
+ * hoàn kho đi qua {@link InventoryService#restoreInventory}.
+ * <p>
+ * Không đọc-kiểm-tra-ghi trong Java nên không thể bán vượt tồn kho dù nhiều checkout chạy song song;
+ * khóa dòng chỉ được lấy bởi chính câu UPDATE và các sản phẩm luôn được xử lý theo thứ tự id tăng dần
+ * để hai đơn chứa cùng sản phẩm không khóa chéo nhau. Mỗi SKU có bộ đếm tranh chấp riêng
+ * (số lượt, số lượt bị từ chối, số lượt chạy chồng lên nhau, thời gian chờ, thời gian giữ khóa dòng đến khi
+ * transaction kết thúc) xem qua {@link #topContended(int)}; chỉ giữ bộ đếm của {@value #MAX_TRACKED_SKUS} SKU được
+ * giữ hàng nhiều nhất.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StockReservationService {
+
+    private static final ZoneOffset VN_OFFSET = ZoneOffset.of("+07:00");
+    private static final int MAX_TRACKED_SKUS = 10_000;
+
+    private final InventoryRepository inventoryRepository;
+    private final ProductRepository productRepository;
+    private final InventoryLedger inventoryLedger;
+    private final InventoryService inventoryService;
+    private final ProductCacheInvalidator cacheInvalidator;
+    private final InventorySummaryService inventorySummary;
+    private final MeterRegistry meterRegistry;
+
+    private final Cache<Long, SkuStats> stats = Caffeine.newBuilder().maximumSize(MAX_TRACKED_SKUS).build();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private Timer reservedTimer;
+    private Timer rejectedTimer;
+    private Timer lockHeldTimer;
+
+    private static final class SkuStats {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder attempts = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder contended = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder lockHeldNanos = new LongAdder();
+        final LongAdder lockHeldCount = new LongAdder();
+        final AtomicLong maxLockHeldNanos = new AtomicLong();
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("inventory.reservation.inflight", inFlight, AtomicInteger::get).register(meterRegistry);
+        reservedTimer = Timer.builder("inventory.reservation").tag("result", "reserved").register(meterRegistry);
+        rejectedTimer = Timer.builder("inventory.reservation").tag("result", "rejected").register(meterRegistry);
+        lockHeldTimer = Timer.builder("inventory.reservation.lock.held").register(meterRegistry);
+    }
+
+    /**
+     * Trừ kho cho nhiều sản phẩm trong transaction hiện tại; thiếu hàng ở bất kỳ dòng nào sẽ ném lỗi
+     * và toàn bộ các dòng đã trừ được rollback cùng transaction.
+     */
+    @Transactional
+    public void reserve(Map<Long, Integer> quantities, String reason, Long userId) {
+        if (quantities == null || quantities.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now(VN_OFFSET);
+        List<InventoryLedgerEntry> entries = new ArrayList<>(quantities.size());
+
+        // Thứ tự id cố định để tránh deadlock giữa các đơn có nhiều sản phẩm chung
+        Map<Long, Integer> sorted = new TreeMap<>(quantities);
+        for (Map.Entry<Long, Integer> line : sorted.entrySet()) {
+            if (line.getValue() == null || line.getValue() <= 0) {
+                throw new IllegalArgumentException("Số lượng phải lớn hơn 0 (sản phẩm ID: " + line.getKey() + ")");
+            }
+        }
+
+        Map<Long, Long> lockedAt = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Long, Integer> line : sorted.entrySet()) {
+                lockedAt.put(line.getKey(), decrement(line.getKey(), line.getValue(), now));
+            }
+        } finally {
+            // Khóa dòng được giữ từ lúc UPDATE xong đến khi transaction commit/rollback, kể cả khi dòng sau thiếu hàng
+            TransactionUtils.afterCompletion(() -> recordLockHeld(lockedAt));
+        }
+
+        // Các dòng đang bị transaction này khóa sau UPDATE nên giá trị đọc lại chính là kết quả vừa ghi
+        for (Object[] row : inventoryRepository.findStockLevels(sorted.keySet())) {
+            Long productId = (Long) row[0];
+            int newQuantity = ((Number) row[1]).intValue();
+            int oldQuantity = newQuantity + sorted.get(productId);
+            productRepository.updateStock(productId, newQuantity);
+            inventorySummary.quantityChanged(productId, newQuantity);
+            inventoryService.detectThresholdCrossing(productId, oldQuantity, newQuantity, ((Number) row[2]).intValue());
+
+            entries.add(new InventoryLedgerEntry(productId, oldQuantity, newQuantity,
+                    reason != null ? reason : "Giảm kho", userId, now));
+        }
+
+        inventoryLedger.append(entries);
+        cacheInvalidator.productsChanged(quantities.keySet());
+    }
+
+    /**
+     * Hoàn lại số lượng đã giữ (hủy đơn, hết hạn giữ hàng) qua đường điều chỉnh theo lô của {@link InventoryService}.
+     */
+    @Transactional
+    public void release(Map<Long, Integer> quantities, String reason, Long userId) {
+        for (Integer quantity : quantities.values()) {
+            if (quantity == null || quantity <= 0) {
+                throw new IllegalArgumentException("Số lượng hoàn kho phải lớn hơn 0");
+            }
+        }
+        inventoryService.restoreInventory(quantities, reason, userId);
+    }
+
+    public List<StockContentionDTO> topContended(int limit) {
+        List<StockContentionDTO> result = new ArrayList<>(stats.size());
+        stats.asMap().forEach((productId, s) -> {
+            long attempts = s.attempts.sum();
+            long held = s.lockHeldCount.sum();
+            result.add(new StockContentionDTO(productId, attempts, s.rejected.sum(), s.contended.sum(),
+                    attempts > 0 ? s.totalNanos.sum() / attempts / 1_000 : 0,
+                    s.maxNanos.get() / 1_000,
+                    held > 0 ? s.lockHeldNanos.sum() / held / 1_000 : 0,
+                    s.maxLockHeldNanos.get() / 1_000));
+        });
+        result.sort(Comparator.comparingLong(StockContentionDTO::getContended)
+                .thenComparingLong(StockContentionDTO::getAttempts)
+                .reversed());
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    // Trả về thời điểm (nanoTime) dòng tồn kho bắt đầu bị transaction này khóa
+    private long decrement(Long productId, int quantity, LocalDateTime now) {
+        SkuStats s = stats.get(productId, id -> new SkuStats());
+        boolean updated = false;
+        long start = System.nanoTime();
+        long end = start;
+        if (s.inFlight.incrementAndGet() > 1) {
+            s.contended.increment();
+        }
+        inFlight.incrementAndGet();
+        try {
+            updated = inventoryRepository.decrementIfAvailable(productId, quantity, now) == 1;
+        } finally {
+            end = System.nanoTime();
+            long elapsed = end - start;
+            s.inFlight.decrementAndGet();
+            inFlight.decrementAndGet();
+            s.attempts.increment();
+            s.totalNanos.add(elapsed);
+            s.maxNanos.accumulateAndGet(elapsed, Math::max);
+            (updated ? reservedTimer : rejectedTimer).record(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        if (!updated) {
+            s.rejected.increment();
+            Integer available = inventoryRepository.findQuantityByProductId(productId)
+                    .orElseThrow(() -> new RuntimeException("Không tìm thấy tồn kho cho sản phẩm ID: " + productId));
+            String name = productRepository.findById(productId).map(Product::getName).orElse("ID " + productId);
+            log.info("Từ chối giữ {} sản phẩm {} (còn {})", quantity, productId, available);
+            throw new RuntimeException("Sản phẩm '" + name + "' không đủ hàng.");
+        }
+        return end;
+    }
+
+    private void recordLockHeld(Map<Long, Long> lockedAt) {
+        long now = System.nanoTime();
+        lockedAt.forEach((productId, since) -> {
+            long held = now - since;
+            SkuStats s = stats.get(productId, id -> new SkuStats());
+            s.lockHeldNanos.add(held);
+            s.lockHeldCount.increment();
+            s.maxLockHeldNanos.accumulateAndGet(held, Math::max);
+            lockHeldTimer.record(held, TimeUnit.NANOSECONDS);
+        });
+    }
+}
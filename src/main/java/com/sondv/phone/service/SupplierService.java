@@ -16,6 +16,9 @@ public class SupplierService {
     @Autowired
     private SupplierRepository supplierRepository;
 
+    @Autowired
+    private ProductCacheInvalidator cacheInvalidator;
+
     @Cacheable(value = "suppliers")
     public List<Supplier> getAllSuppliers() {
         return supplierRepository.findAll();
@@ -47,6 +50,7 @@ public class SupplierService {
             supplier.setEmail(supplierDetails.getEmail());
             supplier.setPhone(supplierDetails.getPhone());
             supplier.setAddress(supplierDetails.getAddress());
+            cacheInvalidator.supplierChanged(id);
             return supplierRepository.save(supplier);
         }).orElseThrow(() -> new RuntimeException("Supplier not found"));
     }
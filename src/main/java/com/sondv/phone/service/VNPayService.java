@@ -11,6 +11,8 @@ import javax.crypto.spec.SecretKeySpec;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 
 @Service
@@ -40,9 +42,10 @@ public class VNPayService {
      * Tạo URL thanh toán cho VNPay.
      * @param paymentId ID của thanh toán
      * @param amount Số tiền thanh toán
+     * @param expiresAt Thời điểm VNPay ngừng nhận thanh toán cho URL này (vnp_ExpireDate)
      * @return URL thanh toán
      */
-    public String createPayment(Long paymentId, double amount) {
+    public String createPayment(Long paymentId, double amount, LocalDateTime expiresAt) {
         paymentRepository.findById(paymentId)
                 .orElseThrow(() -> new RuntimeException("Không tìm thấy thanh toán với ID: " + paymentId));
 
@@ -74,8 +77,12 @@ public class VNPayService {
 
             Calendar cld = Calendar.getInstance(TimeZone.getTimeZone("Asia/Ho_Chi_Minh"));
             SimpleDateFormat df = new SimpleDateFormat("yyyyMMddHHmmss");
+            // VNPay đọc cả hai mốc theo giờ GMT+7, không phụ thuộc múi giờ của máy chủ
+            df.setTimeZone(cld.getTimeZone());
             String vnp_CreateDate = df.format(cld.getTime());
             vnp_Params.put("vnp_CreateDate", vnp_CreateDate);
+            String vnp_ExpireDate = df.format(Date.from(expiresAt.atZone(ZoneId.systemDefault()).toInstant()));
+            vnp_Params.put("vnp_ExpireDate", vnp_ExpireDate);
 
             List<String> fieldNames = new ArrayList<>(vnp_Params.keySet());
             Collections.sort(fieldNames);
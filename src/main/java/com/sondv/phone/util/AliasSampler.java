@@ -0,0 +1,78 @@
+package com.sondv.phone.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bảng alias (phương pháp Vose) để chọn ngẫu nhiên theo trọng số trong O(1): dựng một lần O(n),
+ * mỗi lần chọn chỉ cần một số nguyên và một số thực ngẫu nhiên từ {@link ThreadLocalRandom}.
+ * Bất biến sau khi dựng nên dùng chung giữa các luồng không cần đồng bộ.
+ */
+public final class AliasSampler<T> {
+
+    private final List<T> items;
+    private final double[] probability;
+    private final int[] alias;
+
+    // Phần tử có trọng số <= 0 không bao giờ được chọn
+    public AliasSampler(List<T> items, ToIntFunction<T> weight) {
+        int n = items.size();
+        this.items = List.copyOf(items);
+        this.probability = new double[n];
+        this.alias = new int[n];
+        if (n == 0) {
+            return;
+        }
+
+        long total = 0;
+        for (T item : items) {
+            total += Math.max(0, weight.applyAsInt(item));
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Tổng trọng số phải lớn hơn 0");
+        }
+
+        double[] scaled = new double[n];
+        Deque<Integer> small = new ArrayDeque<>();
+        Deque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (double) Math.max(0, weight.applyAsInt(items.get(i))) * n / total;
+            (scaled[i] < 1.0 ? small : large).push(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            (scaled[more] < 1.0 ? small : large).push(more);
+        }
+        // Phần dư do sai số dấu phẩy động: coi như đầy ô
+        while (!large.isEmpty()) {
+            probability[large.pop()] = 1.0;
+        }
+        while (!small.isEmpty()) {
+            probability[small.pop()] = 1.0;
+        }
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public List<T> items() {
+        return items;
+    }
+
+    public T sample() {
+        if (items.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int column = random.nextInt(items.size());
+        return random.nextDouble() < probability[column] ? items.get(column) : items.get(alias[column]);
+    }
+}
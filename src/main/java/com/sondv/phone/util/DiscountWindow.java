@@ -0,0 +1,58 @@
+package com.sondv.phone.util;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+
+/**
+ * Quy tắc khung giảm giá của sản phẩm, dùng chung cho entity, bảng giá và các chỉ mục trong bộ nhớ.
+ * <p>
+ * Khung tính cả hai đầu mút, so sánh bằng {@link LocalDateTime} theo múi giờ của server
+ * (cùng cách lưu discountStartDate/discountEndDate). Thiếu giá giảm hoặc một trong hai mốc thì không có khung.
+ * Mã giảm giá (validFrom/validTo) cũng theo quy tắc hai đầu mút này.
+ */
+public final class DiscountWindow {
+
+    // Độ phân giải của cột DATETIME(6): thời điểm đầu tiên sau mốc kết thúc mà khung đã đóng là end + 1 µs
+    public static final Duration RESOLUTION = Duration.ofNanos(1_000);
+
+    private DiscountWindow() {
+    }
+
+    public static boolean isOpen(BigDecimal discountedPrice, LocalDateTime start, LocalDateTime end,
+                                 LocalDateTime now) {
+        return discountedPrice != null && start != null && end != null
+                && !now.isBefore(start) && !now.isAfter(end);
+    }
+
+    // Giá hiệu lực tại thời điểm now: giá giảm nếu khung đang mở, ngược lại giá bán
+    public static BigDecimal priceAt(BigDecimal sellingPrice, BigDecimal discountedPrice, LocalDateTime start,
+                                     LocalDateTime end, LocalDateTime now) {
+        return isOpen(discountedPrice, start, end, now) ? discountedPrice : sellingPrice;
+    }
+
+    // Khung gồm cả end nên chỉ đóng từ mốc lưu được kế tiếp
+    public static LocalDateTime closesAt(LocalDateTime end) {
+        return end.plus(RESOLUTION);
+    }
+
+    public static OffsetDateTime closesAt(OffsetDateTime end) {
+        return end.plus(RESOLUTION);
+    }
+
+    // Thời điểm sớm nhất sau now mà giá hiệu lực có thể đổi; null nếu không còn mốc nào
+    public static LocalDateTime nextTransition(BigDecimal discountedPrice, LocalDateTime start, LocalDateTime end,
+                                               LocalDateTime now) {
+        if (discountedPrice == null || start == null || end == null) {
+            return null;
+        }
+        if (now.isBefore(start)) {
+            return start;
+        }
+        if (!now.isAfter(end)) {
+            return closesAt(end);
+        }
+        return null;
+    }
+}
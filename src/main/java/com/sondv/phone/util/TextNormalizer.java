@@ -0,0 +1,40 @@
+package com.sondv.phone.util;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public class TextNormalizer {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Bỏ dấu tiếng Việt (NFD + loại bỏ dấu kết hợp), giữ nguyên hoa/thường
+    public static String stripDiacritics(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(normalized).replaceAll("");
+    }
+
+    // Dạng dùng cho tìm kiếm: bỏ dấu, đ -> d, chữ thường
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        return stripDiacritics(text)
+                .replace('đ', 'd')
+                .replace('Đ', 'D')
+                .toLowerCase();
+    }
+
+    // Các từ của text ở dạng fold, không trùng, theo thứ tự xuất hiện
+    public static Set<String> searchTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : NON_WORD.split(fold(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,107 @@
+package com.sondv.phone.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashed timer wheel: thêm/hủy hẹn giờ O(1), mỗi tick chỉ duyệt một ô.
+ * <p>
+ * Khi độ dài vòng ({@code ticks * tickMillis}) lớn hơn thời hạn thường dùng, mỗi khóa chỉ bị duyệt đúng
+ * một lần lúc đến hạn nên chi phí quét không phụ thuộc số hẹn giờ đang mở. Lớp không an toàn luồng,
+ * nơi dùng tự đồng bộ.
+ */
+public class TimerWheel<K> {
+
+    private final long tickMillis;
+    private final int mask;
+    private final Set<K>[] slots;
+    private final Map<K, Long> deadlines = new HashMap<>();
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long tickMillis, int ticks, long nowMillis) {
+        if (tickMillis <= 0 || ticks <= 0) {
+            throw new IllegalArgumentException("tickMillis và ticks phải lớn hơn 0");
+        }
+        int size = Integer.highestOneBit(ticks - 1) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = Math.max(size, 1) - 1;
+        this.slots = new Set[mask + 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new LinkedHashSet<>();
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    // Đặt (hoặc đặt lại) hạn cho khóa; hạn đã qua sẽ được trả về ở lần advance kế tiếp
+    public void schedule(K key, long deadlineMillis) {
+        cancel(key);
+        long tick = tickOf(deadlineMillis);
+        deadlines.put(key, deadlineMillis);
+        slots[(int) (tick & mask)].add(key);
+    }
+
+    public boolean cancel(K key) {
+        Long deadline = deadlines.remove(key);
+        if (deadline == null) {
+            return false;
+        }
+        long tick = tickOf(deadline);
+        if (!slots[(int) (tick & mask)].remove(key)) {
+            // Khóa được đặt khi currentTick còn nhỏ hơn nên nằm ở ô khác; hiếm, quét toàn bộ
+            for (Set<K> slot : slots) {
+                if (slot.remove(key)) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Tiến kim đến nowMillis và trả về các khóa đã đến hạn (tối đa limit, phần còn lại giữ cho lần sau)
+    public List<K> advance(long nowMillis, int limit) {
+        List<K> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+        long steps = Math.min(targetTick - currentTick, slots.length);
+        for (long i = 1; i <= steps && expired.size() < limit; i++) {
+            collect(slots[(int) ((currentTick + i) & mask)], nowMillis, expired, limit);
+        }
+        if (expired.size() < limit) {
+            currentTick = Math.max(currentTick, targetTick);
+        }
+        return expired;
+    }
+
+    public boolean contains(K key) {
+        return deadlines.containsKey(key);
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+
+    // Làm tròn lên: ô của khóa chỉ được duyệt khi kim đã qua hạn. Làm tròn xuống thì hạn rơi cuối tick
+    // sẽ bị duyệt lúc chưa đến hạn và phải chờ thêm trọn một vòng
+    private long tickOf(long deadlineMillis) {
+        return Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+    }
+
+    private void collect(Set<K> slot, long nowMillis, List<K> expired, int limit) {
+        Iterator<K> it = slot.iterator();
+        while (it.hasNext() && expired.size() < limit) {
+            K key = it.next();
+            Long deadline = deadlines.get(key);
+            // Khóa của vòng sau vẫn ở lại ô này
+            if (deadline != null && deadline <= nowMillis) {
+                it.remove();
+                deadlines.remove(key);
+                expired.add(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.sondv.phone.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Bộ đếm lượt dùng theo key trong bộ nhớ, không khóa: mỗi lần giành lượt là một vòng compare-and-set
+ * trên {@link AtomicInteger} riêng của key, nên các key khác nhau không tranh chấp nhau và cùng một key
+ * không bao giờ vượt quá giới hạn. Giá trị khởi đầu của key lấy từ {@code seed} (thường là số đã dùng trong DB).
+ */
+public class UsageLimiter<K> {
+
+    private final ConcurrentMap<K, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    // true nếu còn lượt và đã giành được một lượt
+    public boolean tryAcquire(K key, int limit, IntSupplier seed) {
+        AtomicInteger counter = counters.computeIfAbsent(key, k -> new AtomicInteger(seed.getAsInt()));
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Trả lại một lượt đã giành (giao dịch dùng lượt đó bị rollback)
+    public void release(K key) {
+        AtomicInteger counter = counters.get(key);
+        if (counter != null) {
+            counter.updateAndGet(v -> Math.max(0, v - 1));
+        }
+    }
+}
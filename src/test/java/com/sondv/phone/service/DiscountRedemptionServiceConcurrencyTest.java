@@ -0,0 +1,182 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.entity.Discount;
+import com.sondv.phone.exception.ApiException;
+import com.sondv.phone.repository.DiscountRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Nhiều luồng cùng giành lượt của một mã: số lượt thành công không bao giờ vượt giới hạn của mã.
+ * DB và Redis được giả lập bằng các thao tác nguyên tử tương đương câu UPDATE có điều kiện và script Lua.
+ */
+class DiscountRedemptionServiceConcurrencyTest {
+
+    private static final long DISCOUNT_ID = 7L;
+    private static final int THREADS = 64;
+
+    private DiscountRepository discountRepository;
+    private DiscountRedemptionService service;
+
+    // Giả lập Redis: các script chạy tuần tự như trên một instance Redis thật
+    private final Map<String, Long> redis = new HashMap<>();
+    private final AtomicBoolean redisDown = new AtomicBoolean(false);
+
+    // Giả lập cột discounts.used / used_count
+    private final AtomicBoolean dbUsed = new AtomicBoolean(false);
+    private final AtomicInteger dbUsedCount = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        discountRepository = mock(DiscountRepository.class);
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+        when(discountRepository.markUsedIfUnused(anyLong()))
+                .thenAnswer(invocation -> dbUsed.compareAndSet(false, true) ? 1 : 0);
+        doAnswer(this::runScript).when(redisTemplate).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(discountRepository.addUsage(anyLong(), anyInt())).thenAnswer(invocation -> {
+            dbUsedCount.addAndGet(invocation.getArgument(1));
+            return 1;
+        });
+
+        service = new DiscountRedemptionService(discountRepository, redisTemplate, transactionTemplate,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "store", "redis");
+        ReflectionTestUtils.setField(service, "flushInterval", Duration.ofSeconds(1));
+        service.registerMetrics();
+    }
+
+    @Test
+    void singleUseCodeIsRedeemedExactlyOnce() throws Exception {
+        Discount discount = discount(1, 0);
+
+        assertEquals(1, redeemConcurrently(discount));
+        assertThrows(IllegalArgumentException.class, () -> service.redeem(discount));
+    }
+
+    @Test
+    void multiUseCodeNeverExceedsMaxUses() throws Exception {
+        Discount discount = discount(20, 5);
+
+        assertEquals(15, redeemConcurrently(discount));
+        assertEquals(20L, redis.get(counterKey()));
+    }
+
+    @Test
+    void redisOutageRejectsMultiUseCodeInsteadOfOverRedeeming() throws Exception {
+        Discount discount = discount(20, 0);
+
+        // Các lượt này chưa được ghi về DB (usedCount vẫn là 0), như khi còn nằm trong pending của các node
+        for (int i = 0; i < 15; i++) {
+            service.redeem(discount);
+        }
+        assertEquals(0, dbUsedCount.get());
+
+        redisDown.set(true);
+        assertThrows(ApiException.class, () -> service.redeem(discount));
+        redisDown.set(false);
+
+        assertEquals(5, redeemConcurrently(discount));
+        assertEquals(20L, redis.get(counterKey()));
+        ReflectionTestUtils.invokeMethod(service, "flush");
+        assertEquals(20, dbUsedCount.get());
+    }
+
+    // Trả về số luồng giành được lượt
+    private int redeemConcurrently(Discount discount) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger redeemed = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        service.redeem(discount);
+                        redeemed.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        // Hết lượt
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return redeemed.get();
+    }
+
+    // Cùng ngữ nghĩa với ACQUIRE của DiscountRedemptionService
+    private Object runScript(InvocationOnMock invocation) {
+        if (redisDown.get()) {
+            throw new RedisConnectionFailureException("Redis down");
+        }
+        Object[] arguments = invocation.getArguments();
+        String key = (String) ((List<?>) arguments[1]).get(0);
+        synchronized (redis) {
+            long limit = Long.parseLong((String) arguments[2]);
+            long current = redis.computeIfAbsent(key, k -> Long.parseLong((String) arguments[3]));
+            if (current >= limit) {
+                return -1L;
+            }
+            redis.put(key, current + 1);
+            return current + 1;
+        }
+    }
+
+    private static String counterKey() {
+        return "discount:uses:" + DISCOUNT_ID;
+    }
+
+    private static Discount discount(int maxUses, int usedCount) {
+        Discount discount = new Discount();
+        discount.setId(DISCOUNT_ID);
+        discount.setCode("FLASH");
+        discount.setMaxUses(maxUses);
+        discount.setUsedCount(usedCount);
+        discount.setValidTo(OffsetDateTime.now().plusDays(1));
+        return discount;
+    }
+}
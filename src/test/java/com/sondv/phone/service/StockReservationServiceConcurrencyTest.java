@@ -0,0 +1,114 @@
+package com.sondv.phone.service;
+
+import com.sondv.phone.dto.StockContentionDTO;
+import com.sondv.phone.repository.InventoryRepository;
+import com.sondv.phone.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Nhiều checkout cùng giữ một sản phẩm đang hot: không bán vượt tồn kho và không bỏ sót hàng còn lại.
+ * Câu UPDATE có điều kiện được giả lập bằng compare-and-set trên tồn kho.
+ */
+class StockReservationServiceConcurrencyTest {
+
+    private static final long PRODUCT_ID = 42L;
+    private static final int INITIAL_STOCK = 50;
+    private static final int THREADS = 64;
+    private static final int ATTEMPTS = 200;
+
+    private final AtomicInteger stock = new AtomicInteger(INITIAL_STOCK);
+    // Giá trị câu UPDATE của chính transaction (luồng) này vừa ghi, như khi đọc lại dòng đang bị khóa
+    private final ThreadLocal<Integer> written = new ThreadLocal<>();
+
+    private StockReservationService service;
+
+    @BeforeEach
+    void setUp() {
+        InventoryRepository inventoryRepository = mock(InventoryRepository.class);
+        ProductRepository productRepository = mock(ProductRepository.class);
+
+        when(inventoryRepository.decrementIfAvailable(anyLong(), anyInt(), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    int quantity = invocation.getArgument(1);
+                    while (true) {
+                        int current = stock.get();
+                        if (current < quantity) {
+                            return 0;
+                        }
+                        if (stock.compareAndSet(current, current - quantity)) {
+                            written.set(current - quantity);
+                            return 1;
+                        }
+                    }
+                });
+        when(inventoryRepository.findStockLevels(anyCollection()))
+                .thenAnswer(invocation -> List.<Object[]>of(new Object[]{PRODUCT_ID, written.get(), 5}));
+        when(inventoryRepository.findQuantityByProductId(anyLong()))
+                .thenAnswer(invocation -> Optional.of(stock.get()));
+
+        service = new StockReservationService(inventoryRepository, productRepository,
+                mock(InventoryLedger.class), mock(InventoryService.class), mock(ProductCacheInvalidator.class),
+                mock(InventorySummaryService.class), new SimpleMeterRegistry());
+        service.registerMetrics();
+    }
+
+    @Test
+    void hotProductIsNeverOversold() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger reserved = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < ATTEMPTS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        service.reserve(Map.of(PRODUCT_ID, 1), "Đặt hàng", 1L);
+                        reserved.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        // Hết hàng
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(stock.get() >= 0);
+        assertEquals(INITIAL_STOCK, reserved.get());
+        assertEquals(0, stock.get());
+
+        StockContentionDTO contention = service.topContended(1).get(0);
+        assertEquals(PRODUCT_ID, contention.getProductId().longValue());
+        assertEquals(ATTEMPTS, contention.getAttempts());
+        assertEquals(ATTEMPTS - INITIAL_STOCK, contention.getRejected());
+    }
+}
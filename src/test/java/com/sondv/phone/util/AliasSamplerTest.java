@@ -0,0 +1,77 @@
+package com.sondv.phone.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AliasSamplerTest {
+
+    private static final int SAMPLES = 200_000;
+
+    private record Item(String name, int weight) {
+    }
+
+    @Test
+    void sampleFrequenciesFollowWeights() {
+        List<Item> items = List.of(new Item("a", 1), new Item("b", 2), new Item("c", 7));
+        AliasSampler<Item> sampler = new AliasSampler<>(items, Item::weight);
+
+        Map<String, Integer> counts = sample(sampler);
+
+        assertEquals(0.1, counts.get("a") / (double) SAMPLES, 0.01);
+        assertEquals(0.2, counts.get("b") / (double) SAMPLES, 0.01);
+        assertEquals(0.7, counts.get("c") / (double) SAMPLES, 0.01);
+    }
+
+    @Test
+    void zeroAndNegativeWeightsAreNeverPicked() {
+        List<Item> items = List.of(new Item("zero", 0), new Item("a", 3), new Item("negative", -5),
+                new Item("b", 1), new Item("zero2", 0));
+        AliasSampler<Item> sampler = new AliasSampler<>(items, Item::weight);
+
+        Map<String, Integer> counts = sample(sampler);
+
+        assertEquals(Map.of("a", counts.get("a"), "b", counts.get("b")), counts);
+        assertEquals(0.75, counts.get("a") / (double) SAMPLES, 0.01);
+    }
+
+    @Test
+    void singleItemIsAlwaysPicked() {
+        Item only = new Item("only", 4);
+        AliasSampler<Item> sampler = new AliasSampler<>(List.of(only), Item::weight);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(only, sampler.sample());
+        }
+    }
+
+    @Test
+    void emptySamplerReturnsNull() {
+        AliasSampler<Item> sampler = new AliasSampler<>(List.of(), Item::weight);
+
+        assertTrue(sampler.isEmpty());
+        assertNull(sampler.sample());
+    }
+
+    @Test
+    void allZeroWeightsAreRejected() {
+        List<Item> items = List.of(new Item("a", 0), new Item("b", 0));
+
+        assertThrows(IllegalArgumentException.class, () -> new AliasSampler<>(items, Item::weight));
+    }
+
+    private static Map<String, Integer> sample(AliasSampler<Item> sampler) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            counts.merge(sampler.sample().name(), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,89 @@
+package com.sondv.phone.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    private static final long TICK = 1_000L;
+    private static final int TICKS = 16;
+
+    @Test
+    void deadlineLateInTickExpiresOnTheNextTick() {
+        TimerWheel<Long> wheel = new TimerWheel<>(TICK, TICKS, 0);
+        wheel.schedule(1L, 5_900);
+
+        assertEquals(List.of(), wheel.advance(5_000, 10));
+        assertEquals(List.of(), wheel.advance(5_899, 10));
+        assertEquals(List.of(1L), wheel.advance(6_000, 10));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlineOnTickBoundaryExpiresOnThatTick() {
+        TimerWheel<Long> wheel = new TimerWheel<>(TICK, TICKS, 0);
+        wheel.schedule(1L, 3_000);
+
+        assertEquals(List.of(), wheel.advance(2_999, 10));
+        assertEquals(List.of(1L), wheel.advance(3_000, 10));
+    }
+
+    @Test
+    void pastDeadlineExpiresOnNextAdvance() {
+        TimerWheel<Long> wheel = new TimerWheel<>(TICK, TICKS, 10_000);
+        wheel.schedule(1L, 2_000);
+
+        assertEquals(List.of(1L), wheel.advance(11_000, 10));
+    }
+
+    @Test
+    void deadlineBeyondOneRotationWaitsForItsRound() {
+        TimerWheel<Long> wheel = new TimerWheel<>(TICK, TICKS, 0);
+        long deadline = TICK * TICKS + 2_500;
+        wheel.schedule(1L, deadline);
+
+        assertEquals(List.of(), wheel.advance(3_000, 10));
+        assertEquals(List.of(), wheel.advance(deadline - 1, 10));
+        assertEquals(List.of(1L), wheel.advance(deadline + TICK, 10));
+    }
+
+    @Test
+    void cancelRemovesKeyEvenAfterTheWheelMoved() {
+        TimerWheel<Long> wheel = new TimerWheel<>(TICK, TICKS, 0);
+        wheel.schedule(1L, 8_500);
+        wheel.schedule(2L, 8_500);
+        wheel.advance(4_000, 10);
+
+        assertTrue(wheel.cancel(1L));
+        assertFalse(wheel.cancel(1L));
+        assertFalse(wheel.contains(1L));
+        assertEquals(List.of(2L), wheel.advance(9_000, 10));
+    }
+
+    @Test
+    void rescheduleReplacesPreviousDeadline() {
+        TimerWheel<Long> wheel = new TimerWheel<>(TICK, TICKS, 0);
+        wheel.schedule(1L, 2_000);
+        wheel.schedule(1L, 7_000);
+
+        assertEquals(List.of(), wheel.advance(3_000, 10));
+        assertEquals(List.of(1L), wheel.advance(7_000, 10));
+    }
+
+    @Test
+    void advanceReturnsAtMostLimitAndKeepsTheRest() {
+        TimerWheel<Long> wheel = new TimerWheel<>(TICK, TICKS, 0);
+        for (long key = 1; key <= 5; key++) {
+            wheel.schedule(key, 2_000);
+        }
+
+        assertEquals(3, wheel.advance(2_000, 3).size());
+        assertEquals(2, wheel.advance(2_000, 3).size());
+        assertEquals(0, wheel.size());
+    }
+}